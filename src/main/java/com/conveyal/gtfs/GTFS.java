@@ -2,9 +2,11 @@ package com.conveyal.gtfs;
 
 import com.conveyal.gtfs.loader.Feed;
 import com.conveyal.gtfs.loader.FeedLoadResult;
+import com.conveyal.gtfs.loader.GtfsSource;
 import com.conveyal.gtfs.loader.JdbcGtfsExporter;
 import com.conveyal.gtfs.loader.JdbcGtfsLoader;
 import com.conveyal.gtfs.loader.JdbcGtfsSnapshotter;
+import com.conveyal.gtfs.loader.NamespaceChanges;
 import com.conveyal.gtfs.loader.SnapshotResult;
 import com.conveyal.gtfs.util.InvalidNamespaceException;
 import com.conveyal.gtfs.validator.FeedValidatorCreator;
@@ -73,6 +75,48 @@ public abstract class GTFS {
         return result;
     }
 
+    /**
+     * Load the GTFS data from the given source (e.g., a directory of unzipped files or a zip file read from a stream)
+     * into the given JDBC DataSource. The source is closed once loading is finished.
+     */
+    public static FeedLoadResult load (GtfsSource source, DataSource dataSource) {
+        JdbcGtfsLoader loader = new JdbcGtfsLoader(source, dataSource);
+        FeedLoadResult result = loader.loadTables();
+        return result;
+    }
+
+    /**
+     * Load the GTFS data in the specified file into the given JDBC DataSource, loading independent tables at the same
+     * time on up to the given number of threads (each holding its own connection from the data source).
+     */
+    public static FeedLoadResult load (String filePath, DataSource dataSource, int loadThreads) {
+        JdbcGtfsLoader loader = new JdbcGtfsLoader(filePath, dataSource).withLoadThreads(loadThreads);
+        FeedLoadResult result = loader.loadTables();
+        return result;
+    }
+
+    /**
+     * Load the GTFS data in the specified file into the given JDBC DataSource, unless a byte-identical file has already
+     * been loaded into a namespace that has not been deleted. If reuseIdenticalFeed is true and there is such a
+     * namespace whose load was completed, it is returned with reusedExistingFeed set on the result. The feed need not be
+     * validated again if validated is also set on the result.
+     */
+    public static FeedLoadResult load (String filePath, DataSource dataSource, boolean reuseIdenticalFeed) {
+        JdbcGtfsLoader loader = new JdbcGtfsLoader(filePath, dataSource).withReuseOfIdenticalFeeds(reuseIdenticalFeed);
+        FeedLoadResult result = loader.loadTables();
+        return result;
+    }
+
+    /**
+     * Load the GTFS data in the specified file into the given JDBC DataSource, copying the tables whose files have not
+     * changed from a namespace loaded from an earlier version of the same feed instead of parsing them again.
+     */
+    public static FeedLoadResult loadIncremental (String previousNamespace, String filePath, DataSource dataSource) {
+        JdbcGtfsLoader loader = new JdbcGtfsLoader(filePath, dataSource).withPreviousNamespace(previousNamespace);
+        FeedLoadResult result = loader.loadTables();
+        return result;
+    }
+
     /**
      * Copy all tables for a given feed ID (schema namespace) into a new namespace in the given JDBC DataSource.
      *
@@ -139,6 +183,7 @@ public abstract class GTFS {
             dropSchemaStatement.executeUpdate();
             // Commit the changes.
             connection.commit();
+            NamespaceChanges.notifyChanged(feedId);
             LOG.info("Drop schema successful!");
         } catch (InvalidNamespaceException | SQLException e) {
             LOG.error(String.format("Could not drop feed for namespace %s", feedId), e);
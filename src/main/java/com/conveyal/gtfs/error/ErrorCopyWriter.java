@@ -0,0 +1,214 @@
+package com.conveyal.gtfs.error;
+
+import com.conveyal.gtfs.storage.StorageException;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes errors into the errors and error_info tables of a Postgres namespace on a background thread, so that the
+ * threads finding errors do not wait on the database. Errors are handed over through a bounded queue and written in
+ * batches with a pair of copy commands (one for each table) on the writer's own connection. A thread storing an error
+ * only blocks when the queue is full, i.e. when errors are found much faster than the database can take them.
+ *
+ * Errors are committed whenever the writer is flushed (see {@link SQLErrorStorage#commitAndClose()}), so they only
+ * become visible to other connections at that point.
+ */
+class ErrorCopyWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ErrorCopyWriter.class);
+
+    // The number of errors that may be waiting to be written before storing another error blocks.
+    private static final int QUEUE_CAPACITY = 100_000;
+    // The maximum number of errors written by each pair of copy commands.
+    private static final int COPY_BATCH_SIZE = 10_000;
+    // Queued after the last error to stop the writer.
+    private static final Object END_OF_ERRORS = new Object();
+
+    private final DataSource dataSource;
+    private final String tablePrefix;
+    // Holds queued errors, plus a CountDownLatch for each flush that is waiting for the errors queued before it.
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    // The exception that stopped the writer, if any, which is rethrown to the threads storing errors.
+    private volatile Exception failure;
+
+    /**
+     * Start writing into the error tables (which must already be committed) with the given table prefix, on a new
+     * connection from the data source.
+     */
+    ErrorCopyWriter (DataSource dataSource, String tablePrefix) {
+        this.dataSource = dataSource;
+        this.tablePrefix = tablePrefix;
+        thread = new Thread(this::writeErrors, "error-writer-" + tablePrefix);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue an error to be written with the given ID, blocking only if the queue is full.
+     */
+    void write (int errorId, NewGTFSError error) {
+        enqueue(new QueuedError(errorId, error));
+    }
+
+    /**
+     * Wait for all errors queued so far to be written and committed.
+     */
+    void flush () {
+        CountDownLatch latch = new CountDownLatch(1);
+        enqueue(latch);
+        try {
+            while (!latch.await(1, TimeUnit.SECONDS)) checkFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Write and commit all queued errors, then stop the writer and release its connection.
+     */
+    void close () {
+        enqueue(END_OF_ERRORS);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Wait for space in the queue, giving up if the writer has stopped consuming errors.
+     */
+    private void enqueue (Object item) {
+        checkFailure();
+        try {
+            while (!queue.offer(item, 1, TimeUnit.SECONDS)) checkFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        }
+    }
+
+    private void checkFailure () {
+        if (failure != null) throw new StorageException(failure);
+    }
+
+    /**
+     * The body of the writer thread, which takes batches of errors off the queue and copies them into the database.
+     */
+    private void writeErrors () {
+        List<Object> batch = new ArrayList<>(COPY_BATCH_SIZE);
+        StringBuilder errorRows = new StringBuilder();
+        StringBuilder infoRows = new StringBuilder();
+        try (Connection connection = dataSource.getConnection()) {
+            // Our connection pool wraps the Connection objects, so we need to unwrap the Postgres connection interface.
+            CopyManager copyManager = new CopyManager(connection.unwrap(BaseConnection.class));
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, COPY_BATCH_SIZE - 1);
+                for (Object item : batch) {
+                    if (item instanceof QueuedError) {
+                        appendRows((QueuedError) item, errorRows, infoRows);
+                        continue;
+                    }
+                    copyRows(copyManager, errorRows, infoRows);
+                    connection.commit();
+                    if (item == END_OF_ERRORS) return;
+                    ((CountDownLatch) item).countDown();
+                }
+                copyRows(copyManager, errorRows, infoRows);
+                batch.clear();
+            }
+        } catch (Exception e) {
+            LOG.error("Writing errors to {}errors failed.", tablePrefix, e);
+            failure = e;
+            queue.clear();
+        }
+    }
+
+    private void copyRows (CopyManager copyManager, StringBuilder errorRows, StringBuilder infoRows)
+            throws SQLException, IOException {
+        if (errorRows.length() > 0) {
+            copyManager.copyIn(String.format("copy %serrors from stdin", tablePrefix), toInputStream(errorRows));
+            errorRows.setLength(0);
+        }
+        if (infoRows.length() > 0) {
+            copyManager.copyIn(String.format("copy %serror_info from stdin", tablePrefix), toInputStream(infoRows));
+            infoRows.setLength(0);
+        }
+    }
+
+    private static ByteArrayInputStream toInputStream (StringBuilder rows) {
+        return new ByteArrayInputStream(rows.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Append the rows for an error (in the same column order as the insert statements of {@link SQLErrorStorage}) in
+     * the Postgres text copy format.
+     */
+    private static void appendRows (QueuedError queuedError, StringBuilder errorRows, StringBuilder infoRows) {
+        NewGTFSError error = queuedError.error;
+        errorRows.append(queuedError.errorId).append('\t');
+        appendValue(errorRows, error.errorType.name()).append('\t');
+        appendValue(errorRows, error.entityType == null ? null : error.entityType.getSimpleName()).append('\t');
+        appendValue(errorRows, error.lineNumber).append('\t');
+        appendValue(errorRows, error.entityId).append('\t');
+        appendValue(errorRows, error.entitySequenceNumber).append('\t');
+        appendValue(errorRows, error.badValue).append('\n');
+        for (Map.Entry<String, String> entry : error.errorInfo.entrySet()) {
+            infoRows.append(queuedError.errorId).append('\t');
+            appendValue(infoRows, entry.getKey()).append('\t');
+            appendValue(infoRows, entry.getValue()).append('\n');
+        }
+    }
+
+    /**
+     * Append a value in the Postgres text copy format, escaping the characters that have a special meaning.
+     * https://www.postgresql.org/docs/9.1/static/sql-copy.html#AEN64380
+     */
+    private static StringBuilder appendValue (StringBuilder rows, Object value) {
+        if (value == null) return rows.append("\\N");
+        String string = value.toString();
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\': rows.append("\\\\"); break;
+                case '\t': rows.append("\\t"); break;
+                case '\n': rows.append("\\n"); break;
+                case '\r': rows.append("\\r"); break;
+                default: rows.append(c);
+            }
+        }
+        return rows;
+    }
+
+    private static class QueuedError {
+        final int errorId;
+        final NewGTFSError error;
+
+        QueuedError (int errorId, NewGTFSError error) {
+            this.errorId = errorId;
+            this.error = error;
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package com.conveyal.gtfs.error;
 
+import com.conveyal.gtfs.loader.Table;
+import com.conveyal.gtfs.model.Entity;
 import com.conveyal.gtfs.storage.StorageException;
 import com.conveyal.gtfs.util.InvalidNamespaceException;
 import org.apache.commons.dbutils.DbUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.conveyal.gtfs.util.Util.ensureValidNamespace;
 
@@ -43,9 +50,37 @@ public class SQLErrorStorage {
     private String tablePrefix;
 
     // This serves as a unique ID, so it must persist across multiple validator runs. It is, however, distinct from the
-    // count, which should only be determined with a SQL query.
+    // count, because error IDs may have been skipped (e.g., by errors that were rolled back).
     private int errorId;
 
+    // Running counts of the errors in the errors table, in total, by error type and by entity type. These are seeded
+    // from the table once when reconnecting to it, so that counting errors never requires a query.
+    private int errorCount;
+    private final Map<String, Integer> errorCountForType = new HashMap<>();
+    private final Map<String, Integer> errorCountForEntityType = new HashMap<>();
+
+    // The maximum number of errors of each type that are stored for each entity type, beyond which errors are only
+    // counted. The limit for an error type may be overridden in maxErrorsForType.
+    private int maxErrorsPerType = Integer.MAX_VALUE;
+    private final Map<NewGTFSErrorType, Integer> maxErrorsForType = new EnumMap<>(NewGTFSErrorType.class);
+    // The number of errors stored (i.e. not suppressed) for each combination of error type and entity type.
+    private final Map<String, Integer> storedErrorCountForKey = new HashMap<>();
+    // The errors suppressed since this error storage was opened, which are summarized when it is closed.
+    private final Map<String, SuppressedErrors> suppressedErrorsForKey = new LinkedHashMap<>();
+
+    // The number of errors stored by each thread. Tables loaded at the same time share this error storage, and each
+    // table is loaded on a single thread, so this allows errors to be attributed to the table being loaded.
+    private final ThreadLocal<AtomicInteger> errorCountForThread = ThreadLocal.withInitial(AtomicInteger::new);
+
+    // When set, errors are handed to this background writer instead of being inserted on the thread that stores them.
+    private ErrorCopyWriter copyWriter;
+
+    // The error info key of rows summarizing suppressed errors, giving the number of errors that were not stored.
+    public static final String SUPPRESSED_COUNT_KEY = "suppressed_count";
+
+    private static final String CREATE_ERROR_COUNTS_SQL =
+        "create table if not exists %serror_counts (error_type varchar primary key, count integer)";
+
     // How many errors to insert at a time in a batch, for efficiency.
     private static final long INSERT_BATCH_SIZE = 500;
 
@@ -59,13 +94,91 @@ public class SQLErrorStorage {
         createPreparedStatements();
     }
 
-    public void storeError (NewGTFSError error) {
+    /**
+     * Fluent method that makes this error storage (when connected to Postgres) queue errors for a background thread,
+     * which copies them into the database in large batches on its own connection from the data source (see
+     * {@link ErrorCopyWriter}). Storing an error then only assigns its ID and queues it, so feeds with huge numbers of
+     * errors do not hold up loading or validation while the errors are inserted one batch of 500 at a time.
+     */
+    public synchronized SQLErrorStorage withBackgroundWriter (DataSource dataSource) {
+        try {
+            if (copyWriter != null || !connection.getMetaData().getDatabaseProductName().equals("PostgreSQL")) {
+                return this;
+            }
+        } catch (SQLException ex) {
+            throw new StorageException(ex);
+        }
+        // Commit anything already inserted, so that errors remain in ID order.
+        commit();
+        copyWriter = new ErrorCopyWriter(dataSource, tablePrefix);
+        return this;
+    }
+
+    /**
+     * Fluent method that limits the number of errors of each type that are stored for each table (or for the feed as
+     * a whole). Once the limit is reached, further errors of the same type and table are only counted, and a single
+     * row is stored when this error storage is closed to record how many were suppressed (with the count in its
+     * suppressed_count info). This bounds the size of the errors tables for feeds with a systematic problem (e.g. a
+     * column missing from every line of stop_times), while the error counts still include every error found. By
+     * default every error is stored.
+     */
+    public synchronized SQLErrorStorage withMaxErrorsPerType (int maxErrorsPerType) {
+        this.maxErrorsPerType = Math.max(1, maxErrorsPerType);
+        return this;
+    }
+
+    /**
+     * Fluent method that overrides the limit set with {@link #withMaxErrorsPerType(int)} for a single error type.
+     */
+    public synchronized SQLErrorStorage withMaxErrors (NewGTFSErrorType errorType, int maxErrors) {
+        maxErrorsForType.put(errorType, Math.max(1, maxErrors));
+        return this;
+    }
+
+    public synchronized void storeError (NewGTFSError error) {
+        String entityType = entityTypeName(error);
+        String key = String.join(":", error.errorType.name(), String.valueOf(entityType));
+        int storedErrorCount = storedErrorCountForKey.getOrDefault(key, 0);
+        if (storedErrorCount >= maxErrorsForType.getOrDefault(error.errorType, maxErrorsPerType)) {
+            suppressedErrorsForKey.computeIfAbsent(key, k -> new SuppressedErrors(error)).count += 1;
+            // Suppressed errors still use up an ID, so that IDs remain a measure of when each error was found.
+            errorId += 1;
+        } else {
+            storedErrorCountForKey.put(key, storedErrorCount + 1);
+            writeError(error);
+        }
+        countError(error.errorType.name(), entityType, 1);
+    }
+
+    /**
+     * Count a number of errors of the same type and table as the given error without storing them, as if they had been
+     * suppressed by the limit on the errors stored per type (e.g., errors summarized in a single row when loading an
+     * earlier version of the feed). They are summarized along with any other suppressed errors of the same type and
+     * table when this error storage is closed.
+     */
+    public synchronized void storeSuppressedErrors (NewGTFSError error, int count) {
+        String entityType = entityTypeName(error);
+        String key = String.join(":", error.errorType.name(), String.valueOf(entityType));
+        suppressedErrorsForKey.computeIfAbsent(key, k -> new SuppressedErrors(error)).count += count;
+        errorId += count;
+        countError(error.errorType.name(), entityType, count);
+    }
+
+    /**
+     * Insert the error (or queue it for the background writer) with the next error ID.
+     */
+    private void writeError (NewGTFSError error) {
+        if (copyWriter != null) {
+            copyWriter.write(errorId, error);
+            errorId += 1;
+            return;
+        }
         try {
             // Insert one row for the error itself
             insertError.setInt(1, errorId);
             insertError.setString(2, error.errorType.name());
             // Using SetObject to allow null values, do all target DBs support this?
-            insertError.setObject(3, error.entityType == null ? null : error.entityType.getSimpleName());
+            insertError.setObject(3, entityTypeName(error));
             insertError.setObject(4, error.lineNumber);
             insertError.setObject(5, error.entityId);
             insertError.setObject(6, error.entitySequenceNumber);
@@ -88,34 +201,67 @@ public class SQLErrorStorage {
         }
     }
 
-    public void storeErrors (Set<NewGTFSError> errors) {
+    private static String entityTypeName (NewGTFSError error) {
+        return error.entityType == null ? null : error.entityType.getSimpleName();
+    }
+
+    private void countError (String errorType, String entityType, int count) {
+        errorCount += count;
+        errorCountForType.merge(errorType, count, Integer::sum);
+        if (entityType != null) errorCountForEntityType.merge(entityType, count, Integer::sum);
+        errorCountForThread.get().addAndGet(count);
+    }
+
+    public synchronized void storeErrors (Set<NewGTFSError> errors) {
         for (NewGTFSError error : errors) {
             storeError(error);
         }
     }
 
     /**
-     * Commits any outstanding error inserts and returns the error count via a SQL query.
+     * @return the number of errors in the errors table, including those that have not been committed (or written by
+     * the background writer) yet. This is kept in memory, so does not require a database query.
      */
-    public int getErrorCount () {
-        try {
-            // Ensure any outstanding inserts are committed so that count is accurate.
-            this.commit();
-            Statement statement = connection.createStatement();
-            statement.execute(String.format("select count(*) from %serrors", tablePrefix));
-            ResultSet resultSet = statement.getResultSet();
-            resultSet.next();
-            int count = resultSet.getInt(1);
-            return count;
-        } catch (SQLException ex) {
-            throw new StorageException(ex);
-        }
+    public synchronized int getErrorCount () {
+        return errorCount;
+    }
+
+    /**
+     * @return the ID that the next error stored will be given, which is greater than the IDs of all the errors stored
+     * so far (including any rows summarizing suppressed errors once this error storage has been closed).
+     */
+    public synchronized int getNextErrorId () {
+        return errorId;
+    }
+
+    /**
+     * @return the number of errors of the given type in the errors table.
+     */
+    public synchronized int getErrorCount (NewGTFSErrorType errorType) {
+        return errorCountForType.getOrDefault(errorType.name(), 0);
     }
 
     /**
-     * This executes any remaining inserts and commits the transaction.
+     * @return the number of errors in the errors table about entities of the given table.
      */
-    private void commit() {
+    public synchronized int getErrorCount (Table table) {
+        return errorCountForEntityType.getOrDefault(table.getEntityClass().getSimpleName(), 0);
+    }
+
+    /**
+     * @return the number of errors stored by the calling thread over the lifetime of this error storage. Unlike
+     * {@link #getErrorCount()} this does not require a database query.
+     */
+    public int getErrorCountForCurrentThread () {
+        return errorCountForThread.get().get();
+    }
+
+    /**
+     * This executes any remaining inserts (or waits for the background writer to write and commit all errors stored so
+     * far) and commits the transaction.
+     */
+    private synchronized void commit() {
+        if (copyWriter != null) copyWriter.flush();
         try {
             // Execute any remaining batch inserts and commit the transaction.
             insertError.executeBatch();
@@ -130,13 +276,72 @@ public class SQLErrorStorage {
      * This executes any remaining inserts, commits the transaction, and closes the connection permanently.
      * commitAndClose() should only be called when access to SQLErrorStorage is no longer needed.
      */
-    public void commitAndClose() {
+    public synchronized void commitAndClose() {
         LOG.info("Committing errors and closing SQL connection.");
+        writeSuppressedErrors();
+        writeErrorCounts();
         this.commit();
+        if (copyWriter != null) copyWriter.close();
+        copyWriter = null;
         // Close the connection permanently (should be called only after errorStorage instance no longer needed).
         DbUtils.closeQuietly(connection);
     }
 
+    /**
+     * Stop the background writer (if any) once it has written the errors already queued, without committing this
+     * error storage's connection. This should be called instead of commitAndClose() when loading fails part way
+     * through, so that the writer does not hold on to its connection.
+     */
+    public synchronized void stopBackgroundWriter() {
+        if (copyWriter == null) return;
+        try {
+            copyWriter.close();
+        } catch (StorageException ex) {
+            LOG.error("Background error writer failed.", ex);
+        }
+        copyWriter = null;
+    }
+
+    /**
+     * Store a row for each combination of error type and entity type for which errors were suppressed, recording how
+     * many errors were not stored.
+     */
+    private void writeSuppressedErrors () {
+        for (SuppressedErrors suppressedErrors : suppressedErrorsForKey.values()) {
+            LOG.info("{} {} errors were counted but not stored.", suppressedErrors.count, suppressedErrors.errorType);
+            NewGTFSError error = NewGTFSError.forFeed(
+                suppressedErrors.errorType,
+                String.format("%d more errors of this type were not stored.", suppressedErrors.count)
+            );
+            error.entityType = suppressedErrors.entityType;
+            error.addInfo(SUPPRESSED_COUNT_KEY, Integer.toString(suppressedErrors.count));
+            writeError(error);
+        }
+        suppressedErrorsForKey.clear();
+    }
+
+    /**
+     * Replace the contents of the error_counts table with the number of errors of each type, so that error counts can
+     * be fetched (see ErrorCountFetcher) without counting the rows of the errors table. The table is only filled in
+     * when the error storage is closed normally, so if it is empty the counts must be found from the errors table.
+     */
+    private void writeErrorCounts () {
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute(String.format("delete from %serror_counts", tablePrefix));
+            PreparedStatement insertCount = connection.prepareStatement(
+                String.format("insert into %serror_counts values (?, ?)", tablePrefix));
+            for (Map.Entry<String, Integer> entry : errorCountForType.entrySet()) {
+                insertCount.setString(1, entry.getKey());
+                insertCount.setInt(2, entry.getValue());
+                insertCount.addBatch();
+            }
+            insertCount.executeBatch();
+        } catch (SQLException ex) {
+            throw new StorageException(ex);
+        }
+    }
+
     private void createErrorTables() {
         try {
             Statement statement = connection.createStatement();
@@ -151,6 +356,7 @@ public class SQLErrorStorage {
                     tablePrefix);
             LOG.info(createErrorInfoSql);
             statement.execute(createErrorInfoSql);
+            statement.execute(String.format(CREATE_ERROR_COUNTS_SQL, tablePrefix));
             connection.commit();
             // Keep connection open, closing would null the wrapped connection and return it to the pool.
         } catch (SQLException ex) {
@@ -178,9 +384,49 @@ public class SQLErrorStorage {
             errorId = resultSet.getInt(1);
             LOG.info("Reconnected to errors table, max error ID is {}.", errorId);
             errorId += 1; // Error count is zero based, add one to avoid duplicate error key
+            // Seed the running counts from the errors already stored. Rows summarizing suppressed errors count as the
+            // number of errors they stand for, and do not count towards the limit on the errors stored.
+            statement.execute(String.format(
+                "select e.error_type, e.entity_type, count(*) - count(i.value), " +
+                    "coalesce(sum(cast(i.value as integer)), 0) from %1$serrors e left join %1$serror_info i " +
+                    "on i.error_id = e.error_id and i.key = '%2$s' group by e.error_type, e.entity_type",
+                tablePrefix,
+                SUPPRESSED_COUNT_KEY
+            ));
+            resultSet = statement.getResultSet();
+            while (resultSet.next()) {
+                String errorType = resultSet.getString(1);
+                String entityType = resultSet.getString(2);
+                int storedErrorCount = resultSet.getInt(3);
+                int count = storedErrorCount + resultSet.getInt(4);
+                errorCount += count;
+                errorCountForType.merge(errorType, count, Integer::sum);
+                if (entityType != null) errorCountForEntityType.merge(entityType, count, Integer::sum);
+                storedErrorCountForKey.put(String.join(":", errorType, String.valueOf(entityType)), storedErrorCount);
+            }
+            LOG.info("Reconnected to errors table, {} errors already stored.", errorCount);
+            // The stored error counts will be out of date as soon as another error is stored, so remove them until
+            // this error storage is closed (in case it is never closed normally). Namespaces loaded before error counts
+            // were stored do not have the table yet.
+            statement.execute(String.format(CREATE_ERROR_COUNTS_SQL, tablePrefix));
+            statement.execute(String.format("delete from %serror_counts", tablePrefix));
+            connection.commit();
         } catch (SQLException ex) {
             throw new StorageException(ex);
         }
     }
 
+    /**
+     * The number of errors of one type and entity type that were counted but not stored.
+     */
+    private static class SuppressedErrors {
+        final NewGTFSErrorType errorType;
+        final Class<? extends Entity> entityType;
+        int count;
+
+        SuppressedErrors (NewGTFSError error) {
+            this.errorType = error.errorType;
+            this.entityType = error.entityType;
+        }
+    }
 }
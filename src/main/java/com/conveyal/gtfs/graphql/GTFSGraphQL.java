@@ -1,6 +1,9 @@
 package com.conveyal.gtfs.graphql;
 
+import com.conveyal.gtfs.graphql.fetchers.JDBCBatchLoader;
+import com.conveyal.gtfs.loader.NamespaceChanges;
 import graphql.GraphQL;
+import org.dataloader.DataLoaderRegistry;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -19,9 +22,25 @@ public class GTFSGraphQL {
     // Analysis-backend creates a new GraphQL object on every request.
     private static GraphQL GRAPHQL;
 
+    // The rows fetched for queries on unmodified feeds, or null if they are not cached.
+    private static GraphQLResultCache resultCache;
+
+    // Removes the cached results for a namespace whenever its tables are changed.
+    private static final NamespaceChanges.Listener RESULT_CACHE_INVALIDATOR = GTFSGraphQL::invalidateResultCache;
+
     /** Username and password can be null if connecting to a local instance with host-based authentication. */
     public static void initialize (DataSource dataSource) {
+        initialize(dataSource, 0);
+    }
+
+    /**
+     * @param maxCachedRows the number of rows fetched for queries on loaded feeds to keep in a cache (see
+     *                      {@link GraphQLResultCache}), or zero to fetch every query from the database.
+     */
+    public static void initialize (DataSource dataSource, long maxCachedRows) {
         GTFSGraphQL.dataSource = dataSource;
+        resultCache = maxCachedRows > 0 ? new GraphQLResultCache(dataSource, maxCachedRows) : null;
+        NamespaceChanges.addListener(RESULT_CACHE_INVALIDATOR);
         GRAPHQL = GraphQL.newGraphQL(GraphQLGtfsSchema.feedBasedSchema)
             .build();
     }
@@ -38,4 +57,28 @@ public class GTFSGraphQL {
         return GRAPHQL;
     }
 
+    /** @return the cache of rows fetched for queries, or null if results are not cached. */
+    public static GraphQLResultCache getResultCache () {
+        return resultCache;
+    }
+
+    /**
+     * Remove any cached query results for the namespace. This is called whenever its tables are changed (see
+     * {@link NamespaceChanges}).
+     */
+    public static void invalidateResultCache (String namespace) {
+        GraphQLResultCache cache = resultCache;
+        if (cache != null) cache.invalidate(namespace);
+    }
+
+    /**
+     * Create the data loaders for a single GraphQL request, which should be passed in with the request's
+     * ExecutionInput. They allow the entities nested in the results to be fetched with one query for each level of
+     * the GraphQL query, rather than one for each parent entity. Without them the results are the same but each parent
+     * entity's children are queried separately.
+     */
+    public static DataLoaderRegistry newDataLoaderRegistry () {
+        return new DataLoaderRegistry().register(JDBCBatchLoader.DATA_LOADER_NAME, JDBCBatchLoader.newDataLoader());
+    }
+
 }
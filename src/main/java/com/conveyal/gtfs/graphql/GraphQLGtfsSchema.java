@@ -1,5 +1,6 @@
 package com.conveyal.gtfs.graphql;
 
+import com.conveyal.gtfs.graphql.fetchers.ConnectionFetcher;
 import com.conveyal.gtfs.graphql.fetchers.ErrorCountFetcher;
 import com.conveyal.gtfs.graphql.fetchers.FeedFetcher;
 import com.conveyal.gtfs.graphql.fetchers.JDBCFetcher;
@@ -9,6 +10,7 @@ import com.conveyal.gtfs.graphql.fetchers.PolylineFetcher;
 import com.conveyal.gtfs.graphql.fetchers.RowCountFetcher;
 import com.conveyal.gtfs.graphql.fetchers.SQLColumnFetcher;
 import com.conveyal.gtfs.graphql.fetchers.SourceObjectFetcher;
+import com.conveyal.gtfs.graphql.fetchers.ValidatorProfileFetcher;
 import graphql.schema.Coercing;
 import graphql.schema.GraphQLList;
 import graphql.schema.GraphQLObjectType;
@@ -28,6 +30,7 @@ import static com.conveyal.gtfs.graphql.GraphQLUtil.stringArg;
 import static com.conveyal.gtfs.graphql.fetchers.JDBCFetcher.*;
 import static graphql.Scalars.GraphQLFloat;
 import static graphql.Scalars.GraphQLInt;
+import static graphql.Scalars.GraphQLLong;
 import static graphql.Scalars.GraphQLString;
 import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
 import static graphql.schema.GraphQLObjectType.newObject;
@@ -501,6 +504,18 @@ public class GraphQLGtfsSchema {
             .field(string("priority"))
             .build();
 
+    public static GraphQLObjectType validatorProfileType = newObject().name("validatorProfile")
+            .description("Resources used by a single validator the last time the feed was validated.")
+            .field(MapFetcher.field("id", GraphQLInt))
+            .field(MapFetcher.field("validator"))
+            .field(MapFetcher.field("parent_validator"))
+            .field(MapFetcher.field("wall_time_millis", GraphQLFloat))
+            .field(MapFetcher.field("cpu_time_millis", GraphQLFloat))
+            .field(MapFetcher.field("allocated_bytes", GraphQLLong))
+            .field(MapFetcher.field("error_count", GraphQLInt))
+            .field(MapFetcher.field("rows_read", GraphQLLong))
+            .build();
+
     /**
      * The GraphQL API type representing a unique sequence of stops on a route. This is used to group trips together.
      */
@@ -647,6 +662,12 @@ public class GraphQLGtfsSchema {
                     .type(new GraphQLList(errorCountType))
                     .dataFetcher(new ErrorCountFetcher())
                     .build())
+            // A field containing the resources used by each validator, to find out what makes validation slow.
+            .field(newFieldDefinition()
+                    .name("validator_profiles")
+                    .type(new GraphQLList(validatorProfileType))
+                    .dataFetcher(new ValidatorProfileFetcher())
+                    .build())
             // A field for the errors themselves.
             .field(newFieldDefinition()
                     .name("errors")
@@ -788,6 +809,12 @@ public class GraphQLGtfsSchema {
                     .dataFetcher(new JDBCFetcher("stop_times"))
                     .build()
             )
+            // Pages of the largest tables, for paging through whole tables with a cursor.
+            .field(ConnectionFetcher.field("routes_connection", "routes", GraphQLGtfsSchema.routeType))
+            .field(ConnectionFetcher.field("stops_connection", "stops", GraphQLGtfsSchema.stopType))
+            .field(ConnectionFetcher.field("trips_connection", "trips", GraphQLGtfsSchema.tripType))
+            .field(ConnectionFetcher.field("stop_times_connection", "stop_times", GraphQLGtfsSchema.stopTimeType))
+            .field(ConnectionFetcher.field("patterns_connection", "patterns", GraphQLGtfsSchema.patternType))
             .field(newFieldDefinition()
                     .name("services")
                     .argument(multiStringArg("service_id"))
@@ -0,0 +1,154 @@
+package com.conveyal.gtfs.graphql;
+
+import com.conveyal.gtfs.loader.JdbcGtfsLoader;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Holds the rows fetched for GraphQL queries on feed namespaces that are never modified, so that repeating a query
+ * (e.g., the routes of a feed requested by every client that opens it) does not go back to the database. Only loaded
+ * feeds are cached, and only once their load has been completed (i.e. they have a load_status table): editor snapshots
+ * (those with snapshot_of set in the feeds registry) are modified by {@link com.conveyal.gtfs.loader.JdbcTableWriter},
+ * and a feed being loaded is registered before its tables are filled in. The entries of a namespace are invalidated
+ * whenever its tables change anyway (see {@link com.conveyal.gtfs.loader.NamespaceChanges}), i.e. when its load is
+ * completed, when a table writer commits, when the feed is validated and when it is deleted.
+ *
+ * The cache holds up to a maximum number of rows, evicting the least recently used queries first.
+ */
+public class GraphQLResultCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphQLResultCache.class);
+
+    private final DataSource dataSource;
+    private final Cache<Key, List<Map<String, Object>>> rowsForQuery;
+    // Whether each namespace looked up in the feeds registry can be cached, once this is settled.
+    private final Map<String, Boolean> cacheableForNamespace = new ConcurrentHashMap<>();
+    // How many times each namespace has been invalidated, so that rows fetched across an invalidation are not cached.
+    private final Map<String, AtomicLong> generationForNamespace = new ConcurrentHashMap<>();
+
+    public GraphQLResultCache (DataSource dataSource, long maxCachedRows) {
+        this.dataSource = dataSource;
+        this.rowsForQuery = CacheBuilder.newBuilder()
+            .maximumWeight(maxCachedRows)
+            // Count the key of an empty result, so that every entry can be evicted.
+            .weigher((Key key, List<Map<String, Object>> rows) -> rows.size() + 1)
+            .build();
+    }
+
+    /**
+     * Get the rows for a query from the cache, or fetch them if they are not cached (or the namespace is not cached).
+     * @param query a value identifying the query within the namespace (e.g., a list of the table, arguments and
+     *              columns), which must have equals and hashCode methods comparing its contents.
+     */
+    public List<Map<String, Object>> get (String namespace, Object query, Supplier<List<Map<String, Object>>> fetch) {
+        // Read the generation before fetching anything, so that a fetch that started before an invalidation (and may
+        // have read the tables before they were modified) is not cached after it.
+        long generation = getGeneration(namespace);
+        if (!isCacheable(namespace, generation)) return fetch.get();
+        Key key = new Key(namespace, query);
+        List<Map<String, Object>> rows = rowsForQuery.getIfPresent(key);
+        if (rows == null) {
+            // Several threads may fetch the same rows at once, in which case the rows are cached by the last of them.
+            rows = fetch.get();
+            // The rows are put before checking the generation, because invalidate bumps the generation before
+            // removing entries: either the namespace is invalidated after the rows are put, or the change is seen here.
+            rowsForQuery.put(key, rows);
+            if (getGeneration(namespace) != generation) rowsForQuery.asMap().remove(key, rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Remove all the cached rows for a namespace, which must be called whenever its tables are modified.
+     */
+    public void invalidate (String namespace) {
+        generationForNamespace.computeIfAbsent(namespace, n -> new AtomicLong()).incrementAndGet();
+        cacheableForNamespace.remove(namespace);
+        rowsForQuery.asMap().keySet().removeIf(key -> key.namespace.equals(namespace));
+    }
+
+    /**
+     * @return whether the namespace is a loaded feed that has not been deleted, according to the feeds registry.
+     */
+    private boolean isCacheable (String namespace, long generation) {
+        if (namespace == null) return false;
+        Boolean cacheable = cacheableForNamespace.get(namespace);
+        if (cacheable == null) {
+            cacheable = lookUpCacheable(namespace);
+            // A feed that is still being loaded is looked up again, so that it can be cached once loaded. As with the
+            // rows, a look up that started before the namespace was invalidated is not kept.
+            if (cacheable != null) {
+                cacheableForNamespace.put(namespace, cacheable);
+                if (getGeneration(namespace) != generation) cacheableForNamespace.remove(namespace, cacheable);
+            }
+        }
+        return Boolean.TRUE.equals(cacheable);
+    }
+
+    private long getGeneration (String namespace) {
+        if (namespace == null) return 0;
+        AtomicLong generation = generationForNamespace.get(namespace);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * @return whether the namespace can be cached, or null if this is not settled yet because the namespace is not in
+     * the feeds registry or its load has not been completed.
+     */
+    private Boolean lookUpCacheable (String namespace) {
+        // Try-with-resources will automatically close the connection when the try block exits.
+        try (Connection connection = dataSource.getConnection()) {
+            PreparedStatement statement = connection.prepareStatement(
+                "select snapshot_of is null and deleted is not true, exists (select 1 from information_schema.tables " +
+                    "where table_schema = namespace and table_name = ?) from feeds where namespace = ?"
+            );
+            statement.setString(1, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME);
+            statement.setString(2, namespace);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) return null;
+            if (!resultSet.getBoolean(1)) return false;
+            return resultSet.getBoolean(2) ? Boolean.TRUE : null;
+        } catch (SQLException e) {
+            LOG.warn("Could not look up namespace {} in the feeds registry, it will not be cached.", namespace, e);
+            return null;
+        }
+    }
+
+    private static class Key {
+
+        final String namespace;
+        final Object query;
+
+        Key (String namespace, Object query) {
+            this.namespace = namespace;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals (Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return namespace.equals(key.namespace) && Objects.equals(query, key.query);
+        }
+
+        @Override
+        public int hashCode () {
+            return Objects.hash(namespace, query);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.conveyal.gtfs.graphql.fetchers;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.SelectedField;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.conveyal.gtfs.graphql.GraphQLUtil.intArg;
+import static com.conveyal.gtfs.graphql.GraphQLUtil.stringArg;
+import static com.conveyal.gtfs.graphql.fetchers.JDBCFetcher.AFTER_ARG;
+import static com.conveyal.gtfs.graphql.fetchers.JDBCFetcher.LIMIT_ARG;
+import static graphql.Scalars.GraphQLBoolean;
+import static graphql.Scalars.GraphQLString;
+import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
+import static graphql.schema.GraphQLObjectType.newObject;
+
+/**
+ * Fetches a page of rows from a table, for clients that need to page through a whole table (e.g., all the stop times of
+ * a large feed). Paging with an offset makes the database read and skip all the rows before each page, so reading a
+ * whole table page by page takes quadratic time. Instead, the rows of a connection are ordered by the key fields of the
+ * table, and each page holds an opaque cursor to pass as the "after" argument for the next page, which is read by
+ * scanning the table's index from the cursor. Rows with null key values (only found in invalid feeds) cannot be found
+ * that way, so they are paged through by id after all the other rows.
+ *
+ * The page is returned in a wrapper holding the rows as nodes along with page info, similar to a Relay connection:
+ *
+ *   stop_times_connection(limit: 500, after: $cursor) { nodes { ... } page_info { end_cursor has_next_page } }
+ */
+public class ConnectionFetcher implements DataFetcher<Map<String, Object>> {
+
+    private static final String NODES = "nodes";
+    private static final String PAGE_INFO = "page_info";
+    private static final String END_CURSOR = "end_cursor";
+    private static final String HAS_NEXT_PAGE = "has_next_page";
+
+    public static final GraphQLObjectType pageInfoType = newObject().name("pageInfo")
+            .description("Where a page of rows ends, and whether there are more rows after it.")
+            .field(MapFetcher.field(END_CURSOR))
+            .field(MapFetcher.field(HAS_NEXT_PAGE, GraphQLBoolean))
+            .build();
+
+    private final JDBCFetcher jdbcFetcher;
+
+    public ConnectionFetcher (String tableName) {
+        this.jdbcFetcher = new JDBCFetcher(tableName);
+    }
+
+    @Override
+    public Map<String, Object> get (DataFetchingEnvironment environment) {
+        Map<String, Object> parentFeedMap = environment.getSource();
+        String namespace = (String) parentFeedMap.get("namespace");
+        Map<String, Object> arguments = new HashMap<>(environment.getArguments());
+        // Make sure the rows are ordered for paging even when fetching the first page (without a cursor).
+        arguments.putIfAbsent(AFTER_ARG, null);
+        int limit = jdbcFetcher.getLimit(arguments);
+        List<String> cursorFields = jdbcFetcher.getCursorFields();
+        // Select the columns for the fields requested on the nodes, plus those needed to make the cursor.
+        Set<String> columns = new HashSet<>();
+        SelectedField nodesField = environment.getSelectionSet().getField(NODES);
+        if (nodesField != null) columns = JDBCFetcher.getSelectedColumns(nodesField.getSelectionSet());
+        if (columns != null) columns.addAll(cursorFields);
+        List<Map<String, Object>> rows = getPage(namespace, arguments, limit, columns);
+
+        Map<String, Object> pageInfo = new HashMap<>();
+        String endCursor = rows.isEmpty() ? null : jdbcFetcher.encodeCursor(rows.get(rows.size() - 1));
+        pageInfo.put(END_CURSOR, endCursor);
+        if (environment.getSelectionSet().contains(PAGE_INFO + "/" + HAS_NEXT_PAGE)) {
+            boolean hasNextPage = false;
+            // A page that is not full is the last one. Otherwise, look for a single row after it.
+            if (limit != -1 && rows.size() == limit) {
+                Map<String, Object> nextPageArguments = new HashMap<>(arguments);
+                nextPageArguments.put(AFTER_ARG, endCursor);
+                nextPageArguments.put(LIMIT_ARG, 1);
+                Set<String> cursorColumns = new HashSet<>(cursorFields);
+                hasNextPage = !getPage(namespace, nextPageArguments, 1, cursorColumns).isEmpty();
+            }
+            pageInfo.put(HAS_NEXT_PAGE, hasNextPage);
+        }
+        Map<String, Object> connection = new HashMap<>();
+        connection.put(NODES, rows);
+        connection.put(PAGE_INFO, pageInfo);
+        return connection;
+    }
+
+    /**
+     * Get the rows after the cursor in the arguments, carrying on into the rows with null key values once the rows with
+     * key values run out before the limit.
+     */
+    private List<Map<String, Object>> getPage (
+        String namespace,
+        Map<String, Object> arguments,
+        int limit,
+        Set<String> columns
+    ) {
+        List<Map<String, Object>> rows = new ArrayList<>(
+            jdbcFetcher.getResults(namespace, null, arguments, columns, false)
+        );
+        if (!jdbcFetcher.isNullKeysCursor((String) arguments.get(AFTER_ARG)) && (limit == -1 || rows.size() < limit)) {
+            Map<String, Object> nullKeysArguments = new HashMap<>(arguments);
+            nullKeysArguments.put(AFTER_ARG, jdbcFetcher.makeNullKeysCursor());
+            if (limit != -1) nullKeysArguments.put(LIMIT_ARG, limit - rows.size());
+            rows.addAll(jdbcFetcher.getResults(namespace, null, nullKeysArguments, columns, false));
+        }
+        return rows;
+    }
+
+    /**
+     * Convenience method to create a field in a GraphQL schema that fetches a page of rows from a table, with a type
+     * wrapping the nodes of the given type. Must be on a type that has a "namespace" field for context.
+     */
+    public static GraphQLFieldDefinition field (String fieldName, String tableName, GraphQLObjectType nodeType) {
+        GraphQLObjectType connectionType = newObject().name(nodeType.getName() + "Connection")
+                .description(String.format("A page of rows from the %s table.", tableName))
+                .field(newFieldDefinition()
+                        .name(NODES)
+                        .type(new GraphQLList(nodeType))
+                        .dataFetcher(new MapFetcher(NODES))
+                        .build())
+                .field(newFieldDefinition()
+                        .name(PAGE_INFO)
+                        .type(pageInfoType)
+                        .dataFetcher(new MapFetcher(PAGE_INFO))
+                        .build())
+                .build();
+        return newFieldDefinition()
+                .name(fieldName)
+                .type(connectionType)
+                .argument(intArg(LIMIT_ARG))
+                .argument(stringArg(AFTER_ARG))
+                .dataFetcher(new ConnectionFetcher(tableName))
+                .build();
+    }
+}
@@ -42,18 +42,24 @@ public class ErrorCountFetcher implements DataFetcher {
         try {
             connection = GTFSGraphQL.getConnection();
             Statement statement = connection.createStatement();
-            String sql = String.format(
-                // this order_by is only needed to make sure that the testing snapshots are consistently in the same
-                // order during every test
-                "select error_type, count(*) from %s.errors group by error_type order by error_type",
-                namespace
-            );
-            LOG.info("SQL: {}", sql);
-            if (statement.execute(sql)) {
-                ResultSet resultSet = statement.getResultSet();
-                while (resultSet.next()) {
-                    errorCounts.add(new ErrorCount(NewGTFSErrorType.valueOf(resultSet.getString(1)), resultSet.getInt(2)));
-                }
+            // Use the error counts stored when the feed was loaded or validated if they are present, rather than
+            // counting the rows of the (potentially huge) errors table.
+            if (hasErrorCountsTable(connection, namespace)) {
+                String sql = String.format(
+                    "select error_type, count from %s.error_counts order by error_type", namespace
+                );
+                LOG.info("SQL: {}", sql);
+                addErrorCounts(statement.executeQuery(sql), errorCounts);
+            }
+            if (errorCounts.isEmpty()) {
+                String sql = String.format(
+                    // this order_by is only needed to make sure that the testing snapshots are consistently in the same
+                    // order during every test
+                    "select error_type, count(*) from %s.errors group by error_type order by error_type",
+                    namespace
+                );
+                LOG.info("SQL: {}", sql);
+                addErrorCounts(statement.executeQuery(sql), errorCounts);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -63,6 +69,22 @@ public class ErrorCountFetcher implements DataFetcher {
         return errorCounts;
     }
 
+    /**
+     * The error_counts table is only filled in when error storage is closed normally (see SQLErrorStorage), so it is
+     * empty or missing for feeds loaded before it was introduced or whose loading or validation did not complete.
+     */
+    private static boolean hasErrorCountsTable(Connection connection, String namespace) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, namespace, "error_counts", null)) {
+            return tables.next();
+        }
+    }
+
+    private static void addErrorCounts(ResultSet resultSet, List<ErrorCount> errorCounts) throws SQLException {
+        while (resultSet.next()) {
+            errorCounts.add(new ErrorCount(NewGTFSErrorType.valueOf(resultSet.getString(1)), resultSet.getInt(2)));
+        }
+    }
+
     public static class ErrorCount {
         public NewGTFSErrorType type;
         public int count;
@@ -0,0 +1,148 @@
+package com.conveyal.gtfs.graphql.fetchers;
+
+import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Batches the queries of the {@link JDBCFetcher}s and {@link NestedJDBCFetcher}s nested in GTFS entities. Instead of
+ * querying for the rows of each parent entity as it is fetched, the fetchers queue up the parent join values, and once
+ * graphql-java has fetched a whole level of the query, the rows for all the join values queued up by each fetcher are
+ * fetched with a single "in" query and handed back to each parent entity.
+ *
+ * A data loader caches the rows for each join value, so a new one must be created for each GraphQL request (see
+ * {@link com.conveyal.gtfs.graphql.GTFSGraphQL#newDataLoaderRegistry()}).
+ */
+public class JDBCBatchLoader implements BatchLoader<JDBCBatchLoader.JoinKey, Try<List<Map<String, Object>>>> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JDBCBatchLoader.class);
+
+    /** The name under which the data loader must be registered for fetchers to find it. */
+    public static final String DATA_LOADER_NAME = "jdbc";
+    // The maximum number of join values in each query, which keeps queries well under the limit on the number of
+    // parameters in a Postgres prepared statement.
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Create a data loader to be registered (under {@link #DATA_LOADER_NAME}) for a single GraphQL request.
+     */
+    public static DataLoader<JoinKey, List<Map<String, Object>>> newDataLoader () {
+        return DataLoader.newDataLoaderWithTry(
+            new JDBCBatchLoader(),
+            DataLoaderOptions.newOptions().setMaxBatchSize(MAX_BATCH_SIZE)
+        );
+    }
+
+    /**
+     * Queue up the join value of a parent entity, if a data loader is registered for the request.
+     * @return the future rows for the parent entity, or null if there is no data loader and the fetcher must query for
+     *         the rows itself.
+     */
+    static CompletableFuture<List<Map<String, Object>>> load (
+        DataFetchingEnvironment environment,
+        JoinValueFetcher fetcher,
+        String namespace,
+        String joinValue,
+        Set<String> columns
+    ) {
+        DataLoader<JoinKey, List<Map<String, Object>>> dataLoader = environment.getDataLoader(DATA_LOADER_NAME);
+        if (dataLoader == null) return null;
+        return dataLoader.load(new JoinKey(fetcher, namespace, environment.getArguments(), columns, joinValue));
+    }
+
+    @Override
+    public CompletionStage<List<Try<List<Map<String, Object>>>>> load (List<JoinKey> keys) {
+        // Group the join values by fetcher, namespace, arguments and columns, each group being fetched with one query.
+        Map<JoinKey, List<String>> joinValuesForQuery = new LinkedHashMap<>();
+        for (JoinKey key : keys) {
+            joinValuesForQuery.computeIfAbsent(key.withoutJoinValue(), k -> new ArrayList<>()).add(key.joinValue);
+        }
+        Map<JoinKey, Try<Map<String, List<Map<String, Object>>>>> resultsForQuery = new HashMap<>();
+        for (Map.Entry<JoinKey, List<String>> entry : joinValuesForQuery.entrySet()) {
+            JoinKey query = entry.getKey();
+            LOG.debug("Fetching rows for {} join values in one query.", entry.getValue().size());
+            // A query that fails (e.g., on a bad argument) only fails the fields of the parent entities it was for,
+            // which graphql-java reports as errors on those fields.
+            resultsForQuery.put(query, Try.tryCall(
+                () -> query.fetcher.getResultsForJoinValues(
+                    query.namespace,
+                    entry.getValue(),
+                    query.arguments,
+                    query.columns
+                )
+            ));
+        }
+        // The data loader expects the rows for each key in the order of the keys.
+        List<Try<List<Map<String, Object>>>> results = new ArrayList<>(keys.size());
+        for (JoinKey key : keys) {
+            results.add(resultsForQuery.get(key.withoutJoinValue()).map(resultsForJoinValue -> {
+                List<Map<String, Object>> rows = resultsForJoinValue.get(key.joinValue);
+                return rows == null ? new ArrayList<>() : rows;
+            }));
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    /**
+     * Identifies the rows for one parent entity: the fetcher (and so the table and join fields), the feed namespace,
+     * the GraphQL arguments of the field, the columns selected and the join value of the parent entity.
+     */
+    public static class JoinKey {
+        private final JoinValueFetcher fetcher;
+        private final String namespace;
+        private final Map<String, Object> arguments;
+        private final Set<String> columns;
+        private final String joinValue;
+
+        JoinKey (
+            JoinValueFetcher fetcher,
+            String namespace,
+            Map<String, Object> arguments,
+            Set<String> columns,
+            String joinValue
+        ) {
+            this.fetcher = fetcher;
+            this.namespace = namespace;
+            this.arguments = arguments;
+            this.columns = columns;
+            this.joinValue = joinValue;
+        }
+
+        /** @return the key of the query that fetches the rows for this key (along with those of other join values). */
+        private JoinKey withoutJoinValue () {
+            return new JoinKey(fetcher, namespace, arguments, columns, null);
+        }
+
+        @Override
+        public boolean equals (Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            JoinKey other = (JoinKey) o;
+            // Fetchers are compared by identity, each being a distinct field of the schema.
+            return fetcher == other.fetcher &&
+                Objects.equals(namespace, other.namespace) &&
+                Objects.equals(arguments, other.arguments) &&
+                Objects.equals(columns, other.columns) &&
+                Objects.equals(joinValue, other.joinValue);
+        }
+
+        @Override
+        public int hashCode () {
+            return Objects.hash(System.identityHashCode(fetcher), namespace, arguments, columns, joinValue);
+        }
+    }
+}
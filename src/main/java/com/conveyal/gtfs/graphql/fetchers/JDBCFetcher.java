@@ -2,14 +2,23 @@ package com.conveyal.gtfs.graphql.fetchers;
 
 import com.conveyal.gtfs.graphql.GTFSGraphQL;
 import com.conveyal.gtfs.graphql.GraphQLGtfsSchema;
+import com.conveyal.gtfs.graphql.GraphQLResultCache;
+import com.conveyal.gtfs.loader.Table;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Suppliers;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingFieldSelectionSet;
 import graphql.schema.GraphQLFieldDefinition;
 import graphql.schema.GraphQLList;
+import graphql.schema.SelectedField;
 import org.apache.commons.dbutils.DbUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -17,6 +26,7 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,6 +34,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -33,8 +47,12 @@ import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
 
 /**
  * A generic fetcher to get fields out of an SQL database table.
+ *
+ * When the fetcher is nested in a GTFS entity and the request has a {@link JDBCBatchLoader} registered (see
+ * {@link GTFSGraphQL#newDataLoaderRegistry()}), the rows for all the parent entities at one level of the query are
+ * fetched together with a single query, rather than one query for each parent entity.
  */
-public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
+public class JDBCFetcher implements DataFetcher<CompletableFuture<List<Map<String, Object>>>>, JoinValueFetcher {
 
     public static final Logger LOG = LoggerFactory.getLogger(JDBCFetcher.class);
 
@@ -45,6 +63,7 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
     public static final String ID_ARG = "id";
     public static final String LIMIT_ARG = "limit";
     public static final String OFFSET_ARG = "offset";
+    public static final String AFTER_ARG = "after";
     public static final String SEARCH_ARG = "search";
     public static final String DATE_ARG = "date";
     public static final String FROM_ARG = "from";
@@ -53,6 +72,12 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
     public static final String MIN_LON = "minLon";
     public static final String MAX_LAT = "maxLat";
     public static final String MAX_LON = "maxLon";
+    // The column holding the number of each row among the rows for its join value, when fetching for many join values.
+    private static final String JOIN_ROW_NUMBER = "join_row_number";
+    private static final ObjectMapper CURSOR_MAPPER = new ObjectMapper();
+    // The tables whose columns can be selected individually, as the column names can be checked against their specs.
+    private static final Map<String, Table> SPEC_TABLE_FOR_NAME = Arrays.stream(Table.tablesInOrder)
+        .collect(Collectors.toMap(table -> table.name, table -> table));
     // Lists of column names to be used when searching for string matches in the respective tables.
     private static final String[] stopSearchColumns = new String[]{"stop_id", "stop_code", "stop_name"};
     private static final String[] routeSearchColumns = new String[]{"route_id", "route_short_name", "route_long_name"};
@@ -61,7 +86,7 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
     // when constructing said WHERE clause.
     private static final List<String> boundingBoxArgs = Arrays.asList(MIN_LAT, MIN_LON, MAX_LAT, MAX_LON);
     private static final List<String> dateTimeArgs = Arrays.asList("date", "from", "to");
-    private static final List<String> otherNonStandardArgs = Arrays.asList(SEARCH_ARG, LIMIT_ARG, OFFSET_ARG);
+    private static final List<String> otherNonStandardArgs = Arrays.asList(SEARCH_ARG, LIMIT_ARG, OFFSET_ARG, AFTER_ARG);
     private static final List<String> argsToSkip = Stream.of(boundingBoxArgs, dateTimeArgs, otherNonStandardArgs)
             .flatMap(Collection::stream)
             .collect(Collectors.toList());
@@ -69,7 +94,7 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
     final String parentJoinField;
     private final String sortField;
     private final boolean autoLimit;
-    private final String childJoinField;
+    final String childJoinField;
 
     /**
      * Constructor for tables that need neither restriction by a where clause nor sorting based on the enclosing entity.
@@ -143,7 +168,14 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
     // But what are the internal GraphQL objects, i.e. what does an ExecutionResult return? Are they Map<String, Object>?
 
     @Override
-    public List<Map<String, Object>> get (DataFetchingEnvironment environment) {
+    public CompletableFuture<List<Map<String, Object>>> get (DataFetchingEnvironment environment) {
+        return get(environment, getSelectedColumns(environment));
+    }
+
+    /**
+     * @param columns the columns to fetch, or null to fetch all columns (see {@link #getSelectedColumns}).
+     */
+    CompletableFuture<List<Map<String, Object>>> get (DataFetchingEnvironment environment, Set<String> columns) {
         // GetSource is the context in which this this DataFetcher has been created, in this case a map representing
         // the parent feed (FeedFetcher).
         Map<String, Object> parentEntityMap = environment.getSource();
@@ -168,12 +200,94 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
             String parentJoinString = parentJoinValue == null ? null : parentJoinValue.toString();
             parentJoinValues.add(parentJoinString);
             if (parentJoinValue == null) {
-                return new ArrayList<>();
+                return CompletableFuture.completedFuture(new ArrayList<>());
             }
+            // Defer to the batch loader if there is one, so that the rows for all the parent entities at this level
+            // are fetched together.
+            CompletableFuture<List<Map<String, Object>>> batchedResults =
+                JDBCBatchLoader.load(environment, this, namespace, parentJoinString, columns);
+            if (batchedResults != null) return batchedResults;
         }
         Map<String, Object> arguments = environment.getArguments();
 
-        return getResults(namespace, parentJoinValues, arguments);
+        return CompletableFuture.completedFuture(getResults(namespace, parentJoinValues, arguments, columns, false));
+    }
+
+    /**
+     * Find the columns needed for the fields selected in the GraphQL query under this fetcher's field: the columns of
+     * the fields read straight out of the row maps, plus the join fields of the fetchers nested under it.
+     * @return the names of the columns, or null if all columns must be fetched because a field is fetched in some other
+     *         way that might read any column.
+     */
+    static Set<String> getSelectedColumns (DataFetchingEnvironment environment) {
+        return getSelectedColumns(environment.getSelectionSet());
+    }
+
+    /**
+     * @param selectionSet the fields selected on the rows.
+     */
+    static Set<String> getSelectedColumns (DataFetchingFieldSelectionSet selectionSet) {
+        Set<String> columns = new HashSet<>();
+        for (SelectedField field : selectionSet.getFields()) {
+            // Only the fields directly under this one read from its rows, the deeper ones read from their own rows.
+            if (field.getQualifiedName().contains("/")) continue;
+            // Introspection fields such as __typename do not read from the rows.
+            if (field.getName().startsWith("__")) continue;
+            DataFetcher fetcher = field.getFieldDefinition().getDataFetcher();
+            String column;
+            if (fetcher instanceof MapFetcher) {
+                column = ((MapFetcher) fetcher).key;
+            } else if (fetcher instanceof JDBCFetcher) {
+                column = ((JDBCFetcher) fetcher).parentJoinField;
+            } else if (fetcher instanceof NestedJDBCFetcher) {
+                column = ((NestedJDBCFetcher) fetcher).getParentJoinField();
+            } else if (fetcher instanceof SQLColumnFetcher) {
+                column = ((SQLColumnFetcher) fetcher).getParentJoinField();
+            } else if (fetcher instanceof RowCountFetcher) {
+                column = ((RowCountFetcher) fetcher).filterField;
+            } else {
+                return null;
+            }
+            if (column != null) columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * Fetch the rows for many join values with a single query, applying the limit and offset to the rows of each join
+     * value rather than to all the rows.
+     * @return the rows for each of the join values, in the order that they would be fetched for that value alone.
+     */
+    @Override
+    public Map<String, List<Map<String, Object>>> getResultsForJoinValues (
+        String namespace,
+        List<String> joinValues,
+        Map<String, Object> arguments,
+        Set<String> columns
+    ) {
+        Map<String, List<Map<String, Object>>> resultsForJoinValue = new HashMap<>();
+        for (String joinValue : joinValues) resultsForJoinValue.put(joinValue, new ArrayList<>());
+        for (Map<String, Object> row : getResults(namespace, joinValues, arguments, columns, true)) {
+            Object joinValue = row.get(childJoinField);
+            if (joinValue == null) continue;
+            List<Map<String, Object>> results = resultsForJoinValue.get(joinValue.toString());
+            if (results != null) results.add(row);
+        }
+        return resultsForJoinValue;
+    }
+
+    /**
+     * @return the number of rows to fetch for the query arguments, or -1 if there is no limit.
+     */
+    int getLimit (Map<String, Object> graphQLQueryArguments) {
+        Integer limit = graphQLQueryArguments == null ? null : (Integer) graphQLQueryArguments.get(LIMIT_ARG);
+        if (limit == null) {
+            limit = autoLimit ? DEFAULT_ROWS_TO_FETCH : -1;
+        }
+        if (limit > MAX_ROWS_TO_FETCH) {
+            limit = MAX_ROWS_TO_FETCH;
+        }
+        return limit;
     }
 
     /**
@@ -184,6 +298,49 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
         String namespace,
         List<String> parentJoinValues,
         Map<String, Object> graphQLQueryArguments
+    ) {
+        return getResults(namespace, parentJoinValues, graphQLQueryArguments, null, false);
+    }
+
+    /**
+     * @param columns               the columns to fetch, or null to fetch all columns. The join field is always fetched
+     *                              and columns that the table does not have are skipped.
+     * @param paginateEachJoinValue whether the limit and offset apply to the rows for each of the parent join values,
+     *                              rather than to all the rows fetched.
+     */
+    List<Map<String, Object>> getResults (
+        String namespace,
+        List<String> parentJoinValues,
+        Map<String, Object> graphQLQueryArguments,
+        Set<String> columns,
+        boolean paginateEachJoinValue
+    ) {
+        GraphQLResultCache cache = GTFSGraphQL.getResultCache();
+        if (cache == null) {
+            return fetchResults(namespace, parentJoinValues, graphQLQueryArguments, columns, paginateEachJoinValue);
+        }
+        // Identify the query by everything that the SQL depends on, with the arguments and columns in a fixed order.
+        List<Object> query = Arrays.asList(
+            tableName,
+            childJoinField,
+            sortField,
+            autoLimit,
+            parentJoinValues == null ? null : new ArrayList<>(parentJoinValues),
+            graphQLQueryArguments == null ? null : new TreeMap<>(graphQLQueryArguments),
+            columns == null ? null : new TreeSet<>(columns),
+            paginateEachJoinValue
+        );
+        return cache.get(namespace, query, () ->
+            fetchResults(namespace, parentJoinValues, graphQLQueryArguments, columns, paginateEachJoinValue)
+        );
+    }
+
+    private List<Map<String, Object>> fetchResults (
+        String namespace,
+        List<String> parentJoinValues,
+        Map<String, Object> graphQLQueryArguments,
+        Set<String> columns,
+        boolean paginateEachJoinValue
     ) {
         // Track the parameters for setting prepared statement parameters
         List<String> preparedStatementParameters = new ArrayList<>();
@@ -194,15 +351,15 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
         // entry exists in the feeds table and the schema actually exists in the database.
         validateNamespace(namespace);
         StringBuilder sqlBuilder = new StringBuilder();
+        // The columns of the table, which are only looked up if they are needed.
+        Supplier<Set<String>> tableColumns = Suppliers.memoize(() -> getTableColumns(namespace));
 
-        // We could select only the requested fields by examining environment.getFields(), but we just get them all.
-        // The advantage of selecting * is that we don't need to validate the field names.
-        // All the columns will be loaded into the Map<String, Object>,
-        // but only the requested fields will be fetched from that Map using a MapFetcher.
+        // Only the columns needed for the requested fields are loaded into the Map<String, Object>, from which they
+        // will be fetched using a MapFetcher. If it's not known which columns are needed, all are loaded.
         Set<String> fromTables = new HashSet<>();
         // By default, select only from the primary table. Other tables may be added to this list to handle joins.
-        fromTables.add(String.join(".", namespace, tableName));
-        sqlBuilder.append("select *");
+        String qualifiedTableName = String.join(".", namespace, tableName);
+        fromTables.add(qualifiedTableName);
 
         // We will build up additional sql clauses in this List (note: must be a List so that the order is preserved).
         List<String> whereConditions = new ArrayList<>();
@@ -213,7 +370,7 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
         // Note, this is assuming the type of the field in the parent is a string.
         if (childJoinField != null && parentJoinValues != null && !parentJoinValues.isEmpty()) {
             // Ensure that child join field exists in join table.
-            if (filterByExistingColumns(namespace, childJoinField).contains(childJoinField)) {
+            if (tableColumns.get().contains(childJoinField)) {
                 whereConditions.add(
                     makeInClause(childJoinField, parentJoinValues, preparedStatementParameters)
                 );
@@ -254,6 +411,47 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
                     whereConditions.add(makeInClause(key, values, preparedStatementParameters));
             }
         }
+        if (argumentKeys.contains(AFTER_ARG)) {
+            // Page through the rows with a cursor (keyset pagination): order the rows by the cursor fields and start
+            // after the values in the cursor with a row comparison, which finds each page by scanning the table's index
+            // (ordered on the same fields) from the cursor instead of reading and skipping all the rows before it.
+            // A row comparison is null if any value is null, so the rows with null key values (only found in invalid
+            // feeds) are paged through by id in a separate segment after all the others (see ConnectionFetcher).
+            List<String> cursorFields = getCursorFields();
+            List<String> qualifiedCursorFields = cursorFields.stream()
+                .map(field -> String.join(".", qualifiedTableName, field))
+                .collect(Collectors.toList());
+            List<String> qualifiedKeyFields = qualifiedCursorFields.subList(0, cursorFields.size() - 1);
+            String qualifiedIdField = qualifiedCursorFields.get(cursorFields.size() - 1);
+            String cursor = (String) graphQLQueryArguments.get(AFTER_ARG);
+            List<String> cursorValues = cursor == null ? null : decodeCursor(cursor, cursorFields.size());
+            if (cursorValues == null || !isNullKeysCursor(cursorValues)) {
+                for (String keyField : qualifiedKeyFields) whereConditions.add(keyField + " is not null");
+                sortBy = String.format(" order by %s", String.join(", ", qualifiedCursorFields));
+                if (cursorValues != null) {
+                    List<String> parameters = cursorFields.stream()
+                        .map(field -> String.format("cast(? as %s)", getCursorFieldType(field)))
+                        .collect(Collectors.toList());
+                    whereConditions.add(String.format(
+                        "(%s) > (%s)", String.join(", ", qualifiedCursorFields), String.join(", ", parameters)
+                    ));
+                    preparedStatementParameters.addAll(cursorValues);
+                }
+            } else {
+                List<String> nullConditions = qualifiedKeyFields.stream()
+                    .map(keyField -> keyField + " is null")
+                    .collect(Collectors.toList());
+                whereConditions.add(String.format("(%s)", String.join(" or ", nullConditions)));
+                // These rows are not held in order of id by any index, but there are few of them.
+                sortBy = String.format(" order by %s", qualifiedIdField);
+                // The cursor for the start of the segment has no id.
+                String id = cursorValues.get(cursorFields.size() - 1);
+                if (id != null) {
+                    whereConditions.add(String.format("%s > cast(? as bigint)", qualifiedIdField));
+                    preparedStatementParameters.add(id);
+                }
+            }
+        }
         if (argumentKeys.containsAll(boundingBoxArgs)) {
             Set<String> boundsConditions = new HashSet<>();
             // Handle bounding box arguments if ALL are supplied. The stops falling within the bounds will be returned.
@@ -340,7 +538,7 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
                         // Search columns will be an empty set, which will ultimately return an empty set.
                         break;
                 }
-                Set<String> searchFields = filterByExistingColumns(namespace, searchColumns);
+                Set<String> searchFields = filterByExistingColumns(tableColumns.get(), searchColumns);
                 List<String> searchClauses = new ArrayList<>();
                 for (String field : searchFields) {
                     // Double percent signs format as single percents, which are used for the string matching.
@@ -355,31 +553,71 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
                 }
             }
         }
+        int limit = getLimit(graphQLQueryArguments);
+        Integer offset = (Integer) graphQLQueryArguments.get(OFFSET_ARG);
+        // When fetching rows for many join values at once, the limit and offset must apply to the rows of each join
+        // value (as they would if each parent entity was fetched on its own), so the rows are numbered within each
+        // join value and filtered on that number.
+        boolean paginateJoinValues = paginateEachJoinValue && childJoinField != null &&
+            (limit != -1 || (offset != null && offset > 0));
+        // Rows without a sort field are numbered in order of id (which is the order in which they were loaded) if the
+        // table has one.
+        String rowOrder = sortField;
+        if (paginateJoinValues && rowOrder == null && tableColumns.get().contains("id")) {
+            rowOrder = "id";
+        }
+        List<String> selectedColumns = columns == null ? null : getColumnsToSelect(columns, tableColumns.get());
+        String selectList;
+        if (selectedColumns == null) {
+            selectList = "*";
+        } else if (paginateJoinValues) {
+            // The numbered rows are selected from a subquery, so the columns need no table name.
+            selectList = String.join(", ", selectedColumns);
+        } else {
+            // Columns are qualified with the table name as other tables may be joined to filter the rows.
+            selectList = selectedColumns.stream()
+                .map(column -> String.join(".", qualifiedTableName, column))
+                .collect(Collectors.joining(", "));
+        }
+        if (paginateJoinValues) {
+            sqlBuilder.append(String.format(
+                "select %s from (select %s.*, row_number() over (partition by %s.%s%s) as %s",
+                selectList,
+                qualifiedTableName,
+                qualifiedTableName,
+                childJoinField,
+                rowOrder == null ? "" : String.format(" order by %s.%s", qualifiedTableName, rowOrder),
+                JOIN_ROW_NUMBER
+            ));
+        } else {
+            sqlBuilder.append("select ").append(selectList);
+        }
         sqlBuilder.append(String.format(" from %s", String.join(", ", fromTables)));
         if (!whereConditions.isEmpty()) {
             sqlBuilder.append(" where ");
             sqlBuilder.append(String.join(" and ", whereConditions));
         }
-        // The default value for sortBy is an empty string, so it's safe to always append it here. Also, there is no
-        // threat of SQL injection because the sort field value is not user input.
-        sqlBuilder.append(sortBy);
-        Integer limit = (Integer) graphQLQueryArguments.get(LIMIT_ARG);
-        if (limit == null) {
-            limit = autoLimit ? DEFAULT_ROWS_TO_FETCH : -1;
-        }
-        if (limit > MAX_ROWS_TO_FETCH) {
-            limit = MAX_ROWS_TO_FETCH;
-        }
-        if (limit == -1) {
-            // Do not append limit if explicitly set to -1 or autoLimit is disabled. NOTE: this conditional block is
-            // empty simply because it is clearer to define the condition in this way (vs. if limit > 0).
-            // FIXME: Skipping limit is not scalable in many cases and should possibly be removed/limited.
+        if (paginateJoinValues) {
+            int firstRow = offset != null && offset > 0 ? offset : 0;
+            sqlBuilder.append(String.format(") as numbered_rows where %s > %d", JOIN_ROW_NUMBER, firstRow));
+            if (limit != -1) {
+                sqlBuilder.append(String.format(" and %s <= %d", JOIN_ROW_NUMBER, firstRow + limit));
+            }
+            if (rowOrder != null) sqlBuilder.append(" order by ").append(rowOrder);
         } else {
-            sqlBuilder.append(" limit ").append(limit);
-        }
-        Integer offset = (Integer) graphQLQueryArguments.get(OFFSET_ARG);
-        if (offset != null && offset >= 0) {
-            sqlBuilder.append(" offset ").append(offset);
+            // The default value for sortBy is an empty string, so it's safe to always append it here. Also, there is
+            // no threat of SQL injection because the sort field value is not user input.
+            sqlBuilder.append(sortBy);
+            if (limit == -1) {
+                // Do not append limit if explicitly set to -1 or autoLimit is disabled. NOTE: this conditional block is
+                // empty simply because it is clearer to define the condition in this way (vs. if limit > 0).
+                // FIXME: Skipping limit is not scalable in many cases and should possibly be removed/limited.
+            } else {
+                sqlBuilder.append(" limit ").append(limit);
+            }
+            if (offset != null && offset >= 0) {
+                sqlBuilder.append(" offset ").append(offset);
+            }
         }
         Connection connection = null;
         try {
@@ -403,7 +641,9 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
                     resultMap.put("namespace", namespace);
                     // One-based iteration: start at one and use <=.
                     for (int i = 1; i <= nColumns; i++) {
-                        resultMap.put(meta.getColumnName(i), resultSet.getObject(i));
+                        String columnName = meta.getColumnName(i);
+                        if (paginateJoinValues && JOIN_ROW_NUMBER.equals(columnName)) continue;
+                        resultMap.put(columnName, resultSet.getObject(i));
                     }
                     results.add(resultMap);
                 }
@@ -418,6 +658,90 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
         return results;
     }
 
+    /**
+     * Get the fields that rows are ordered by when paging with a cursor: the key field of the spec table, then its order
+     * field if it has one, which are the fields of the index on each table (see {@link Table#getIndexFields()}), then
+     * the id to break ties. The id is always needed, because rows with duplicate keys are loaded (and only recorded as
+     * errors), and would otherwise be skipped where they fall on either side of the end of a page. The id is also the
+     * last field of the index, so that a page is read straight from the index without sorting.
+     */
+    List<String> getCursorFields () {
+        Table specTable = SPEC_TABLE_FOR_NAME.get(tableName);
+        if (specTable == null) {
+            throw new IllegalArgumentException(String.format("Cannot page through %s with a cursor.", tableName));
+        }
+        List<String> cursorFields = new ArrayList<>();
+        cursorFields.add(specTable.getKeyFieldName());
+        String orderField = specTable.getOrderFieldName();
+        if (orderField != null) cursorFields.add(orderField);
+        cursorFields.add("id");
+        return cursorFields;
+    }
+
+    private String getCursorFieldType (String field) {
+        if ("id".equals(field)) return "bigint";
+        return SPEC_TABLE_FOR_NAME.get(tableName).getFieldForName(field).getSqlTypeName();
+    }
+
+    /**
+     * Make an opaque cursor pointing just after the given row, which must hold the cursor fields.
+     */
+    String encodeCursor (Map<String, Object> row) {
+        List<String> values = new ArrayList<>();
+        for (String field : getCursorFields()) {
+            Object value = row.get(field);
+            values.add(value == null ? null : value.toString());
+        }
+        try {
+            byte[] json = CURSOR_MAPPER.writeValueAsBytes(values);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Make a cursor pointing to the start of the rows with null key values, which are paged through after all the rows
+     * with key values.
+     */
+    String makeNullKeysCursor () {
+        return encodeCursor(new HashMap<>());
+    }
+
+    /**
+     * @return whether the cursor points into the rows with null key values, i.e., any of its key values are null.
+     */
+    boolean isNullKeysCursor (String cursor) {
+        return cursor != null && isNullKeysCursor(decodeCursor(cursor, getCursorFields().size()));
+    }
+
+    private static boolean isNullKeysCursor (List<String> cursorValues) {
+        return cursorValues.subList(0, cursorValues.size() - 1).contains(null);
+    }
+
+    /**
+     * @return the values of the cursor fields held in a cursor made by {@link #encodeCursor}.
+     */
+    private static List<String> decodeCursor (String cursor, int fieldCount) {
+        List<String> values;
+        try {
+            values = CURSOR_MAPPER.readValue(
+                Base64.getUrlDecoder().decode(cursor),
+                new TypeReference<List<String>>() {}
+            );
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Cursor is not valid.");
+        }
+        if (values == null || values.size() != fieldCount) {
+            throw new IllegalArgumentException("Cursor is not valid.");
+        }
+        // The id (the last field) can only be null in the cursor for the start of the rows with null key values.
+        if (values.get(fieldCount - 1) == null && !isNullKeysCursor(values)) {
+            throw new IllegalArgumentException("Cursor is not valid.");
+        }
+        return values;
+    }
+
     private static String getDateArgument(Map<String, Object> arguments) {
         String date = (String) arguments.get(DATE_ARG);
         if (date == null || date.length() != 8) {
@@ -448,14 +772,13 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
     }
 
     /**
-     * Check for the existence of the specified columns in the table. Note: this query seems to take
-     * between 10 and 30 milliseconds to get column names. This seems acceptable to avoid errors on,
-     * e.g., where conditions that include columns which don't exist.
+     * Get the names of the columns of the table. Note: this query seems to take between 10 and 30 milliseconds to get
+     * column names. This seems acceptable to avoid errors on, e.g., where conditions that include columns which don't
+     * exist.
      * @param namespace         table namespace/feed ID
-     * @param columnsToCheck    columns to verify existence in table
-     * @return                  filtered set of columns verified to exist in table
+     * @return                  the columns that exist in the table
      */
-    private Set<String> filterByExistingColumns(String namespace, String... columnsToCheck) {
+    private Set<String> getTableColumns(String namespace) {
         // Collect existing columns here.
         Set<String> columnsForTable = new HashSet<>();
         // Check table metadata for presence of columns.
@@ -475,11 +798,46 @@ public class JDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
         } finally {
             DbUtils.closeQuietly(connection);
         }
-        // Filter available columns in table by search columns.
-        columnsForTable.retainAll(Arrays.asList(columnsToCheck));
         return columnsForTable;
     }
 
+    /**
+     * @param columnsForTable   the columns that exist in the table
+     * @param columnsToCheck    columns to verify existence in table
+     * @return                  filtered set of columns verified to exist in table
+     */
+    private static Set<String> filterByExistingColumns(Set<String> columnsForTable, String... columnsToCheck) {
+        Set<String> existingColumns = new HashSet<>(Arrays.asList(columnsToCheck));
+        existingColumns.retainAll(columnsForTable);
+        return existingColumns;
+    }
+
+    /**
+     * Check the requested columns against the spec table with this fetcher's table name, so that only known column
+     * names make it into the select clause. Columns the spec defines but the table does not have (e.g., optional
+     * fields missing from the feed) are skipped, so they are missing from the rows just as they would be when selecting
+     * all columns.
+     * @return the columns to select, or null if all columns must be selected because the table or one of the columns
+     *         is not in the spec.
+     */
+    private List<String> getColumnsToSelect(Set<String> columns, Set<String> columnsForTable) {
+        Table specTable = SPEC_TABLE_FOR_NAME.get(tableName);
+        if (specTable == null) return null;
+        List<String> columnsToSelect = new ArrayList<>();
+        Set<String> requiredColumns = new TreeSet<>(columns);
+        // The join field is needed to hand the rows back to their parents when fetching for many parents at once.
+        if (childJoinField != null) requiredColumns.add(childJoinField);
+        for (String column : requiredColumns) {
+            if (!"id".equals(column) && !specTable.hasField(column)) {
+                LOG.debug("{} is not a column of the {} spec table, selecting all columns.", column, tableName);
+                return null;
+            }
+            if (columnsForTable.contains(column)) columnsToSelect.add(column);
+        }
+        // Selecting no columns at all is not valid SQL.
+        return columnsToSelect.isEmpty() ? null : columnsToSelect;
+    }
+
     /**
      * Construct filter clause with '=' (single string) and add values to list of parameters.
      * */
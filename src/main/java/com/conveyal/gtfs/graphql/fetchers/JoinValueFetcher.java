@@ -0,0 +1,25 @@
+package com.conveyal.gtfs.graphql.fetchers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A fetcher of the rows joined to parent entities by a join value, which can fetch the rows for many join values at
+ * once. This is what the {@link JDBCBatchLoader} calls to fetch the rows for all the parent entities at one level of a
+ * GraphQL query.
+ */
+interface JoinValueFetcher {
+
+    /**
+     * @param arguments the GraphQL arguments of the field, which are applied to the rows for each join value.
+     * @param columns the columns to fetch, or null to fetch all columns.
+     * @return the rows for each of the join values (with an empty list for join values that have no rows).
+     */
+    Map<String, List<Map<String, Object>>> getResultsForJoinValues (
+        String namespace,
+        List<String> joinValues,
+        Map<String, Object> arguments,
+        Set<String> columns
+    );
+}
@@ -11,8 +11,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static com.conveyal.gtfs.graphql.GraphQLUtil.multiStringArg;
 import static com.conveyal.gtfs.graphql.GraphQLUtil.stringArg;
@@ -23,10 +30,15 @@ import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
  * joins to leap frog from one entity to another more distantly-related entity. For example, if we want to know the
  * routes that serve a specific stop, starting with a top-level stop type, we can nest joins from stop ABC -> pattern
  * stops -> patterns -> routes (see below example implementation for more details).
+ *
+ * As with {@link JDBCFetcher}, when the request has a {@link JDBCBatchLoader} registered, the joins are made for all the
+ * parent entities at one level of the query at once, with one query for each fetcher in the chain.
  */
-public class NestedJDBCFetcher implements DataFetcher<List<Map<String, Object>>> {
+public class NestedJDBCFetcher implements DataFetcher<CompletableFuture<List<Map<String, Object>>>>, JoinValueFetcher {
 
     private static final Logger LOG = LoggerFactory.getLogger(NestedJDBCFetcher.class);
+    // The number of join values in each query when joining for many parents at once.
+    private static final int MAX_JOIN_VALUES_PER_QUERY = 10_000;
     private final JDBCFetcher[] jdbcFetchers;
 
     // Supply an SQL result row -> Object transformer
@@ -59,7 +71,28 @@ public class NestedJDBCFetcher implements DataFetcher<List<Map<String, Object>>>
     }
 
     @Override
-    public List<Map<String, Object>> get (DataFetchingEnvironment environment) {
+    public CompletableFuture<List<Map<String, Object>>> get (DataFetchingEnvironment environment) {
+        Map<String, Object> parentEntityMap = environment.getSource();
+        Object parentJoinValue = parentEntityMap.get(getParentJoinField());
+        if (parentJoinValue != null) {
+            String namespace = (String) parentEntityMap.get("namespace");
+            Set<String> columns = JDBCFetcher.getSelectedColumns(environment);
+            CompletableFuture<List<Map<String, Object>>> batchedResults =
+                JDBCBatchLoader.load(environment, this, namespace, parentJoinValue.toString(), columns);
+            if (batchedResults != null) return batchedResults;
+        }
+        return CompletableFuture.completedFuture(getResults(environment));
+    }
+
+    /** @return the field of the parent entity that the first fetcher joins on. */
+    String getParentJoinField () {
+        return jdbcFetchers[0].parentJoinField;
+    }
+
+    /**
+     * Make the chain of joins for a single parent entity.
+     */
+    private List<Map<String, Object>> getResults (DataFetchingEnvironment environment) {
         // Store the join values here.
         ListMultimap<String, String> joinValuesForJoinField = MultimapBuilder.treeKeys().arrayListValues().build();
 
@@ -125,4 +158,118 @@ public class NestedJDBCFetcher implements DataFetcher<List<Map<String, Object>>>
         // Last iteration should finally return results.
         return fetchResults;
     }
+
+    /**
+     * Make the chain of joins for many parent join values at once, with one query for each fetcher. The values to join
+     * on at each step are tracked for each parent join value, so that the rows of the final table can be handed back to
+     * the parent entities they were reached from.
+     */
+    @Override
+    public Map<String, List<Map<String, Object>>> getResultsForJoinValues (
+        String namespace,
+        List<String> joinValues,
+        Map<String, Object> arguments,
+        Set<String> columns
+    ) {
+        // The values to join on with the current fetcher, for each parent join value.
+        Map<String, Set<String>> currentValuesForParent = new LinkedHashMap<>();
+        for (String joinValue : joinValues) {
+            currentValuesForParent.put(joinValue, new HashSet<>(Collections.singleton(joinValue)));
+        }
+        Set<String> currentValues = new LinkedHashSet<>(joinValues);
+        JDBCFetcher lastFetcher = jdbcFetchers[jdbcFetchers.length - 1];
+        // Arguments are only applied for the final fetcher iteration, except for the limit and offset which apply to
+        // the rows for each parent and so are applied below. No limit applies to the joins on the way there.
+        Map<String, Object> noLimit = new HashMap<>();
+        noLimit.put(JDBCFetcher.LIMIT_ARG, -1);
+        Map<String, Object> lastArguments = new HashMap<>(arguments);
+        lastArguments.putAll(noLimit);
+        lastArguments.remove(JDBCFetcher.OFFSET_ARG);
+        List<Map<String, Object>> fetchResults = new ArrayList<>();
+        for (int i = 0; i < jdbcFetchers.length && !currentValues.isEmpty(); i++) {
+            JDBCFetcher fetcher = jdbcFetchers[i];
+            boolean last = i == jdbcFetchers.length - 1;
+            if (last) {
+                fetchResults = getResultsInChunks(fetcher, namespace, currentValues, lastArguments, columns);
+                break;
+            }
+            // The joins on the way only need the columns to join on.
+            JDBCFetcher nextFetcher = jdbcFetchers[i + 1];
+            Set<String> joinColumns = new HashSet<>(Collections.singleton(nextFetcher.parentJoinField));
+            fetchResults = getResultsInChunks(fetcher, namespace, currentValues, noLimit, joinColumns);
+            // Find the values that each current value leads to for the next fetcher.
+            Map<String, Set<String>> nextValuesForValue = new HashMap<>();
+            for (Map<String, Object> entity : fetchResults) {
+                Object value = entity.get(fetcher.childJoinField);
+                Object nextValue = entity.get(nextFetcher.parentJoinField);
+                if (value != null && nextValue != null) {
+                    nextValuesForValue.computeIfAbsent(value.toString(), k -> new HashSet<>()).add(nextValue.toString());
+                }
+            }
+            currentValues = new LinkedHashSet<>();
+            for (Map.Entry<String, Set<String>> entry : currentValuesForParent.entrySet()) {
+                Set<String> nextValues = new HashSet<>();
+                for (String value : entry.getValue()) {
+                    nextValues.addAll(nextValuesForValue.getOrDefault(value, Collections.emptySet()));
+                }
+                entry.setValue(nextValues);
+                currentValues.addAll(nextValues);
+            }
+        }
+        // Hand each row of the final table to the parents that reached its join value, in the order the rows were
+        // fetched, then page through the rows of each parent.
+        Map<String, List<String>> parentsForValue = new HashMap<>();
+        Map<String, List<Map<String, Object>>> resultsForParent = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : currentValuesForParent.entrySet()) {
+            for (String value : entry.getValue()) {
+                parentsForValue.computeIfAbsent(value, k -> new ArrayList<>()).add(entry.getKey());
+            }
+            resultsForParent.put(entry.getKey(), new ArrayList<>());
+        }
+        if (!currentValues.isEmpty()) {
+            for (Map<String, Object> entity : fetchResults) {
+                Object value = entity.get(lastFetcher.childJoinField);
+                if (value == null) continue;
+                for (String parent : parentsForValue.getOrDefault(value.toString(), Collections.emptyList())) {
+                    resultsForParent.get(parent).add(entity);
+                }
+            }
+        }
+        int limit = lastFetcher.getLimit(arguments);
+        for (Map.Entry<String, List<Map<String, Object>>> entry : resultsForParent.entrySet()) {
+            entry.setValue(paginate(entry.getValue(), limit, arguments));
+        }
+        return resultsForParent;
+    }
+
+    /**
+     * Fetch the rows for the join values with as many queries as needed to keep each query under the limit on the
+     * number of parameters in a prepared statement, as the joins of many parents can reach a great many values.
+     */
+    private static List<Map<String, Object>> getResultsInChunks (
+        JDBCFetcher fetcher,
+        String namespace,
+        Set<String> joinValues,
+        Map<String, Object> arguments,
+        Set<String> columns
+    ) {
+        List<String> values = new ArrayList<>(joinValues);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += MAX_JOIN_VALUES_PER_QUERY) {
+            List<String> chunk = values.subList(i, Math.min(i + MAX_JOIN_VALUES_PER_QUERY, values.size()));
+            results.addAll(fetcher.getResults(namespace, new ArrayList<>(chunk), arguments, columns, false));
+        }
+        return results;
+    }
+
+    private static List<Map<String, Object>> paginate (
+        List<Map<String, Object>> results,
+        int limit,
+        Map<String, Object> arguments
+    ) {
+        Integer offset = (Integer) arguments.get(JDBCFetcher.OFFSET_ARG);
+        int fromIndex = offset != null && offset > 0 ? Math.min(offset, results.size()) : 0;
+        int toIndex = limit == -1 ? results.size() : Math.min(fromIndex + limit, results.size());
+        return new ArrayList<>(results.subList(fromIndex, toIndex));
+    }
 }
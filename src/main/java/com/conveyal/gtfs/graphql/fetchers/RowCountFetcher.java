@@ -36,7 +36,7 @@ public class RowCountFetcher implements DataFetcher {
 
     private final String tableName;
     // Filter field is optionally dynamic if an entity ID argument is provided for the groupByField.
-    private final String filterField;
+    final String filterField;
     private final String groupByField;
 
     public RowCountFetcher(String tableName) {
@@ -6,15 +6,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This wraps an SQL row fetcher, extracting only a single column of the specified type.
  * Because there's only one column, it collapses the result down into a list of elements of that column's type,
  * rather than a list of maps (one for each row) as the basic SQL fetcher does.
  */
-public class SQLColumnFetcher<T> implements DataFetcher<List<T>> {
+public class SQLColumnFetcher<T> implements DataFetcher<CompletableFuture<List<T>>> {
 
     public static final Logger LOG = LoggerFactory.getLogger(SQLColumnFetcher.class);
 
@@ -33,13 +35,19 @@ public class SQLColumnFetcher<T> implements DataFetcher<List<T>> {
     }
 
     @Override
-    public List<T> get (DataFetchingEnvironment environment) {
-        List<T> result = new ArrayList<>();
-        // Ideally we'd only fetch one column in the wrapped row fetcher.
-        for (Map<String, Object> row : jdbcFetcher.get(environment)) {
-            result.add((T)row.get(columnName));
-        }
-        return result;
+    public CompletableFuture<List<T>> get (DataFetchingEnvironment environment) {
+        return jdbcFetcher.get(environment, Collections.singleton(columnName)).thenApply(rows -> {
+            List<T> result = new ArrayList<>();
+            for (Map<String, Object> row : rows) {
+                result.add((T)row.get(columnName));
+            }
+            return result;
+        });
+    }
+
+    /** @return the field of the parent entity that the rows are joined on. */
+    String getParentJoinField () {
+        return jdbcFetcher.parentJoinField;
     }
 
 }
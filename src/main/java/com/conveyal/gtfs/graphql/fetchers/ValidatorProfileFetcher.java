@@ -0,0 +1,59 @@
+package com.conveyal.gtfs.graphql.fetchers;
+
+import com.conveyal.gtfs.graphql.GTFSGraphQL;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.apache.commons.dbutils.DbUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Get the resources used by each validator the last time the feed was validated (see ValidatorProfile), in the order
+ * the validators were run, so that a slow validator can be found without profiling the whole application.
+ */
+public class ValidatorProfileFetcher implements DataFetcher {
+
+    public static final Logger LOG = LoggerFactory.getLogger(ValidatorProfileFetcher.class);
+
+    @Override
+    public Object get(DataFetchingEnvironment environment) {
+        List<Map<String, Object>> profiles = new ArrayList<>();
+        Map<String, Object> parentFeedMap = environment.getSource();
+        String namespace = (String) parentFeedMap.get("namespace");
+        Connection connection = null;
+        try {
+            connection = GTFSGraphQL.getConnection();
+            // The table is only created when a feed is validated, so is missing for feeds that were only loaded or
+            // were validated before profiles were stored.
+            try (ResultSet tables = connection.getMetaData().getTables(null, namespace, "validator_profiles", null)) {
+                if (!tables.next()) return profiles;
+            }
+            String sql = String.format("select * from %s.validator_profiles order by id", namespace);
+            LOG.info("SQL: {}", sql);
+            ResultSet resultSet = connection.createStatement().executeQuery(sql);
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            while (resultSet.next()) {
+                Map<String, Object> profile = new HashMap<>();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    profile.put(metaData.getColumnName(i), resultSet.getObject(i));
+                }
+                profiles.add(profile);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            DbUtils.closeQuietly(connection);
+        }
+        return profiles;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.conveyal.gtfs.loader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.conveyal.gtfs.loader.JdbcGtfsLoader.POSTGRES_NULL_TEXT;
+
+/**
+ * Writes rows of a GTFS table in the Postgres binary copy format, in which numbers are sent as fixed width binary
+ * values rather than text that the database must parse again. Each row is written from the same array of converted
+ * strings that would make up a line of the text copy format (CSV line number followed by the field values), with each
+ * value encoded by its Field.
+ * https://www.postgresql.org/docs/current/sql-copy.html#id-1.9.3.55.9.4
+ */
+public class BinaryCopyWriter {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private final DataOutputStream out;
+    private final Field[] fields;
+
+    /**
+     * Begin writing rows with the given fields (in the order of the target table's columns after its id column) to the
+     * output stream.
+     */
+    public BinaryCopyWriter (OutputStream outputStream, Field[] fields) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.fields = fields;
+        out.write(SIGNATURE);
+        // Flags field (no OIDs) and header extension area length.
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    /**
+     * @return whether all the fields can be written in the binary copy format.
+     */
+    public static boolean supportsFields (Field[] fields) {
+        for (Field field : fields) if (!field.supportsBinaryCopy()) return false;
+        return true;
+    }
+
+    /**
+     * Write one row. The first element of transformedStrings is the CSV line number (which fills the id column) and
+     * the rest are the values produced by validateAndConvert, or the Postgres null text.
+     */
+    public void writeRow (String[] transformedStrings) throws IOException {
+        writeRow(out, fields, transformedStrings);
+    }
+
+    /**
+     * Write rows that have already been encoded with {@link #writeRow(DataOutputStream, Field[], String[])}.
+     */
+    public void writeEncodedRows (byte[] encodedRows) throws IOException {
+        out.write(encodedRows);
+    }
+
+    /**
+     * Encode one row (without the header written by a BinaryCopyWriter), so that rows can be encoded on other threads
+     * and then passed to {@link #writeEncodedRows(byte[])}.
+     */
+    public static void writeRow (DataOutputStream out, Field[] fields, String[] transformedStrings) throws IOException {
+        out.writeShort(fields.length + 1);
+        out.writeInt(Long.BYTES);
+        out.writeLong(Long.parseLong(transformedStrings[0]));
+        for (int i = 0; i < fields.length; i++) {
+            String clean = transformedStrings[i + 1];
+            if (clean == null || POSTGRES_NULL_TEXT.equals(clean)) out.writeInt(-1);
+            else fields[i].writeBinaryCopyValue(out, clean);
+        }
+    }
+
+    /**
+     * Write the file trailer and close the underlying stream.
+     */
+    public void close () throws IOException {
+        out.writeShort(-1);
+        out.close();
+    }
+}
@@ -4,6 +4,8 @@ import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.storage.StorageException;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.SQLType;
@@ -47,6 +49,15 @@ public class BooleanField extends Field {
         return ValidateFieldResult.from(validate(string));
     }
 
+    /**
+     * The converted "true" or "false" string is sent as a single byte.
+     */
+    @Override
+    public void writeBinaryCopyValue (DataOutputStream out, String clean) throws IOException {
+        out.writeInt(1);
+        out.writeByte(Boolean.parseBoolean(clean) ? 1 : 0);
+    }
+
     @Override
     public SQLType getSqlType () {
         return JDBCType.BOOLEAN;
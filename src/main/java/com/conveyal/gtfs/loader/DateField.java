@@ -8,6 +8,8 @@ import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.SQLType;
 import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Collections;
@@ -30,6 +32,7 @@ public class DateField extends Field {
     }
 
     public static ValidateFieldResult<String> validate (String string) {
+        if (isValidDate(string)) return ValidateFieldResult.valid(string);
         // Initialize default value as null (i.e., don't use the input value).
         ValidateFieldResult<String> result = new ValidateFieldResult<>();
         // Parse the date out of the supplied string.
@@ -50,6 +53,25 @@ public class DateField extends Field {
         return result;
     }
 
+    /**
+     * Fast path for well-formed dates within range, which scans the characters in place rather than parsing with
+     * the formatter.
+     * @return true if the date is valid, or false if the slow path must be taken to find any errors.
+     */
+    private static boolean isValidDate (String string) {
+        if (string.length() != 8) return false;
+        int year = 0, month = 0, day = 0;
+        for (int i = 0; i < 8; i++) {
+            int digit = TimeField.digit(string, i);
+            if (digit < 0) return false;
+            if (i < 4) year = year * 10 + digit;
+            else if (i < 6) month = month * 10 + digit;
+            else day = day * 10 + digit;
+        }
+        return year >= 2000 && year <= 2100 && month >= 1 && month <= 12 && day >= 1 &&
+            day <= Month.of(month).length(Year.isLeap(year));
+    }
+
     @Override
     public Set<NewGTFSError> setParameter (PreparedStatement preparedStatement, int oneBasedIndex, String string) {
         try {
@@ -45,6 +45,14 @@ public class DateListField extends Field {
         }
     }
 
+    /**
+     * Arrays are not encoded in the binary copy format (this field does not appear in GTFS tables anyway).
+     */
+    @Override
+    public boolean supportsBinaryCopy() {
+        return false;
+    }
+
     @Override
     public SQLType getSqlType() {
         return JDBCType.ARRAY;
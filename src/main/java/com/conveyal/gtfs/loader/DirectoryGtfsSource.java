@@ -0,0 +1,84 @@
+package com.conveyal.gtfs.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A GTFS feed that has already been unzipped into a directory. The files are read directly from disk, so nothing needs
+ * to be inflated while loading.
+ */
+public class DirectoryGtfsSource implements GtfsSource {
+
+    private final Path directory;
+    // CRCs are computed by reading the whole file, so are only computed once for each file.
+    private final Map<String, Long> crcForEntry = new ConcurrentHashMap<>();
+
+    public DirectoryGtfsSource (String directoryPath) {
+        this.directory = Paths.get(directoryPath);
+    }
+
+    @Override
+    public String getName () {
+        return directory.toString();
+    }
+
+    @Override
+    public String findEntry (String fileName) throws IOException {
+        if (Files.isRegularFile(directory.resolve(fileName))) return fileName;
+        // File was not found, check if it is in a subdirectory.
+        try (Stream<Path> paths = Files.walk(directory)) {
+            Optional<Path> path = paths
+                .filter(p -> Files.isRegularFile(p) && p.getFileName().toString().equals(fileName))
+                .sorted()
+                .findFirst();
+            return path.map(p -> directory.relativize(p).toString().replace('\\', '/')).orElse(null);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream (String entryName) throws IOException {
+        return Files.newInputStream(directory.resolve(entryName));
+    }
+
+    @Override
+    public long getSize (String entryName) throws IOException {
+        return Files.size(directory.resolve(entryName));
+    }
+
+    /**
+     * Compute the same CRC-32 checksum that would be recorded for the file in a zip file, so that loading a feed from a
+     * directory can be compared with loading it from a zip file (see {@link JdbcGtfsLoader#withPreviousNamespace}).
+     */
+    @Override
+    public long getCrc (String entryName) throws IOException {
+        Long crc = crcForEntry.get(entryName);
+        if (crc != null) return crc;
+        CRC32 crc32 = new CRC32();
+        try (FileChannel channel = FileChannel.open(directory.resolve(entryName), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc32.update(buffer);
+                buffer.clear();
+            }
+        }
+        crcForEntry.put(entryName, crc32.getValue());
+        return crc32.getValue();
+    }
+
+    @Override
+    public void close () {
+        // Nothing to release, each file is closed by its reader.
+    }
+}
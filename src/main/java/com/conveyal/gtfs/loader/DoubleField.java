@@ -3,9 +3,12 @@ package com.conveyal.gtfs.loader;
 import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.storage.StorageException;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.SQLType;
+import java.util.Collections;
 import java.util.Set;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.NUMBER_PARSING;
@@ -24,6 +27,12 @@ public class DoubleField extends Field {
     // A value less than 0 indicates that no rounding should happen.
     private int outputPrecision;
 
+    // Powers of ten that are exactly representable as doubles, for the fast path in parsePlainDecimal.
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    private static final int MAX_FAST_PATH_DIGITS = 15;
+
     public DoubleField (String name, Requirement requirement, double minValue, double maxValue, int outputPrecision) {
         super(name, requirement);
         this.minValue = minValue;
@@ -43,9 +52,44 @@ public class DoubleField extends Field {
         return result;
     }
 
+    /**
+     * Fast path for numbers written in plain decimal form (e.g., -122.4194) with no more than 15 digits, which scans
+     * the characters in place. The digits make up an integer that is exactly representable as a double, so dividing it
+     * by an (also exact) power of ten gives the correctly rounded value, just as Double.parseDouble would.
+     * @return the value, or NaN if the slow path must be taken to parse the value and find any errors.
+     */
+    static double parsePlainDecimal (String string) {
+        int length = string.length();
+        boolean negative = length > 0 && string.charAt(0) == '-';
+        int i = negative ? 1 : 0;
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigitCount = -1;
+        for (; i < length; i++) {
+            char c = string.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                digitCount += 1;
+                if (fractionDigitCount >= 0) fractionDigitCount += 1;
+            } else if (c == '.' && fractionDigitCount < 0 && digitCount > 0) {
+                fractionDigitCount = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digitCount == 0 || digitCount > MAX_FAST_PATH_DIGITS || fractionDigitCount == 0) return Double.NaN;
+        double value = fractionDigitCount > 0 ? digits / POWERS_OF_TEN[fractionDigitCount] : digits;
+        return negative ? -value : value;
+    }
+
     @Override
     public Set<NewGTFSError> setParameter(PreparedStatement preparedStatement, int oneBasedIndex, String string) {
         try {
+            double value = parsePlainDecimal(string);
+            if (!Double.isNaN(value)) {
+                preparedStatement.setDouble(oneBasedIndex, value);
+                return Collections.emptySet();
+            }
             ValidateFieldResult<Double> result = validate(string);
             preparedStatement.setDouble(oneBasedIndex, result.clean);
             return result.errors;
@@ -56,9 +100,18 @@ public class DoubleField extends Field {
 
     @Override
     public ValidateFieldResult<String> validateAndConvert(String string) {
+        // A plain decimal number converts to exactly the same double as the text of the parsed value, so the original
+        // string can be passed through unchanged.
+        if (!Double.isNaN(parsePlainDecimal(string))) return ValidateFieldResult.valid(string);
         return ValidateFieldResult.from(validate(string));
     }
 
+    @Override
+    public void writeBinaryCopyValue (DataOutputStream out, String clean) throws IOException {
+        out.writeInt(Double.BYTES);
+        out.writeDouble(Double.parseDouble(clean));
+    }
+
     @Override
     public SQLType getSqlType () {
         return JDBCType.DOUBLE;
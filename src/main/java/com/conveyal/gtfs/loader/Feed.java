@@ -12,8 +12,22 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.VALIDATOR_FAILED;
 
@@ -40,6 +54,17 @@ public class Feed {
     public final TableReader<Trip>          trips;
     public final TableReader<StopTime>      stopTimes;
 
+    // The maximum number of errors of each type stored for each table by the validators.
+    private int maxErrorsPerType = Integer.MAX_VALUE;
+    // The number of threads checking trips in NewTripTimesValidator.
+    private int tripValidationThreads = 1;
+    // The number of validators that may validate the feed at the same time.
+    private int validatorThreads = 1;
+    // A trip times validator that already checked the trips while the feed was loaded, if any.
+    private NewTripTimesValidator streamedTripTimesValidator;
+    // Whether to measure the resources used by each trip validator as well as each feed validator.
+    private boolean tripValidatorProfiling = false;
+
     /**
      * Create a feed that reads tables over a JDBC connection. The connection should already be set to the right
      * schema within the database.
@@ -61,6 +86,60 @@ public class Feed {
         stopTimes = new JDBCTableReader(Table.STOP_TIMES, dataSource, tablePrefix, EntityPopulator.STOP_TIME);
     }
 
+    /**
+     * Fluent method that limits the number of errors of each type stored for each table during validation, beyond
+     * which errors are only counted (see {@link SQLErrorStorage#withMaxErrorsPerType(int)}). Errors stored while
+     * loading the feed count towards the limit.
+     */
+    public Feed withMaxErrorsPerType(int maxErrorsPerType) {
+        this.maxErrorsPerType = maxErrorsPerType;
+        return this;
+    }
+
+    /**
+     * Fluent method that sets the number of threads checking the stop times of each trip in
+     * {@link NewTripTimesValidator}, which is usually the slowest validator. The errors found do not depend on the
+     * number of threads. The default of one thread checks every trip on the thread reading the stop times.
+     */
+    public Feed withTripValidationThreads(int tripValidationThreads) {
+        this.tripValidationThreads = tripValidationThreads;
+        return this;
+    }
+
+    /**
+     * Fluent method that sets the number of validators that may validate the feed at the same time, each reading
+     * tables over its own pooled connections. Validators are only run at the same time when neither writes a table the
+     * other uses (see {@link FeedValidator#canRunAlongside(FeedValidator)}), and are always completed one at a time in
+     * order. The same errors are found, but errors found by different validators may be stored in a different order.
+     * The default of one thread runs every validator in turn.
+     */
+    public Feed withValidatorThreads(int validatorThreads) {
+        this.validatorThreads = validatorThreads;
+        return this;
+    }
+
+    /**
+     * Fluent method that completes validation with a trip times validator that already checked the trips while the
+     * feed was loaded (see {@link JdbcGtfsLoader#withTripValidationWhileLoading(boolean)}), so the stop times are not
+     * read back from the database. The errors it found are stored when validation begins. Passing null (i.e. the
+     * trips were not checked while loading) has no effect.
+     */
+    public Feed withTripsValidatedWhileLoading(NewTripTimesValidator streamedTripTimesValidator) {
+        this.streamedTripTimesValidator = streamedTripTimesValidator;
+        return this;
+    }
+
+    /**
+     * Fluent method that breaks down the resources used by {@link NewTripTimesValidator} into those used by each of
+     * its trip validators in the validator profiles of the validation result (see
+     * {@link NewTripTimesValidator#withTripValidatorProfiling(boolean)}). The resources used by each feed validator
+     * are always profiled.
+     */
+    public Feed withTripValidatorProfiling(boolean tripValidatorProfiling) {
+        this.tripValidatorProfiling = tripValidatorProfiling;
+        return this;
+    }
+
     /**
      * Run the standard validation checks for this feed and store the validation errors in the database. Optionally,
      * takes one or more {@link FeedValidatorCreator} in the form of lambda method refs (e.g., {@code MTCValidator::new}),
@@ -78,11 +157,22 @@ public class Feed {
         // Reconnect to the existing error tables.
         SQLErrorStorage errorStorage;
         try {
-            errorStorage = new SQLErrorStorage(dataSource.getConnection(), tablePrefix, false);
+            errorStorage = new SQLErrorStorage(dataSource.getConnection(), tablePrefix, false)
+                .withBackgroundWriter(dataSource)
+                .withMaxErrorsPerType(maxErrorsPerType);
         } catch (SQLException | InvalidNamespaceException ex) {
             throw new StorageException(ex);
         }
         int errorCountBeforeValidation = errorStorage.getErrorCount();
+        NewTripTimesValidator tripTimesValidator = streamedTripTimesValidator;
+        if (tripTimesValidator == null) {
+            tripTimesValidator = new NewTripTimesValidator(this, errorStorage, tripValidationThreads);
+        } else {
+            tripTimesValidator.resumeStreamedValidation(this, errorStorage);
+            // The validator holds the state of a single validation run.
+            streamedTripTimesValidator = null;
+        }
+        tripTimesValidator.withTripValidatorProfiling(tripValidatorProfiling);
         // Create list of standard validators to run on every feed.
         List<FeedValidator> feedValidators = Lists.newArrayList(
             new MisplacedStopValidator(this, errorStorage, validationResult),
@@ -90,33 +180,31 @@ public class Feed {
             new FaresValidator(this, errorStorage),
             new FrequencyValidator(this, errorStorage),
             new TimeZoneValidator(this, errorStorage),
-            new NewTripTimesValidator(this, errorStorage),
+            tripTimesValidator,
             new NamesValidator(this, errorStorage)
         );
         // Create additional validators specified in this method's args and add to list of feed validators to run.
         for (FeedValidatorCreator creator : additionalValidators) {
             if (creator != null) feedValidators.add(creator.create(this, errorStorage));
         }
-
+        // The resources used by each validator, which are filled in by the thread that runs it.
+        Map<FeedValidator, ValidatorProfile> profileForValidator = new LinkedHashMap<>();
         for (FeedValidator feedValidator : feedValidators) {
-            String validatorName = feedValidator.getClass().getSimpleName();
-            try {
-                LOG.info("Running {}.", validatorName);
-                int errorCountBefore = errorStorage.getErrorCount();
-                feedValidator.validate();
-                LOG.info("{} found {} errors.", validatorName, errorStorage.getErrorCount() - errorCountBefore);
-            } catch (Exception e) {
-                // store an error if the validator fails
-                // FIXME: should the exception be stored?
-                String badValue = String.join(":", validatorName, e.toString());
-                errorStorage.storeError(NewGTFSError.forFeed(VALIDATOR_FAILED, badValue));
-                LOG.error("{} failed.", validatorName);
-                LOG.error(e.toString());
-                e.printStackTrace();
+            profileForValidator.put(feedValidator, new ValidatorProfile(feedValidator, null));
+        }
+
+        if (validatorThreads > 1) {
+            runValidatorsConcurrently(feedValidators, errorStorage, profileForValidator);
+        } else {
+            for (FeedValidator feedValidator : feedValidators) {
+                runValidator(feedValidator, errorStorage, profileForValidator.get(feedValidator));
             }
         }
         // Signal to all validators that validation is complete and allow them to report on results / status.
+        ValidatorProfile.Meter meter = new ValidatorProfile.Meter();
         for (FeedValidator feedValidator : feedValidators) {
+            int errorCountBefore = errorStorage.getErrorCountForCurrentThread();
+            meter.start();
             try {
                 feedValidator.complete(validationResult);
             } catch (Exception e) {
@@ -124,6 +212,18 @@ public class Feed {
                 errorStorage.storeError(NewGTFSError.forFeed(VALIDATOR_FAILED, badValue));
                 LOG.error("Validator failed completion stage.", e);
             }
+            meter.stop(
+                profileForValidator.get(feedValidator),
+                errorStorage.getErrorCountForCurrentThread() - errorCountBefore
+            );
+        }
+        for (Map.Entry<FeedValidator, ValidatorProfile> entry : profileForValidator.entrySet()) {
+            validationResult.validatorProfiles.add(entry.getValue());
+            if (entry.getKey() instanceof NewTripTimesValidator) {
+                validationResult.validatorProfiles.addAll(
+                    ((NewTripTimesValidator) entry.getKey()).getTripValidatorProfiles()
+                );
+            }
         }
         // Total validation errors accounts for errors found during both loading and validation. Otherwise, this value
         // may be confusing if it reads zero but there were a number of data type or referential integrity errors found
@@ -132,6 +232,11 @@ public class Feed {
         LOG.info("Errors found during load stage: {}", errorCountBeforeValidation);
         LOG.info("Errors found by validators: {}", totalValidationErrors - errorCountBeforeValidation);
         errorStorage.commitAndClose();
+        LOG.info("Released {} stops, trips and routes cached during validation.", clearIndexes());
+        storeValidatorProfiles(validationResult.validatorProfiles);
+        recordValidated();
+        // Validation writes errors and derived tables into the namespace, so any results cached before are outdated.
+        NamespaceChanges.notifyChanged(tablePrefix.replace(".", ""));
         long validationEndTime = System.currentTimeMillis();
         long totalValidationTime = validationEndTime - validationStartTime;
         LOG.info("{} validators completed in {} milliseconds.", feedValidators.size(), totalValidationTime);
@@ -144,6 +249,167 @@ public class Feed {
         return validationResult;
     }
 
+    /**
+     * @return a read-only index of the stops by ID, which is read from the database once and shared by all validators.
+     */
+    public Map<String, Stop> stopById() {
+        return stops.getIndex();
+    }
+
+    /**
+     * @return a read-only index of the trips by ID, which is read from the database once and shared by all validators.
+     */
+    public Map<String, Trip> tripById() {
+        return trips.getIndex();
+    }
+
+    /**
+     * @return a read-only index of the routes by ID, which is read from the database once and shared by all
+     * validators.
+     */
+    public Map<String, Route> routeById() {
+        return routes.getIndex();
+    }
+
+    /**
+     * Release the indexes of stops, trips and routes so that the memory they hold can be reclaimed.
+     * @return the number of entities that were held in the indexes.
+     */
+    public int clearIndexes() {
+        return stops.clearIndex() + trips.clearIndex() + routes.clearIndex();
+    }
+
+    /**
+     * Replace the contents of the validator_profiles table of the feed namespace with the resources used by each
+     * validator, so that they can be fetched over GraphQL (see ValidatorProfileFetcher). Profiles are only a
+     * diagnostic, so failing to store them is logged rather than failing validation.
+     */
+    private void storeValidatorProfiles(List<ValidatorProfile> validatorProfiles) {
+        try (Connection connection = dataSource.getConnection()) {
+            Statement statement = connection.createStatement();
+            statement.execute(String.format(
+                "create table if not exists %svalidator_profiles (id integer, validator varchar, parent_validator varchar, " +
+                    "wall_time_millis double precision, cpu_time_millis double precision, allocated_bytes bigint, " +
+                    "error_count integer, rows_read bigint)",
+                tablePrefix
+            ));
+            statement.execute(String.format("delete from %svalidator_profiles", tablePrefix));
+            PreparedStatement insertProfile = connection.prepareStatement(
+                String.format("insert into %svalidator_profiles values (?, ?, ?, ?, ?, ?, ?, ?)", tablePrefix));
+            for (int i = 0; i < validatorProfiles.size(); i++) {
+                ValidatorProfile profile = validatorProfiles.get(i);
+                // The ID keeps the order of the profiles, which is the order the validators were run.
+                insertProfile.setInt(1, i);
+                insertProfile.setString(2, profile.validator);
+                insertProfile.setString(3, profile.parentValidator);
+                insertProfile.setDouble(4, profile.wallTimeMillis);
+                insertProfile.setDouble(5, profile.cpuTimeMillis);
+                insertProfile.setLong(6, profile.allocatedBytes);
+                insertProfile.setInt(7, profile.errorCount);
+                insertProfile.setLong(8, profile.rowsRead);
+                insertProfile.addBatch();
+            }
+            insertProfile.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            LOG.error("Could not store validator profiles in {}validator_profiles.", tablePrefix, e);
+        }
+    }
+
+    /**
+     * Record in the load status of the feed namespace that it has been validated, so that a feed reused instead of
+     * being loaded again from an identical file need not be validated again (see
+     * {@link JdbcGtfsLoader#withReuseOfIdenticalFeeds(boolean)}). Namespaces without a completed load are left as they
+     * are.
+     */
+    private void recordValidated() {
+        try (Connection connection = dataSource.getConnection()) {
+            PreparedStatement existsStatement = connection.prepareStatement(
+                "select exists (select 1 from information_schema.tables where table_schema = ? and table_name = ?)"
+            );
+            existsStatement.setString(1, tablePrefix.replace(".", ""));
+            existsStatement.setString(2, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME);
+            ResultSet resultSet = existsStatement.executeQuery();
+            if (!resultSet.next() || !resultSet.getBoolean(1)) return;
+            connection.createStatement().execute(String.format(
+                "update %s%s set validated_date = current_timestamp", tablePrefix, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME
+            ));
+            connection.commit();
+        } catch (SQLException e) {
+            LOG.error("Could not record that {} has been validated.", tablePrefix, e);
+        }
+    }
+
+    /**
+     * Run a single validator, storing an error if it fails rather than stopping validation, and adding the resources
+     * it used to its profile.
+     */
+    private void runValidator(FeedValidator feedValidator, SQLErrorStorage errorStorage, ValidatorProfile profile) {
+        String validatorName = feedValidator.getClass().getSimpleName();
+        // Count the errors stored on this thread, so that errors stored at the same time by other validators are not
+        // included.
+        int errorCountBefore = errorStorage.getErrorCountForCurrentThread();
+        ValidatorProfile.Meter meter = new ValidatorProfile.Meter();
+        meter.start();
+        try {
+            LOG.info("Running {}.", validatorName);
+            feedValidator.validate();
+            LOG.info("{} found {} errors.", validatorName, errorStorage.getErrorCountForCurrentThread() - errorCountBefore);
+        } catch (Exception e) {
+            // store an error if the validator fails
+            // FIXME: should the exception be stored?
+            String badValue = String.join(":", validatorName, e.toString());
+            errorStorage.storeError(NewGTFSError.forFeed(VALIDATOR_FAILED, badValue));
+            LOG.error("{} failed.", validatorName);
+            LOG.error(e.toString());
+            e.printStackTrace();
+        } finally {
+            meter.stop(profile, errorStorage.getErrorCountForCurrentThread() - errorCountBefore);
+        }
+    }
+
+    /**
+     * Run the validators on a pool of threads. Each validator is started as soon as it can run alongside every
+     * validator that is running, and every validator before it in the list that is still waiting, so that a validator
+     * never overtakes an earlier one that uses the same tables. The error storage is shared by all the threads.
+     */
+    private void runValidatorsConcurrently(
+        List<FeedValidator> feedValidators,
+        SQLErrorStorage errorStorage,
+        Map<FeedValidator, ValidatorProfile> profileForValidator
+    ) {
+        ExecutorService executor = Executors.newFixedThreadPool(validatorThreads);
+        CompletionService<FeedValidator> completionService = new ExecutorCompletionService<>(executor);
+        List<FeedValidator> waiting = new ArrayList<>(feedValidators);
+        Set<FeedValidator> running = new HashSet<>();
+        try {
+            while (!waiting.isEmpty() || !running.isEmpty()) {
+                List<FeedValidator> blockers = new ArrayList<>(running);
+                for (Iterator<FeedValidator> iterator = waiting.iterator(); iterator.hasNext(); ) {
+                    FeedValidator feedValidator = iterator.next();
+                    if (blockers.stream().allMatch(feedValidator::canRunAlongside)) {
+                        iterator.remove();
+                        running.add(feedValidator);
+                        completionService.submit(() -> {
+                            runValidator(feedValidator, errorStorage, profileForValidator.get(feedValidator));
+                            return feedValidator;
+                        });
+                    }
+                    blockers.add(feedValidator);
+                }
+                running.remove(completionService.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        } catch (ExecutionException e) {
+            // Validator failures are stored as errors, so this should only happen if the error storage fails.
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * @return a JDBC connection to the database underlying this Feed.
      */
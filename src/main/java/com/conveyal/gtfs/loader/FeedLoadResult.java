@@ -20,6 +20,10 @@ public class FeedLoadResult implements Serializable {
     public String uniqueIdentifier;
     public int errorCount;
     public String fatalException;
+    /** Whether the feed was not loaded again because an identical file had already been loaded into this namespace. */
+    public boolean reusedExistingFeed;
+    /** Whether the namespace has already been validated, which can only be the case for a reused existing feed. */
+    public boolean validated;
 
     public TableLoadResult agency;
     public TableLoadResult calendar;
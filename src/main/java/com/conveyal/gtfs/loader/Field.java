@@ -5,6 +5,9 @@ import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.loader.conditions.ConditionalRequirement;
 import com.google.common.collect.ImmutableSet;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.SQLType;
@@ -73,6 +76,27 @@ public abstract class Field {
         preparedStatement.setNull(oneBasedIndex, getSqlType().getVendorTypeNumber());
     }
 
+    /**
+     * Write a (non-null) value produced by validateAndConvert to a Postgres binary copy stream, as a field length
+     * followed by the value in the binary format of this field's SQL type. Numeric fields override this to send their
+     * values as fixed width binary numbers. By default the value is sent as text, undoing the escaping of backslashes
+     * that is only needed for the text copy format.
+     */
+    public void writeBinaryCopyValue(DataOutputStream out, String clean) throws IOException {
+        if (clean.indexOf('\\') >= 0) clean = clean.replace("\\\\", "\\");
+        byte[] bytes = clean.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return whether writeBinaryCopyValue can encode values of this field, i.e. whether tables containing this field
+     * can be loaded with the Postgres binary copy format.
+     */
+    public boolean supportsBinaryCopy() {
+        return true;
+    }
+
     /**
      * Finds the index of the field given a string name.
      * @return the index of the field or -1 if no match is found
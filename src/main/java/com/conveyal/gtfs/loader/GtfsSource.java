@@ -0,0 +1,43 @@
+package com.conveyal.gtfs.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The files of a GTFS feed, as read by {@link JdbcGtfsLoader}. A feed is usually a zip file on local disk
+ * ({@link ZipFileGtfsSource}), but it may also be a directory of unzipped files ({@link DirectoryGtfsSource}) or a zip
+ * file that is read from a stream, e.g. while it is being downloaded ({@link ZipStreamGtfsSource}).
+ *
+ * Files are identified by their entry names, which are the paths of the files relative to the root of the feed.
+ */
+public interface GtfsSource extends Closeable {
+
+    /**
+     * @return a name for the feed (e.g., the path of the zip file), recorded in the feed registry.
+     */
+    String getName();
+
+    /**
+     * Find a GTFS file (e.g., stops.txt) in the feed. Feed producers often put the files in a subdirectory, so this
+     * also looks for the file in subdirectories if it is not in the root of the feed.
+     *
+     * @return the entry name of the file, or null if the feed does not contain the file.
+     */
+    String findEntry(String fileName) throws IOException;
+
+    /**
+     * Open the file with the given entry name (as returned by {@link #findEntry(String)}) for reading.
+     */
+    InputStream getInputStream(String entryName) throws IOException;
+
+    /**
+     * @return the uncompressed size of the file in bytes, or -1 if it is not known (yet).
+     */
+    long getSize(String entryName) throws IOException;
+
+    /**
+     * @return the CRC-32 checksum of the uncompressed file, or -1 if it is not known (yet).
+     */
+    long getCrc(String entryName) throws IOException;
+}
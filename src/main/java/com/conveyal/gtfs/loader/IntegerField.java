@@ -4,9 +4,12 @@ import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.storage.StorageException;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.SQLType;
+import java.util.Collections;
 import java.util.Set;
 
 public class IntegerField extends Field {
@@ -34,16 +37,41 @@ public class IntegerField extends Field {
         try {
             result.clean = Integer.parseInt(string);
         } catch (NumberFormatException e) {
-            result.errors.add(NewGTFSError.forFeed(NewGTFSErrorType.NUMBER_PARSING, string));
+            throw new StorageException(NewGTFSErrorType.NUMBER_PARSING, string);
         }
         if (result.clean < minValue) result.errors.add(NewGTFSError.forFeed(NewGTFSErrorType.NUMBER_TOO_SMALL, string));
         if (result.clean > maxValue) result.errors.add(NewGTFSError.forFeed(NewGTFSErrorType.NUMBER_TOO_LARGE, string));
         return result;
     }
 
+    /**
+     * Fast path for integers written in plain decimal form (without a plus sign or leading zeros) that are within
+     * range, which scans the characters in place.
+     * @return true if the value is valid, or false if the slow path must be taken to parse it and find any errors.
+     */
+    private boolean isPlainInRange (String string) {
+        int length = string.length();
+        int start = length > 0 && string.charAt(0) == '-' ? 1 : 0;
+        // Only accept up to nine digits, so that the value cannot overflow.
+        if (length == start || length - start > 9) return false;
+        if (string.charAt(start) == '0' && length - start > 1) return false;
+        int value = 0;
+        for (int i = start; i < length; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') return false;
+            value = value * 10 + (c - '0');
+        }
+        if (start == 1) value = -value;
+        return value >= minValue && value <= maxValue;
+    }
+
     @Override
     public Set<NewGTFSError> setParameter (PreparedStatement preparedStatement, int oneBasedIndex, String string) {
         try {
+            if (isPlainInRange(string)) {
+                preparedStatement.setInt(oneBasedIndex, Integer.parseInt(string));
+                return Collections.emptySet();
+            }
             ValidateFieldResult<Integer> result = validate(string);
             preparedStatement.setInt(oneBasedIndex, result.clean);
             return result.errors;
@@ -54,9 +82,17 @@ public class IntegerField extends Field {
 
     @Override
     public ValidateFieldResult<String> validateAndConvert (String string) {
+        // A plain decimal integer is already in the form that would be produced by converting the parsed value.
+        if (isPlainInRange(string)) return ValidateFieldResult.valid(string);
         return ValidateFieldResult.from(validate(string));
     }
 
+    @Override
+    public void writeBinaryCopyValue (DataOutputStream out, String clean) throws IOException {
+        out.writeInt(Integer.BYTES);
+        out.writeInt(Integer.parseInt(clean));
+    }
+
     @Override
     public SQLType getSqlType () {
         return JDBCType.INTEGER;
@@ -11,10 +11,21 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.lang.reflect.Field;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.sql.ResultSet.TYPE_FORWARD_ONLY;
 import static java.sql.ResultSet.CONCUR_READ_ONLY;
@@ -33,6 +44,12 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
     // See https://www.postgresql.org/docs/9.6/static/errcodes-appendix.html
     public static final String SQL_STATE_UNDEFINED_TABLE = "42P01";
 
+    // The number of rows fetched at a time by the database cursor of an iterator.
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    // The number of rows read into entities by each thread from any table, for profiling validators.
+    private static final ThreadLocal<long[]> rowsReadByThread = ThreadLocal.withInitial(() -> new long[1]);
+
     private final Table specTable;
     private final EntityPopulator<T> entityPopulator;
 
@@ -40,6 +57,9 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
     private final DataSource dataSource;
     private final String qualifiedTableName;
     private final String selectClause;
+    // The entities of this table by ID, read the first time they are requested (see getIndex).
+    private volatile Map<String, T> entityById;
+
     /**
      * @param tablePrefix must not be null, can be empty string, should include any separator character (dot)
      */
@@ -70,6 +90,14 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
         }
     }
 
+    /**
+     * @return the number of rows read into entities by the current thread from any table so far, so that the rows read
+     * by a piece of work can be found from the difference before and after it (see ValidatorProfile).
+     */
+    public static long getRowsReadByCurrentThread () {
+        return rowsReadByThread.get()[0];
+    }
+
     /**
      * As a convenience, the TableReader itself is iterable.
      * Seen as an iterable, the TableReader is equivalent to calling tableReader.getAll().
@@ -94,7 +122,7 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
     @Override
     public Iterable<T> getOrdered (final String id) {
         // An iterable has a single method that produces an iterator.
-        return () -> new EntityIterator(id, true);
+        return () -> new EntityIterator(id, true, DEFAULT_FETCH_SIZE, KeyRange.ALL);
     }
 
     /**
@@ -102,7 +130,7 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
      */
     public Iterable<T> getUnordered (final String id) {
         // An iterable has a single method that produces an iterator.
-        return () -> new EntityIterator(id, false);
+        return () -> new EntityIterator(id, false, DEFAULT_FETCH_SIZE, KeyRange.ALL);
     }
 
     /**
@@ -111,7 +139,7 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
     @Override
     public Iterable<T> getAll () {
         // An iterable has a single method that produces an iterator.
-        return () -> new EntityIterator(null, false);
+        return () -> new EntityIterator(null, false, DEFAULT_FETCH_SIZE, KeyRange.ALL);
     }
 
     /**
@@ -120,7 +148,121 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
     @Override
     public Iterable<T> getAllOrdered () {
         // An iterable has a single method that produces an iterator.
-        return () -> new EntityIterator(null, true);
+        return () -> new EntityIterator(null, true, DEFAULT_FETCH_SIZE, KeyRange.ALL);
+    }
+
+    /**
+     * Stream all the items from this table in an unspecified order. Unlike the iterators of {@link #getAll()}, the
+     * connection is only opened when the stream is first read, and closing the stream closes the connection even when
+     * it has not been read to the end.
+     */
+    @Override
+    public Stream<T> stream (int fetchSize) {
+        return stream(Collections.singletonList(KeyRange.ALL), fetchSize, false);
+    }
+
+    /**
+     * Stream all the items from this table in parallel, in an unspecified order. The boundaries of the key ranges are
+     * found with a single query ranking the key field, after which each range is read with its own connection by
+     * whichever thread of the stream handles it. All the rows with the same key are in the same range, so a table
+     * where a few keys hold most of the rows will be split into fewer ranges than requested.
+     */
+    @Override
+    public Stream<T> parallelStream (int partitionCount, int fetchSize) {
+        if (partitionCount < 1) throw new IllegalArgumentException("Partition count must be at least one.");
+        List<Object> boundaries = getKeyBoundaries(partitionCount);
+        List<KeyRange> ranges = new ArrayList<>();
+        for (int i = 0; i <= boundaries.size(); i++) {
+            ranges.add(new KeyRange(
+                i == 0 ? null : boundaries.get(i - 1),
+                i == boundaries.size() ? null : boundaries.get(i)
+            ));
+        }
+        return stream(ranges, fetchSize, true);
+    }
+
+    private Stream<T> stream (List<KeyRange> ranges, int fetchSize, boolean parallel) {
+        if (fetchSize < 0) throw new IllegalArgumentException("Fetch size must not be negative.");
+        // The iterators opened by any part of the spliterator, so that closing the stream can close their connections.
+        Set<EntityIterator> openIterators = ConcurrentHashMap.newKeySet();
+        EntitySpliterator spliterator = new EntitySpliterator(ranges, 0, ranges.size(), fetchSize, openIterators);
+        return StreamSupport.stream(spliterator, parallel).onClose(() -> {
+            for (EntityIterator iterator : openIterators) iterator.close();
+            openIterators.clear();
+        });
+    }
+
+    /**
+     * Find the values of the key field that split the rows of this table into the given number of ranges of about the
+     * same size, with each range including its upper boundary. There may be fewer boundaries than ranges requested
+     * where many rows have the same key, and there are none if the table is empty or missing.
+     */
+    private List<Object> getKeyBoundaries (int partitionCount) {
+        if (partitionCount == 1) return Collections.emptyList();
+        String keyField = specTable.getKeyFieldName();
+        String sql = String.format(
+            "select max(%s) as boundary from (select %s, ntile(?) over (order by %s) as tile from %s) as tiles " +
+            "group by tile order by boundary",
+            keyField, keyField, keyField, qualifiedTableName
+        );
+        // Try-with-resources will automatically close the connection when the try block exits.
+        try (Connection connection = dataSource.getConnection()) {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setInt(1, partitionCount);
+            LOG.info(statement.toString());
+            ResultSet resultSet = statement.executeQuery();
+            // The maximum of adjacent tiles is the same where a key spans them, and the last one has no upper boundary.
+            Set<Object> boundaries = new LinkedHashSet<>();
+            while (resultSet.next()) {
+                Object boundary = resultSet.getObject(1);
+                if (boundary != null) boundaries.add(boundary);
+            }
+            List<Object> boundaryList = new ArrayList<>(boundaries);
+            if (!boundaryList.isEmpty()) boundaryList.remove(boundaryList.size() - 1);
+            return boundaryList;
+        } catch (SQLException ex) {
+            if (SQL_STATE_UNDEFINED_TABLE.equals(ex.getSQLState())) {
+                // Table is missing, the stream will be empty anyway.
+                return Collections.emptyList();
+            } else {
+                throw new StorageException(ex);
+            }
+        }
+    }
+
+    /**
+     * Get a read-only map from ID to entity for every row in this table. The table is read the first time this is
+     * called (even if several threads call it at once), and the same map is returned to every caller until the index
+     * is cleared, so that e.g. all the validators of a feed can look up stops without reading them again. Where several
+     * rows have the same ID the last one read is kept. The whole table is held in memory, so this should only be used
+     * for tables that are small compared to stop times.
+     */
+    @Override
+    public Map<String, T> getIndex () {
+        Map<String, T> index = entityById;
+        if (index == null) {
+            synchronized (this) {
+                index = entityById;
+                if (index == null) {
+                    Map<String, T> map = new HashMap<>();
+                    for (T entity : getAll()) map.put(entity.getId(), entity);
+                    LOG.info("Indexed {} entities from {}.", map.size(), qualifiedTableName);
+                    index = entityById = Collections.unmodifiableMap(map);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Release the index of entities so that it can be garbage collected. The table is read again if the index is
+     * requested after it has been cleared.
+     */
+    @Override
+    public synchronized int clearIndex () {
+        int size = entityById == null ? 0 : entityById.size();
+        entityById = null;
+        return size;
     }
 
     /**
@@ -146,21 +288,126 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
         }
     }
 
-    private class EntityIterator implements Iterator<T> {
+    /**
+     * A range of values of the key field of the table, above the lower boundary (exclusive) and up to the upper
+     * boundary (inclusive). Null boundaries leave the range open on that side, in which case rows with a null key are
+     * included in the range without an upper boundary.
+     */
+    private static class KeyRange {
+
+        static final KeyRange ALL = new KeyRange(null, null);
+
+        final Object lowerBoundary;
+        final Object upperBoundary;
+
+        KeyRange (Object lowerBoundary, Object upperBoundary) {
+            this.lowerBoundary = lowerBoundary;
+            this.upperBoundary = upperBoundary;
+        }
+
+        /** @return the conditions selecting the rows in this range, to be joined with "and". */
+        List<String> getConditions (String keyField) {
+            List<String> conditions = new ArrayList<>();
+            if (upperBoundary != null) {
+                if (lowerBoundary != null) conditions.add(String.format("%s > ?", keyField));
+                conditions.add(String.format("%s <= ?", keyField));
+            } else if (lowerBoundary != null) {
+                conditions.add(String.format("(%s > ? or %s is null)", keyField, keyField));
+            }
+            return conditions;
+        }
+
+        /** Fill the boundaries into the statement, starting at the given parameter index. */
+        void setParameters (PreparedStatement statement, int firstIndex) throws SQLException {
+            int index = firstIndex;
+            if (lowerBoundary != null) statement.setObject(index++, lowerBoundary);
+            if (upperBoundary != null) statement.setObject(index, upperBoundary);
+        }
+    }
+
+    /**
+     * Splits the key ranges of a stream between the threads reading it, opening an iterator over each range in turn
+     * when it is first read.
+     */
+    private class EntitySpliterator implements Spliterator<T> {
+
+        private final List<KeyRange> ranges;
+        private int nextRange;
+        private final int endRange;
+        private final int fetchSize;
+        private final Set<EntityIterator> openIterators;
+        private EntityIterator iterator;
+
+        EntitySpliterator (List<KeyRange> ranges, int startRange, int endRange, int fetchSize,
+                           Set<EntityIterator> openIterators) {
+            this.ranges = ranges;
+            this.nextRange = startRange;
+            this.endRange = endRange;
+            this.fetchSize = fetchSize;
+            this.openIterators = openIterators;
+        }
+
+        @Override
+        public boolean tryAdvance (Consumer<? super T> action) {
+            while (iterator == null || !iterator.hasNext()) {
+                if (iterator != null) openIterators.remove(iterator);
+                if (nextRange == endRange) {
+                    iterator = null;
+                    return false;
+                }
+                iterator = new EntityIterator(null, false, fetchSize, ranges.get(nextRange++));
+                openIterators.add(iterator);
+            }
+            action.accept(iterator.next());
+            return true;
+        }
+
+        /**
+         * Give half of the ranges that have not been opened yet to another thread.
+         */
+        @Override
+        public Spliterator<T> trySplit () {
+            int remainingRanges = endRange - nextRange;
+            if (remainingRanges < 2) return null;
+            int splitRange = nextRange + remainingRanges / 2;
+            EntitySpliterator prefix = new EntitySpliterator(ranges, nextRange, splitRange, fetchSize, openIterators);
+            nextRange = splitRange;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize () {
+            // The number of rows is unknown without counting them.
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics () {
+            return NONNULL;
+        }
+    }
+
+    private class EntityIterator implements Iterator<T>, AutoCloseable {
 
         private Connection connection; // Will remain open for the duration of the iteration.
         private boolean hasMoreEntities;
         private ResultSet results;
+        // The row counter of the thread that created the iterator.
+        private final long[] rowsRead = rowsReadByThread.get();
 
-        EntityIterator (String id, boolean ordered) {
+        EntityIterator (String id, boolean ordered, int fetchSize, KeyRange keyRange) {
             try {
                 connection = dataSource.getConnection();
                 PreparedStatement preparedStatement;
                 String sql = selectClause;
                 String idField = specTable.getKeyFieldName();
                 String orderByField = specTable.getOrderFieldName();
+                List<String> conditions = keyRange.getConditions(idField);
                 if (id != null) {
-                    sql += String.format(" where %s = ?", idField);
+                    conditions.add(String.format("%s = ?", idField));
+                }
+                if (!conditions.isEmpty()) {
+                    sql += " where " + String.join(" and ", conditions);
                 }
                 if (ordered && orderByField != null) {
                     sql += String.format(" order by %s, %s", idField, orderByField);
@@ -177,11 +424,12 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
                     // This will only be effective if autoCommit=false though. Otherwise it fills up the memory with all rows.
                     // By default prepared statements are forward-only and read-only (though we could set that explicitly).
                     // Those settings allow cursors to be used efficiently.
-                    preparedStatement.setFetchSize(1000);
+                    preparedStatement.setFetchSize(fetchSize);
                 }
+                keyRange.setParameters(preparedStatement, 1);
                 if (id != null) {
-                    // Fill the primary key into the prepared statement
-                    preparedStatement.setString(1, id);
+                    // Fill the primary key into the prepared statement, after any key range parameters.
+                    preparedStatement.setString(conditions.size(), id);
                 }
                 // Display the SQL statement for clarity
                 LOG.info(preparedStatement.toString());
@@ -218,7 +466,8 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
         /**
          * If you iterate all the way through to the end of the iterator the connection will automatically be closed.
          * This allows concise (for Stop stop : feed.stops) iteration.
-         * However it does not allow for partial iteration - stopping partway through will leave the connection open.
+         * However it does not allow for partial iteration - stopping partway through will leave the connection open
+         * unless the iterator is closed.
          */
         @Override
         public T next() {
@@ -227,6 +476,7 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
                 // Set the line number on every entity the same way
                 // rather than repeating this statement in each implementation class.
                 entity.id = EntityPopulator.getIntIfPresent(results, "id", columnForName);
+                rowsRead[0]++;
                 hasMoreEntities = results.next();
                 if (!hasMoreEntities) {
                     // No more entities to iterate over. We can close the database connection.
@@ -240,6 +490,15 @@ public class JDBCTableReader<T extends Entity> implements TableReader<T> {
             }
         }
 
+        /**
+         * Close the connection of an iterator that has not been read to the end. Nothing more is returned afterward.
+         */
+        @Override
+        public void close () {
+            hasMoreEntities = false;
+            DbUtils.closeQuietly(connection);
+        }
+
         /**
          * The finalizer will be called when the object is garbage collected.
          * This way we can detect unclosed connections.
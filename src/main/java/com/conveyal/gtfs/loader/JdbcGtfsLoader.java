@@ -3,11 +3,14 @@ package com.conveyal.gtfs.loader;
 import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.error.SQLErrorStorage;
+import com.conveyal.gtfs.loader.conditions.ConditionalRequirement;
 import com.conveyal.gtfs.storage.StorageException;
+import com.conveyal.gtfs.validator.NewTripTimesValidator;
 import com.csvreader.CsvReader;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
 import org.apache.commons.dbutils.DbUtils;
 import org.postgresql.copy.CopyManager;
 import org.postgresql.core.BaseConnection;
@@ -16,10 +19,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.*;
 import static com.conveyal.gtfs.model.Entity.human;
@@ -71,10 +81,13 @@ public class JdbcGtfsLoader {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcGtfsLoader.class);
 
     private String gtfsFilePath;
-    protected ZipFile zip;
+    // The files of the feed, which are read from the zip file at gtfsFilePath unless another source is supplied.
+    protected GtfsSource source;
 
     private File tempTextFile;
     private PrintStream tempTextFileStream;
+    // Replaces the text stream when rows are copied into the table in the Postgres binary format.
+    private BinaryCopyWriter binaryCopyWriter;
     private PreparedStatement insertStatement = null;
 
     private final DataSource dataSource;
@@ -87,11 +100,125 @@ public class JdbcGtfsLoader {
     // Contains references to unique entity IDs during load stage used for referential integrity check.
     private ReferenceTracker referenceTracker = new ReferenceTracker();
 
+    // The number of threads used to load tables. Tables are loaded one after another on a single connection by default.
+    private int loadThreads = 1;
+    // Whether other loaders may be storing errors at the same time as this one (i.e. this is a single table loader).
+    private boolean sharesErrorStorage = false;
+    // Whether to stream rows straight into the Postgres copy command instead of going through a temporary text file.
+    private boolean streamCopy = false;
+    // While streaming rows into a table, the copy command runs on a separate connection and thread.
+    private StreamingCopy streamingCopy;
+    // Whether to use the Postgres binary copy format for tables whose fields all support it.
+    private boolean binaryCopy = true;
+    // The number of threads building indexes after all tables are loaded, or zero to index each table as it is loaded.
+    private int indexThreads = 0;
+    // An optional maintenance_work_mem setting (e.g., 1GB) for the connections building deferred indexes.
+    private String indexMaintenanceWorkMem;
+    // Index statements that have been put off until all tables are loaded, for each (spec) table.
+    private Map<Table, List<String>> deferredIndexes = new ConcurrentHashMap<>();
+    // The number of threads converting the records of stop_times, or one to convert them on the loading thread.
+    private int parseThreads = 1;
+    // Whether to return an existing namespace loaded from an identical file rather than loading the feed again.
+    private boolean reuseIdenticalFeeds = false;
+    // A namespace loaded from an earlier version of the feed, from which tables with unchanged files are copied.
+    private String previousNamespace;
+    // The tables to copy from the previous namespace rather than load from the zip file.
+    private Set<Table> unchangedTables = Collections.emptySet();
+    // The IDs of the errors found while loading the previous namespace are below this (later errors were found by
+    // validators).
+    private int previousLoadErrorIdLimit;
+    // Whether errors are written to the database by a background thread rather than by the threads that find them.
+    private boolean backgroundErrorWriter = true;
+    // The maximum number of errors of each type stored for each table, beyond which errors are only counted.
+    private int maxErrorsPerType = Integer.MAX_VALUE;
+    // Whether to validate trips from the rows of stop_times as they are loaded, rather than after loading the feed.
+    private boolean validateTripsWhileLoading = false;
+    // While loading stop_times, hands the rows to the trip validator.
+    private StopTimeStream stopTimeStream;
+    // The validator that checked the trips while stop_times were loaded, shared with single table loaders.
+    private AtomicReference<NewTripTimesValidator> streamedTripTimesValidator = new AtomicReference<>();
+
+    // The name of the table in each namespace that records the CRC of the zip entry each table was loaded from.
+    public static final String TABLE_CHECKSUMS_TABLE_NAME = "table_checksums";
+
+    // The name of the table in each namespace whose single row records that the whole feed was loaded and committed.
+    public static final String LOAD_STATUS_TABLE_NAME = "load_status";
+
+    // The number of records read from the CSV file in each batch handed to the parsing threads.
+    private static final int PARSE_BATCH_SIZE = 10_000;
+
+    /** Tables in the order they must be loaded for checking referential integrity during load stage. */
+    private static final Table[] TABLES_IN_LOAD_ORDER = {
+        Table.AGENCY,
+        Table.CALENDAR,
+        Table.CALENDAR_DATES,
+        Table.ROUTES,
+        Table.FARE_ATTRIBUTES,
+        Table.FEED_INFO,
+        Table.SHAPES,
+        Table.STOPS,
+        Table.FARE_RULES,
+        Table.TRANSFERS,
+        Table.TRIPS, // refs routes
+        Table.FREQUENCIES, // refs trips
+        Table.STOP_TIMES,
+        Table.TRANSLATIONS,
+        Table.ATTRIBUTIONS
+    };
+
+    /**
+     * The same tables grouped into stages for concurrent loading. Each table only refers to tables (or the special
+     * foreign keys like stops#zone_id and agency#agency_id) in earlier stages. Calendar dates must also follow calendar
+     * because both add service_id values to the reference tracker and only calendar checks them for duplicates.
+     */
+    private static final Table[][] TABLE_LOAD_STAGES = {
+        {Table.AGENCY, Table.CALENDAR, Table.FEED_INFO, Table.SHAPES, Table.STOPS, Table.TRANSLATIONS},
+        {Table.CALENDAR_DATES, Table.ROUTES, Table.FARE_ATTRIBUTES, Table.TRANSFERS},
+        {Table.FARE_RULES, Table.TRIPS},
+        {Table.FREQUENCIES, Table.STOP_TIMES, Table.ATTRIBUTIONS}
+    };
+
     public JdbcGtfsLoader(String gtfsFilePath, DataSource dataSource) {
         this.gtfsFilePath = gtfsFilePath;
         this.dataSource = dataSource;
     }
 
+    /**
+     * Create a loader that reads the feed from the given source (e.g., a directory of unzipped files or a zip file
+     * being downloaded) rather than from a zip file on disk. The source is closed once loading is finished. As there
+     * is no single file to hash, the feed is registered without MD5 and SHA-1 hashes, and so is never reused (see
+     * {@link #withReuseOfIdenticalFeeds(boolean)}).
+     */
+    public JdbcGtfsLoader(GtfsSource source, DataSource dataSource) {
+        this.gtfsFilePath = source.getName();
+        this.source = source;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Create a loader for a single table that shares all feed-level state with the parent loader. Its connection must
+     * be set before loading.
+     */
+    private JdbcGtfsLoader(JdbcGtfsLoader parent) {
+        this.gtfsFilePath = parent.gtfsFilePath;
+        this.dataSource = parent.dataSource;
+        this.source = parent.source;
+        this.tablePrefix = parent.tablePrefix;
+        this.errorStorage = parent.errorStorage;
+        this.referenceTracker = parent.referenceTracker;
+        this.sharesErrorStorage = true;
+        this.streamCopy = parent.streamCopy;
+        this.binaryCopy = parent.binaryCopy;
+        this.indexThreads = parent.indexThreads;
+        this.deferredIndexes = parent.deferredIndexes;
+        this.parseThreads = parent.parseThreads;
+        this.previousNamespace = parent.previousNamespace;
+        this.unchangedTables = parent.unchangedTables;
+        this.previousLoadErrorIdLimit = parent.previousLoadErrorIdLimit;
+        this.validateTripsWhileLoading = parent.validateTripsWhileLoading;
+        this.streamedTripTimesValidator = parent.streamedTripTimesValidator;
+    }
+
     /**
      * Get SQL string for creating the feed registry table (AKA, the "feeds" table).
      */
@@ -111,7 +238,148 @@ public class JdbcGtfsLoader {
     // Murmur took 317 msec, 5e5968f9bf5e1cdf711f6f48fcd94355
     // SHA1 took 1072 msec,  9fb356af4be2750f20955203787ec6f95d32ef22
 
-    // There appears to be no advantage to loading tables in parallel, as the whole loading process is I/O bound.
+    /**
+     * Fluent method that sets the number of threads used to load tables. With more than one thread, independent tables
+     * are loaded at the same time, each on its own connection from the data source (see
+     * {@link #loadTablesConcurrently()}). The default of one thread loads all tables in turn on a single connection.
+     */
+    public JdbcGtfsLoader withLoadThreads(int loadThreads) {
+        this.loadThreads = Math.max(1, loadThreads);
+        return this;
+    }
+
+    /**
+     * Fluent method that makes the loader (when connected to Postgres) send rows to the database as they are parsed,
+     * rather than writing every row of a table to a temporary text file and copying that file into the database once
+     * the whole table has been parsed. The copy command runs on a separate thread and connection, fed through a
+     * bounded in-memory buffer, so that parsing and server-side ingest overlap and no scratch disk space is needed.
+     *
+     * Note: each table is created and committed before its rows are streamed in (the copy connection could not see it
+     * otherwise), so a table that fails to load is left empty rather than missing.
+     */
+    public JdbcGtfsLoader withStreamingCopy(boolean streamCopy) {
+        this.streamCopy = streamCopy;
+        return this;
+    }
+
+    /**
+     * Fluent method that sets whether (when connected to Postgres) rows are copied into the database in the binary copy
+     * format, which is the default. Numeric and time values are then sent as fixed width binary numbers converted by
+     * their Fields, rather than as text that the database must parse a second time. Tables with fields that have no
+     * binary encoding always use the text format, and passing false here falls back to the text format for all tables.
+     */
+    public JdbcGtfsLoader withBinaryCopy(boolean binaryCopy) {
+        this.binaryCopy = binaryCopy;
+        return this;
+    }
+
+    /**
+     * Fluent method that puts off building indexes until every table has been loaded, rather than building each
+     * table's indexes straight after copying in its rows. The indexes of all tables are then built at the same time on
+     * the given number of threads, each with its own connection from the data source, so that long index builds (e.g.
+     * on stop_times) overlap each other instead of holding up the loading of later tables.
+     */
+    public JdbcGtfsLoader withDeferredIndexes(int indexThreads) {
+        this.indexThreads = Math.max(1, indexThreads);
+        return this;
+    }
+
+    /**
+     * Fluent method that sets maintenance_work_mem (e.g., "512MB") on the connections building deferred indexes (see
+     * {@link #withDeferredIndexes(int)}). Postgres sorts index entries in this much memory before spilling to disk, so
+     * raising it speeds up building large indexes. Bear in mind that each index thread may use this much memory.
+     */
+    public JdbcGtfsLoader withIndexMaintenanceWorkMem(String indexMaintenanceWorkMem) {
+        if (!indexMaintenanceWorkMem.matches("\\d+\\s*(kB|MB|GB)?")) {
+            throw new IllegalArgumentException("Invalid maintenance_work_mem: " + indexMaintenanceWorkMem);
+        }
+        this.indexMaintenanceWorkMem = indexMaintenanceWorkMem;
+        return this;
+    }
+
+    /**
+     * Fluent method that sets the number of threads used to convert the records of stop_times.txt (when connected to
+     * Postgres). The CSV file is still read by a single thread, but the records are validated, converted and formatted
+     * for the copy command in batches on a fork-join pool of this many threads (see
+     * {@link #loadRecordsConcurrently}). Stop times are usually by far the largest table in a feed, so this shortens
+     * the longest single table load, which bounds the time taken to load a feed even when tables are loaded
+     * concurrently.
+     */
+    public JdbcGtfsLoader withParseThreads(int parseThreads) {
+        this.parseThreads = Math.max(1, parseThreads);
+        return this;
+    }
+
+    /**
+     * Fluent method that makes the loader look in the feed registry for a namespace that was loaded from a file with
+     * the same SHA-1 hash and has not been deleted. If there is one, that namespace is returned (with
+     * reusedExistingFeed set on the result) instead of parsing the same file into a new namespace, and the caller can
+     * skip validating it again if validated is also set on the result. Snapshots are never reused, because they may
+     * have been edited since they were created. A feed is registered before its tables are loaded, so only namespaces
+     * whose load was completed (see {@link #LOAD_STATUS_TABLE_NAME}) are reused, never those left behind by a failed
+     * load or still being loaded.
+     */
+    public JdbcGtfsLoader withReuseOfIdenticalFeeds(boolean reuseIdenticalFeeds) {
+        this.reuseIdenticalFeeds = reuseIdenticalFeeds;
+        return this;
+    }
+
+    /**
+     * Fluent method that makes the loader copy tables from a namespace loaded from an earlier version of the same feed
+     * when their files have not changed, rather than parsing them again. Files are compared by the CRC of their zip
+     * entries, which every load records in the namespace's table_checksums table. An unchanged table is copied within
+     * the database along with the errors found while loading it, and its keys are read back into the reference tracker
+     * for checking the tables that refer to it. A table is still parsed if any of the tables whose values it checks
+     * (e.g., calendar_dates for trips#service_id) has changed, because its reference errors may then differ.
+     */
+    public JdbcGtfsLoader withPreviousNamespace(String previousNamespace) {
+        this.previousNamespace = previousNamespace;
+        return this;
+    }
+
+    /**
+     * Fluent method that sets whether (when connected to Postgres) errors found while loading are queued for a
+     * background thread that copies them into the database on its own connection, which is the default (see
+     * {@link SQLErrorStorage#withBackgroundWriter(DataSource)}). Passing false inserts each error on the thread that
+     * found it, in batches on the loader's connection.
+     */
+    public JdbcGtfsLoader withBackgroundErrorWriter(boolean backgroundErrorWriter) {
+        this.backgroundErrorWriter = backgroundErrorWriter;
+        return this;
+    }
+
+    /**
+     * Fluent method that limits the number of errors of each type stored for each table, so that a systematic problem
+     * (e.g. a column missing from every line of stop_times) does not fill the errors table with millions of rows (see
+     * {@link SQLErrorStorage#withMaxErrorsPerType(int)}). Error counts still include the errors that were not stored.
+     */
+    public JdbcGtfsLoader withMaxErrorsPerType(int maxErrorsPerType) {
+        this.maxErrorsPerType = maxErrorsPerType;
+        return this;
+    }
+
+    /**
+     * Fluent method that sets whether (when connected to Postgres) the trips are checked by a
+     * {@link NewTripTimesValidator} as the rows of stop_times are loaded, instead of reading them all back from the
+     * database when the feed is validated. This only works if the rows of each trip are together and in order of
+     * stop_sequence, otherwise the trips are checked from the database as usual (see {@link StopTimeStream}). Errors
+     * found are held until the validator is handed to {@link Feed#withTripsValidatedWhileLoading}, so they are not
+     * included in the load result.
+     */
+    public JdbcGtfsLoader withTripValidationWhileLoading(boolean validateTripsWhileLoading) {
+        this.validateTripsWhileLoading = validateTripsWhileLoading;
+        return this;
+    }
+
+    /**
+     * @return the validator that checked the trips while the feed was loaded, which should be passed to
+     * {@link Feed#withTripsValidatedWhileLoading} to validate the feed, or null if the trips were not checked (e.g.,
+     * because the rows of stop_times were not in order).
+     */
+    public NewTripTimesValidator getStreamedTripTimesValidator() {
+        return streamedTripTimesValidator.get();
+    }
+
     public FeedLoadResult loadTables() {
 
         // This result object will be returned to the caller to summarize the feed and report any critical errors.
@@ -125,8 +393,18 @@ public class JdbcGtfsLoader {
             // If we create a schema or table on one connection, then access it in a separate connection, we have no
             // guarantee that it exists when the accessing statement is executed.
             connection = dataSource.getConnection();
-            File gtfsFile = new File(gtfsFilePath);
-            this.zip = new ZipFile(gtfsFilePath);
+            // A feed read from another source than a zip file on disk is not hashed.
+            HashCode[] md5AndSha1 = source == null ? hashFile(new File(gtfsFilePath)) : null;
+            if (reuseIdenticalFeeds && md5AndSha1 != null) {
+                String existingNamespace = findIdenticalFeed(md5AndSha1[1].toString());
+                if (existingNamespace != null) {
+                    summarizeExistingFeed(result, existingNamespace);
+                    result.completionTime = System.currentTimeMillis();
+                    result.loadTimeMillis = result.completionTime - startTime;
+                    return result;
+                }
+            }
+            if (source == null) source = new ZipFileGtfsSource(gtfsFilePath);
             // Generate a unique prefix that will identify this feed.
             // Prefixes ("schema" names) based on feed_id and feed_version get very messy, so we use random unique IDs.
             // We don't want to use an auto-increment numeric primary key because these need to be alphabetical.
@@ -145,32 +423,30 @@ public class JdbcGtfsLoader {
                 createSchema(connection, tablePrefix);
                 //the SQLErrorStorage constructor expects the tablePrefix to contain the dot separator.
                 this.errorStorage = new SQLErrorStorage(connection, tablePrefix + ".", true);
+                if (backgroundErrorWriter) errorStorage.withBackgroundWriter(dataSource);
+                errorStorage.withMaxErrorsPerType(maxErrorsPerType);
                 //registerFeed accesses this.tablePrefix which shouldn't contain the dot separator.
-                registerFeed(gtfsFile);
+                if (md5AndSha1 == null) registerFeed(null, null);
+                else registerFeed(md5AndSha1[0].toString(), md5AndSha1[1].toString());
                 // Include the dot separator in the table prefix from this point onwards.
                 // This allows everything to work even when there's no prefix.
                 this.tablePrefix += ".";
             }
-            // Load each table in turn, saving some summary information about what happened during each table load
-            result.agency = load(Table.AGENCY);
-            result.calendar = load(Table.CALENDAR);
-            result.calendarDates = load(Table.CALENDAR_DATES);
-            result.routes = load(Table.ROUTES);
-            result.fareAttributes = load(Table.FARE_ATTRIBUTES);
-            result.feedInfo = load(Table.FEED_INFO);
-            result.shapes = load(Table.SHAPES);
-            result.stops = load(Table.STOPS);
-            result.fareRules = load(Table.FARE_RULES);
-            result.transfers = load(Table.TRANSFERS);
-            result.trips = load(Table.TRIPS); // refs routes
-            result.frequencies = load(Table.FREQUENCIES); // refs trips
-            result.stopTimes = load(Table.STOP_TIMES);
-            result.translations = load(Table.TRANSLATIONS);
-            result.attributions = load(Table.ATTRIBUTIONS);
+            if (previousNamespace != null) findUnchangedTables();
+            // Load each table, saving some summary information about what happened during each table load
+            Map<Table, TableLoadResult> tableLoadResults = loadThreads > 1
+                ? loadTablesConcurrently()
+                : loadTablesSequentially();
+            if (indexThreads > 0) createDeferredIndexes(tableLoadResults);
+            setTableLoadResults(result, tableLoadResults);
             result.errorCount = errorStorage.getErrorCount();
+            recordTableChecksums(tableLoadResults);
             // This will commit and close the single connection that has been shared between all preceding load steps.
             errorStorage.commitAndClose();
-            zip.close();
+            // Errors that were suppressed are only summarized (with later IDs) as the error storage is closed.
+            recordLoadCompleted(tableLoadResults, result.errorCount, errorStorage.getNextErrorId());
+            // Anything read from the namespace while it was being loaded is now out of date.
+            NamespaceChanges.notifyChanged(result.uniqueIdentifier);
             result.completionTime = System.currentTimeMillis();
             result.loadTimeMillis = result.completionTime - startTime;
             LOG.info("Loading tables took {} sec", result.loadTimeMillis / 1000);
@@ -179,12 +455,482 @@ public class JdbcGtfsLoader {
             LOG.error("Exception while loading GTFS file: {}", ex.toString());
             ex.printStackTrace();
             result.fatalException = ex.toString();
+            if (errorStorage != null) errorStorage.stopBackgroundWriter();
         } finally {
             if (connection != null) DbUtils.closeQuietly(connection);
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    LOG.error("Exception while closing GTFS source", e);
+                }
+            }
         }
         return result;
     }
 
+    /**
+     * Copy the result for each table into the corresponding field of the feed load result.
+     */
+    private static void setTableLoadResults(FeedLoadResult result, Map<Table, TableLoadResult> tableLoadResults) {
+        result.agency = tableLoadResults.get(Table.AGENCY);
+        result.calendar = tableLoadResults.get(Table.CALENDAR);
+        result.calendarDates = tableLoadResults.get(Table.CALENDAR_DATES);
+        result.routes = tableLoadResults.get(Table.ROUTES);
+        result.fareAttributes = tableLoadResults.get(Table.FARE_ATTRIBUTES);
+        result.feedInfo = tableLoadResults.get(Table.FEED_INFO);
+        result.shapes = tableLoadResults.get(Table.SHAPES);
+        result.stops = tableLoadResults.get(Table.STOPS);
+        result.fareRules = tableLoadResults.get(Table.FARE_RULES);
+        result.transfers = tableLoadResults.get(Table.TRANSFERS);
+        result.trips = tableLoadResults.get(Table.TRIPS);
+        result.frequencies = tableLoadResults.get(Table.FREQUENCIES);
+        result.stopTimes = tableLoadResults.get(Table.STOP_TIMES);
+        result.translations = tableLoadResults.get(Table.TRANSLATIONS);
+        result.attributions = tableLoadResults.get(Table.ATTRIBUTIONS);
+    }
+
+    /**
+     * Compute the MD5 and SHA-1 hashes of a file (in that order) in a single pass over its contents.
+     */
+    private static HashCode[] hashFile(File file) throws IOException {
+        try (
+            HashingInputStream md5Stream = new HashingInputStream(
+                Hashing.md5(), new BufferedInputStream(new FileInputStream(file))
+            );
+            HashingInputStream sha1Stream = new HashingInputStream(Hashing.sha1(), md5Stream)
+        ) {
+            ByteStreams.exhaust(sha1Stream);
+            return new HashCode[] {md5Stream.hash(), sha1Stream.hash()};
+        }
+    }
+
+    /**
+     * Find the most recently loaded namespace (that has not been deleted or dropped) whose file had the given SHA-1
+     * hash and whose load was completed.
+     * @return the namespace, or null if no identical feed has been loaded.
+     */
+    private String findIdenticalFeed(String sha1Hex) throws SQLException {
+        createFeedRegistryIfNotExists(connection);
+        connection.commit();
+        // This statement is postgres-specific.
+        PreparedStatement statement = connection.prepareStatement(
+            "select namespace from feeds where sha1 = ? and deleted is not true and snapshot_of is null " +
+            "and exists (select 1 from information_schema.tables where table_schema = namespace " +
+            "and table_name = ?) order by loaded_date desc limit 1"
+        );
+        statement.setString(1, sha1Hex);
+        statement.setString(2, LOAD_STATUS_TABLE_NAME);
+        ResultSet resultSet = statement.executeQuery();
+        return resultSet.next() ? resultSet.getString(1) : null;
+    }
+
+    /**
+     * Fill in the feed load result for a namespace that was loaded from an identical file, counting the rows in each of
+     * its tables, and reading the number of errors found while loading it and whether it has been validated from its
+     * load status.
+     */
+    private void summarizeExistingFeed(FeedLoadResult result, String namespace) throws SQLException {
+        LOG.info("Feed {} was already loaded into namespace {}", gtfsFilePath, namespace);
+        result.filename = gtfsFilePath;
+        result.uniqueIdentifier = namespace;
+        result.reusedExistingFeed = true;
+        Set<String> tableNames = new HashSet<>();
+        PreparedStatement tablesStatement = connection.prepareStatement(
+            "select table_name from information_schema.tables where table_schema = ?"
+        );
+        tablesStatement.setString(1, namespace);
+        ResultSet tablesResultSet = tablesStatement.executeQuery();
+        while (tablesResultSet.next()) tableNames.add(tablesResultSet.getString(1));
+        Statement statement = connection.createStatement();
+        Map<Table, TableLoadResult> tableLoadResults = new HashMap<>();
+        for (Table table : TABLES_IN_LOAD_ORDER) {
+            TableLoadResult tableLoadResult = new TableLoadResult();
+            if (tableNames.contains(table.name)) {
+                tableLoadResult.rowCount = countRows(statement, namespace + "." + table.name);
+            }
+            tableLoadResults.put(table, tableLoadResult);
+        }
+        setTableLoadResults(result, tableLoadResults);
+        // Errors stored by validators since the feed was loaded are not included, just as for a newly loaded feed.
+        ResultSet statusResultSet = statement.executeQuery(String.format(
+            "select load_error_count, validated_date is not null from %s.%s", namespace, LOAD_STATUS_TABLE_NAME
+        ));
+        if (statusResultSet.next()) {
+            result.errorCount = statusResultSet.getInt(1);
+            result.validated = statusResultSet.getBoolean(2);
+        }
+    }
+
+    private static int countRows(Statement statement, String tableName) throws SQLException {
+        ResultSet resultSet = statement.executeQuery("select count(*) from " + tableName);
+        resultSet.next();
+        return resultSet.getInt(1);
+    }
+
+    /**
+     * Compare the CRC of each table's zip entry with those recorded when loading the previous namespace, to find the
+     * tables that can be copied from it (see {@link #withPreviousNamespace(String)}).
+     */
+    private void findUnchangedTables() throws SQLException, IOException {
+        if (source instanceof ZipStreamGtfsSource) {
+            // Finding every table's CRC up front would mean spooling the whole stream.
+            LOG.warn("Table checksums are not known before a zip stream is read, all tables will be loaded.");
+            return;
+        }
+        if (!tableExists(previousNamespace, LOAD_STATUS_TABLE_NAME)) {
+            LOG.warn("The load of {} was not completed, all tables will be loaded.", previousNamespace);
+            return;
+        }
+        ResultSet statusResultSet = connection.createStatement().executeQuery(String.format(
+            "select load_error_id_limit from %s.%s", previousNamespace, LOAD_STATUS_TABLE_NAME
+        ));
+        if (!statusResultSet.next()) return;
+        previousLoadErrorIdLimit = statusResultSet.getInt(1);
+        Map<String, Long> previousCrcs = new HashMap<>();
+        ResultSet resultSet = connection.createStatement().executeQuery(String.format(
+            "select table_name, crc from %s.%s", previousNamespace, TABLE_CHECKSUMS_TABLE_NAME
+        ));
+        while (resultSet.next()) previousCrcs.put(resultSet.getString(1), resultSet.getLong(2));
+        Map<Table, Long> crcs = new HashMap<>();
+        for (Table table : TABLES_IN_LOAD_ORDER) {
+            String entryName = table.getEntryName(source);
+            if (entryName != null) crcs.put(table, source.getCrc(entryName));
+        }
+        Set<Table> tables = new HashSet<>();
+        for (Table table : TABLES_IN_LOAD_ORDER) {
+            // A table is not created when none of its columns are valid, even though its file is recorded.
+            boolean unchanged = crcs.containsKey(table) && crcs.get(table) != -1 &&
+                crcs.get(table).equals(previousCrcs.get(table.name)) &&
+                tableExists(previousNamespace, table.name);
+            for (Table checkedTable : getTablesCheckedBy(table)) {
+                if (!Objects.equals(crcs.get(checkedTable), previousCrcs.get(checkedTable.name))) unchanged = false;
+            }
+            if (unchanged) tables.add(table);
+        }
+        LOG.info("Copying unchanged tables {} from {}", tables, previousNamespace);
+        unchangedTables = tables;
+    }
+
+    /**
+     * @return the tables loaded before the given table that record the values it checks, either as references (e.g.,
+     * trips and frequencies for stop_times#trip_id) or in its conditional requirements (e.g., stops for
+     * fare_rules#origin_id).
+     */
+    private static Set<Table> getTablesCheckedBy(Table table) {
+        Set<String> checkedFieldNames = new HashSet<>();
+        for (Field field : table.fields) {
+            if (field.isForeignReference()) checkedFieldNames.add(field.referenceTable.getKeyFieldName());
+        }
+        for (ConditionalRequirement[] conditionalRequirements : table.getConditionalRequirements().values()) {
+            for (ConditionalRequirement conditionalRequirement : conditionalRequirements) {
+                checkedFieldNames.add(conditionalRequirement.getDependentFieldName());
+            }
+        }
+        Set<Table> checkedTables = new HashSet<>();
+        for (Table earlierTable : TABLES_IN_LOAD_ORDER) {
+            if (earlierTable == table) break;
+            for (String fieldName : checkedFieldNames) {
+                if (earlierTable.hasField(fieldName)) checkedTables.add(earlierTable);
+            }
+        }
+        return checkedTables;
+    }
+
+    /**
+     * Record the CRC of the zip entry each table was successfully loaded from, so that a later version of the feed can
+     * be loaded incrementally from this one.
+     */
+    private void recordTableChecksums(Map<Table, TableLoadResult> tableLoadResults) throws SQLException, IOException {
+        String checksumsTableName = tablePrefix + TABLE_CHECKSUMS_TABLE_NAME;
+        connection.createStatement().execute(String.format(
+            "create table %s (table_name varchar primary key, crc bigint, row_count integer)", checksumsTableName
+        ));
+        PreparedStatement insertStatement = connection.prepareStatement(
+            String.format("insert into %s values (?, ?, ?)", checksumsTableName)
+        );
+        for (Table table : TABLES_IN_LOAD_ORDER) {
+            String entryName = table.getEntryName(source);
+            TableLoadResult tableLoadResult = tableLoadResults.get(table);
+            if (entryName == null || tableLoadResult.fatalException != null) continue;
+            long crc = source.getCrc(entryName);
+            if (crc == -1) continue;
+            insertStatement.setString(1, table.name);
+            insertStatement.setLong(2, crc);
+            insertStatement.setInt(3, tableLoadResult.rowCount);
+            insertStatement.addBatch();
+        }
+        insertStatement.executeBatch();
+    }
+
+    /**
+     * Record in the load_status table of the namespace that the feed has been loaded, along with the number of errors
+     * found while loading it and the ID below which all those errors (including summaries of suppressed errors) were
+     * stored, for copying them when loading a later version incrementally. This is only done once everything else has
+     * been committed, and only if no table failed to load, so that a namespace left behind by a failed load (or still
+     * being loaded) is never taken to be complete.
+     * The namespace is marked as validated once {@link Feed#validate} has run on it.
+     */
+    private void recordLoadCompleted(Map<Table, TableLoadResult> tableLoadResults, int loadErrorCount,
+        int loadErrorIdLimit) throws SQLException {
+        for (TableLoadResult tableLoadResult : tableLoadResults.values()) {
+            if (tableLoadResult.fatalException != null) return;
+        }
+        // The shared connection was closed along with the error storage.
+        try (Connection statusConnection = dataSource.getConnection()) {
+            String statusTableName = tablePrefix + LOAD_STATUS_TABLE_NAME;
+            statusConnection.createStatement().execute(String.format(
+                "create table %s (completed_date timestamp, load_error_count integer, load_error_id_limit integer, " +
+                    "validated_date timestamp)",
+                statusTableName
+            ));
+            PreparedStatement insertStatement = statusConnection.prepareStatement(
+                String.format("insert into %s values (current_timestamp, ?, ?, null)", statusTableName)
+            );
+            insertStatement.setInt(1, loadErrorCount);
+            insertStatement.setInt(2, loadErrorIdLimit);
+            insertStatement.execute();
+            statusConnection.commit();
+        }
+    }
+
+    /**
+     * Helper method to determine if a table exists within a namespace.
+     */
+    private boolean tableExists(String namespace, String tableName) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+            "select exists (select 1 from information_schema.tables where table_schema = ? and table_name = ?)"
+        );
+        statement.setString(1, namespace);
+        statement.setString(2, tableName);
+        ResultSet resultSet = statement.executeQuery();
+        resultSet.next();
+        return resultSet.getBoolean(1);
+    }
+
+    /**
+     * Copy a table whose file has not changed since the previous namespace was loaded, within the database, along with
+     * the errors stored while loading it. Its keys are read back into the reference tracker, as if it had been parsed.
+     *
+     * @return number of rows that were loaded from the file into the previous namespace.
+     */
+    private int copyUnchangedTable(Table table) throws SQLException, IOException {
+        String previousTableName = String.join(".", previousNamespace, table.name);
+        String targetTableName = tablePrefix + table.name;
+        LOG.info("Copying unchanged table {} into {}", previousTableName, targetTableName);
+        Statement statement = connection.createStatement();
+        statement.execute(String.format("create table %s as table %s", targetTableName, previousTableName));
+        trackUnchangedTable(table, previousTableName);
+        // The file may have moved in or out of a subdirectory without changing.
+        if (!table.getEntryName(source).equals(table.name + ".txt")) {
+            errorStorage.storeError(NewGTFSError.forTable(table, TABLE_IN_SUBDIRECTORY));
+        }
+        copyLoadErrors(table);
+        if (indexThreads > 0) deferredIndexes.put(table, table.getCreateIndexSql(tablePrefix));
+        else table.createIndexes(connection, tablePrefix);
+        ResultSet resultSet = statement.executeQuery(String.format(
+            "select row_count from %s.%s where table_name = '%s'",
+            previousNamespace, TABLE_CHECKSUMS_TABLE_NAME, table.name
+        ));
+        resultSet.next();
+        int rowCount = resultSet.getInt(1);
+        connection.commit();
+        return rowCount;
+    }
+
+    /**
+     * Pass the values of a copied table that other tables check to the reference tracker, in the same way as when the
+     * table is parsed. Only the key field (unless it is only the first part of a compound key, or a reference to
+     * another table) and any fields with foreign references are tracked, so nothing needs to be read back for tables
+     * such as stop_times.
+     */
+    private void trackUnchangedTable(Table table, String previousTableName) throws SQLException {
+        String keyField = table.getKeyFieldName();
+        List<Field> trackedFields = new ArrayList<>();
+        for (Field field : table.fields) {
+            boolean trackedKey = field.name.equals(keyField) && (
+                (table.getOrderFieldName() == null && table.hasUniqueKeyField) ||
+                !field.isForeignReference() ||
+                table == Table.CALENDAR_DATES
+            );
+            if (trackedKey || field.isForeign()) trackedFields.add(field);
+        }
+        if (trackedFields.isEmpty()) return;
+        Statement statement = connection.createStatement();
+        ResultSetMetaData metaData = statement.executeQuery(
+            String.format("select * from %s limit 0", previousTableName)
+        ).getMetaData();
+        Set<String> columnNames = new HashSet<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) columnNames.add(metaData.getColumnName(i));
+        // Optional fields may not have been present in the file.
+        trackedFields.removeIf(field -> !columnNames.contains(field.name));
+        if (trackedFields.isEmpty() || !columnNames.contains(keyField)) return;
+        Set<String> selectedColumns = new LinkedHashSet<>();
+        selectedColumns.add("id");
+        selectedColumns.add(keyField);
+        for (Field field : trackedFields) selectedColumns.add(field.name);
+        // Stream the rows rather than holding them all in memory (this requires auto-commit to be off).
+        statement.setFetchSize(10_000);
+        ResultSet resultSet = statement.executeQuery(
+            String.format("select %s from %s order by id", String.join(", ", selectedColumns), previousTableName)
+        );
+        while (resultSet.next()) {
+            String keyValue = resultSet.getString(keyField);
+            if (keyValue == null) keyValue = "";
+            int lineNumber = resultSet.getInt("id");
+            for (Field field : trackedFields) {
+                String value = resultSet.getString(field.name);
+                // Any reference errors were already copied with the table's other load errors.
+                referenceTracker.checkReferencesAndUniqueness(
+                    keyValue, lineNumber, field, value == null ? "" : value, table
+                );
+            }
+        }
+    }
+
+    /**
+     * Store the errors found while loading a table into the previous namespace again for the copied table. Errors
+     * found later by validators are not copied, nor are errors about the location of the file in the zip. Rows that
+     * summarize errors suppressed by the limit on errors stored per type are counted as the errors they stand for.
+     */
+    private void copyLoadErrors(Table table) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(String.format(
+            "select e.error_id, e.error_type, e.line_number, e.entity_id, e.entity_sequence, e.bad_value, i.key, " +
+                "i.value from %1$s.errors e left join %1$s.error_info i on e.error_id = i.error_id " +
+                "where e.entity_type = ? and e.error_id < ? and e.error_type <> ? order by e.error_id",
+            previousNamespace
+        ));
+        statement.setString(1, table.getEntityClass().getSimpleName());
+        statement.setInt(2, previousLoadErrorIdLimit);
+        statement.setString(3, TABLE_IN_SUBDIRECTORY.name());
+        ResultSet resultSet = statement.executeQuery();
+        NewGTFSError error = null;
+        int errorId = -1;
+        while (resultSet.next()) {
+            if (error == null || resultSet.getInt(1) != errorId) {
+                if (error != null) storeCopiedError(error);
+                errorId = resultSet.getInt(1);
+                error = NewGTFSError.forTable(table, NewGTFSErrorType.valueOf(resultSet.getString(2)));
+                error.lineNumber = (Integer) resultSet.getObject(3);
+                error.entityId = resultSet.getString(4);
+                error.entitySequenceNumber = (Integer) resultSet.getObject(5);
+                error.badValue = resultSet.getString(6);
+            }
+            String key = resultSet.getString(7);
+            if (key != null) error.addInfo(key, resultSet.getString(8));
+        }
+        if (error != null) storeCopiedError(error);
+    }
+
+    private void storeCopiedError(NewGTFSError error) {
+        String suppressedCount = error.errorInfo.remove(SQLErrorStorage.SUPPRESSED_COUNT_KEY);
+        if (suppressedCount == null) errorStorage.storeError(error);
+        else errorStorage.storeSuppressedErrors(error, Integer.parseInt(suppressedCount));
+    }
+
+    /**
+     * Load each table in turn on the single shared connection, in the order needed for referential integrity checks.
+     */
+    private Map<Table, TableLoadResult> loadTablesSequentially() {
+        Map<Table, TableLoadResult> tableLoadResults = new HashMap<>();
+        for (Table table : TABLES_IN_LOAD_ORDER) {
+            tableLoadResults.put(table, load(table));
+        }
+        return tableLoadResults;
+    }
+
+    /**
+     * Load the tables stage by stage (see {@link #TABLE_LOAD_STAGES}). All tables within a stage are loaded at the same
+     * time, each by a separate loader holding its own connection into the same namespace schema. The next stage only
+     * begins once every table in the current stage has been loaded and committed, so all the keys a table refers to
+     * are already present in the shared reference tracker, just as they would be when loading the tables in turn.
+     * Only the order in which errors are stored differs from a sequential load.
+     */
+    private Map<Table, TableLoadResult> loadTablesConcurrently() throws InterruptedException, ExecutionException {
+        LOG.info("Loading tables with {} threads", loadThreads);
+        Map<Table, TableLoadResult> tableLoadResults = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(loadThreads);
+        try {
+            for (Table[] stage : TABLE_LOAD_STAGES) {
+                Map<Table, Future<TableLoadResult>> futures = new HashMap<>();
+                for (Table table : stage) {
+                    futures.put(table, executor.submit(() -> loadOnNewConnection(table)));
+                }
+                for (Map.Entry<Table, Future<TableLoadResult>> entry : futures.entrySet()) {
+                    tableLoadResults.put(entry.getKey(), entry.getValue().get());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return tableLoadResults;
+    }
+
+    /**
+     * Build the indexes put off while loading tables (see {@link #withDeferredIndexes(int)}), each on its own
+     * connection from the data source. A failure to build an index is recorded as a fatal exception on its table's load
+     * result.
+     */
+    private void createDeferredIndexes(Map<Table, TableLoadResult> tableLoadResults) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        // Begin with the largest tables, whose indexes take longest to build, so they are not left until the end.
+        List<Table> tables = new ArrayList<>(deferredIndexes.keySet());
+        tables.sort(Comparator.comparingInt((Table table) -> tableLoadResults.get(table).rowCount).reversed());
+        LOG.info("Creating indexes for {} tables with {} threads", tables.size(), indexThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(indexThreads);
+        try {
+            Map<Future<?>, Table> futures = new LinkedHashMap<>();
+            for (Table table : tables) {
+                for (String indexSql : deferredIndexes.get(table)) {
+                    futures.put(executor.submit(() -> createIndexOnNewConnection(indexSql)), table);
+                }
+            }
+            for (Map.Entry<Future<?>, Table> entry : futures.entrySet()) {
+                try {
+                    entry.getKey().get();
+                } catch (ExecutionException e) {
+                    LOG.error("Fatal error indexing table", e.getCause());
+                    TableLoadResult tableLoadResult = tableLoadResults.get(entry.getValue());
+                    if (tableLoadResult.fatalException == null) {
+                        tableLoadResult.fatalException = e.getCause().toString();
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            deferredIndexes.clear();
+        }
+        LOG.info("Creating indexes took {} sec", (System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    private Void createIndexOnNewConnection(String indexSql) throws SQLException {
+        try (Connection indexConnection = dataSource.getConnection()) {
+            Statement statement = indexConnection.createStatement();
+            if (indexMaintenanceWorkMem != null) {
+                statement.execute(String.format("set maintenance_work_mem = '%s'", indexMaintenanceWorkMem));
+            }
+            long startTime = System.currentTimeMillis();
+            statement.execute(indexSql);
+            indexConnection.commit();
+            LOG.info("{} took {} ms", indexSql, System.currentTimeMillis() - startTime);
+        }
+        return null;
+    }
+
+    /**
+     * Load a single table with a new loader that shares this loader's zip file, namespace, error storage and reference
+     * tracker, but uses its own connection from the data source.
+     */
+    private TableLoadResult loadOnNewConnection(Table table) throws SQLException {
+        JdbcGtfsLoader tableLoader = new JdbcGtfsLoader(this);
+        try {
+            tableLoader.connection = dataSource.getConnection();
+            return tableLoader.load(table);
+        } finally {
+            if (tableLoader.connection != null) DbUtils.closeQuietly(tableLoader.connection);
+        }
+    }
+
     /**
      * Creates a schema/namespace in the database WITHOUT committing the changes.
      * This does *not* setup any other tables or enter the schema name in a registry (@see #registerFeed).
@@ -215,12 +961,12 @@ public class JdbcGtfsLoader {
      * Originally we were flattening all feed_info files into one root-level table, but that forces us to drop any
      * custom fields in feed_info.
      */
-    private void registerFeed(File gtfsFile) {
+    private void registerFeed(String md5Hex, String shaHex) {
 
         // FIXME is this extra CSV reader used anymore? Check comment below.
         // First, inspect feed_info.txt to extract the ID and version.
         // We could get this with SQL after loading, but feed_info, feed_id and feed_version are all optional.
-        CsvReader csvReader = Table.FEED_INFO.getCsvReader(zip, errorStorage);
+        CsvReader csvReader = Table.FEED_INFO.getCsvReader(source, errorStorage);
         String feedId = "", feedVersion = "";
         if (csvReader != null) {
             // feed_info.txt has been found and opened.
@@ -236,10 +982,6 @@ public class JdbcGtfsLoader {
         }
 
         try {
-            HashCode md5 = Files.hash(gtfsFile, Hashing.md5());
-            String md5Hex = md5.toString();
-            HashCode sha1 = Files.hash(gtfsFile, Hashing.sha1());
-            String shaHex = sha1.toString();
             createFeedRegistryIfNotExists(connection);
             // TODO try to get the feed_id and feed_version out of the feed_info table
             // statement.execute("select * from feed_info");
@@ -253,7 +995,7 @@ public class JdbcGtfsLoader {
             insertStatement.setString(3, shaHex);
             insertStatement.setString(4, feedId.isEmpty() ? null : feedId);
             insertStatement.setString(5, feedVersion.isEmpty() ? null : feedVersion);
-            insertStatement.setString(6, zip.getName());
+            insertStatement.setString(6, source.getName());
             insertStatement.execute();
             connection.commit();
             LOG.info("Created new feed namespace: {}", insertStatement);
@@ -278,9 +1020,14 @@ public class JdbcGtfsLoader {
     private TableLoadResult load(Table table) {
         // This object will be returned to the caller to summarize the contents of the table and any errors.
         TableLoadResult tableLoadResult = new TableLoadResult();
-        int initialErrorCount = errorStorage.getErrorCount();
+        int initialErrorCount = getErrorCount();
         try {
-            tableLoadResult.rowCount = loadInternal(table);
+            if (unchangedTables.contains(table)) {
+                tableLoadResult.rowCount = copyUnchangedTable(table);
+                tableLoadResult.copiedFromPreviousNamespace = true;
+            } else {
+                tableLoadResult.rowCount = loadInternal(table);
+            }
             tableLoadResult.fileSize = getTableSize(table);
             LOG.info(String.format("loaded in %d %s records", tableLoadResult.rowCount, table.name));
         } catch (Exception ex) {
@@ -298,19 +1045,33 @@ public class JdbcGtfsLoader {
             if (tempTextFile != null) {
                 tempTextFile.delete();
             }
+            // Stop any copy command that is still waiting for rows (i.e. parsing failed part way through the table).
+            if (streamingCopy != null) {
+                streamingCopy.cancel();
+                streamingCopy = null;
+            }
+            stopTimeStream = null;
         }
-        int finalErrorCount = errorStorage.getErrorCount();
+        int finalErrorCount = getErrorCount();
         tableLoadResult.errorCount = finalErrorCount - initialErrorCount;
         return tableLoadResult;
     }
 
+    /**
+     * If other tables are being loaded at the same time, only the errors stored by this thread are counted so that
+     * errors are attributed to the right table.
+     */
+    private int getErrorCount() {
+        return sharesErrorStorage ? errorStorage.getErrorCountForCurrentThread() : errorStorage.getErrorCount();
+    }
+
     /**
      * Get the uncompressed file size in bytes for the specified GTFS table.
      */
-    private int getTableSize(Table table) {
-        ZipEntry zipEntry = zip.getEntry(table.name + ".txt");
-        if (zipEntry == null) return 0;
-        return (int) zipEntry.getSize();
+    private int getTableSize(Table table) throws IOException {
+        String entryName = table.getEntryName(source);
+        if (entryName == null) return 0;
+        return (int) Math.max(0, source.getSize(entryName));
     }
 
     /**
@@ -319,7 +1080,7 @@ public class JdbcGtfsLoader {
      * @return number of rows that were loaded.
      */
     private int loadInternal(Table table) throws Exception {
-        CsvReader csvReader = table.getCsvReader(zip, errorStorage);
+        CsvReader csvReader = table.getCsvReader(source, errorStorage);
         if (csvReader == null) {
             LOG.info(String.format("file %s.txt not found in gtfs zipfile", table.name));
             // This GTFS table could not be opened in the zip, even in a subdirectory.
@@ -354,101 +1115,127 @@ public class JdbcGtfsLoader {
         // Some databases require the table to exist before a statement can be prepared.
         targetTable.createSqlTable(connection);
 
+        if (validateTripsWhileLoading && postgresText && table == Table.STOP_TIMES) {
+            // The trips, routes and stops referred to by stop times have already been loaded and committed. The feed's
+            // reader for stop_times is not used (the table is not committed yet, so a warning is logged for it).
+            Feed feed = new Feed(dataSource, tablePrefix);
+            stopTimeStream = new StopTimeStream(new NewTripTimesValidator(feed, null), cleanFields);
+        }
+
         // TODO are we loading with or without a header row in our Postgres text file?
-        if (postgresText) {
+        boolean postgresBinary = postgresText && binaryCopy && BinaryCopyWriter.supportsFields(cleanFields);
+        OutputStream copyStream = null;
+        if (postgresText && streamCopy) {
+            // The copy command runs on another connection, which can only see the new table once it is committed.
+            connection.commit();
+            tempTextFile = null;
+            streamingCopy = new StreamingCopy(dataSource, targetTable.name, postgresBinary);
+            copyStream = streamingCopy.getOutputStream();
+            LOG.info("Streaming rows into database table {}", targetTable.name);
+        } else if (postgresText) {
             // No need to output headers to temp text file, our SQL table column order exactly matches our text file.
             tempTextFile = File.createTempFile(targetTable.name, "text");
-            tempTextFileStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(tempTextFile)));
+            copyStream = new BufferedOutputStream(new FileOutputStream(tempTextFile));
             LOG.info("Loading via temporary text file at " + tempTextFile.getAbsolutePath());
         } else {
             insertStatement = connection.prepareStatement(targetTable.generateInsertSql());
             LOG.info(insertStatement.toString()); // Logs the SQL for the prepared statement
         }
+        if (postgresBinary) binaryCopyWriter = new BinaryCopyWriter(copyStream, cleanFields);
+        else if (postgresText) tempTextFileStream = new PrintStream(copyStream);
 
         // When outputting text, accumulate transformed strings to allow skipping rows when errors are encountered.
         // One extra position in the array for the CSV line number.
         String[] transformedStrings = new String[cleanFields.length + 1];
         boolean tableHasConditionalRequirements = table.hasConditionalRequirements();
-        // Iterate over each record and prepare the record for storage in the table either through batch insert
-        // statements or postgres text copy operation.
-        while (csvReader.readRecord()) {
-            // The CSV reader's current record is zero-based and does not include the header line.
-            // Convert to a CSV file line number that will make more sense to people reading error messages.
-            if (csvReader.getCurrentRecord() + 2 > Integer.MAX_VALUE) {
-                errorStorage.storeError(NewGTFSError.forTable(table, TABLE_TOO_LONG));
-                break;
-            }
-            // Line 1 is considered the header row, so the first actual row of data will be line 2.
-            int lineNumber = ((int) csvReader.getCurrentRecord()) + 2;
-            if (lineNumber % 500_000 == 0) LOG.info("Processed {}", human(lineNumber));
-            if (csvReader.getColumnCount() != fields.length) {
-                String badValues = String.format("expected=%d; found=%d", fields.length, csvReader.getColumnCount());
-                errorStorage.storeError(NewGTFSError.forLine(table, lineNumber, WRONG_NUMBER_OF_FIELDS, badValues));
-                continue;
-            }
-            // Store value of key field for use in checking duplicate IDs
-            // FIXME: If the key field is missing (keyFieldIndex is still -1) from a loaded table, this will crash.
-            String keyValue = csvReader.get(keyFieldIndex);
-            // The first field holds the line number of the CSV file. Prepared statement parameters are one-based.
-            if (postgresText) transformedStrings[0] = Integer.toString(lineNumber);
-            else insertStatement.setInt(1, lineNumber);
-            // Maintain a separate columnIndex from for loop because some fields may be null and not included in the set
-            // of fields for this table.
-            int columnIndex = 0;
-            for (int f = 0; f < fields.length; f++) {
-                Field field = fields[f];
-                // If the field is null, it represents a duplicate header or ID field and must be skipped to maintain
-                // table integrity.
-                if (field == null) continue;
-                // CSV reader get on an empty field will be an empty string literal.
-                String string = csvReader.get(f);
-                // Use spec table to check that references are valid and IDs are unique.
-                Set<NewGTFSError> errors = referenceTracker
-                    .checkReferencesAndUniqueness(keyValue, lineNumber, field, string, table);
-                // Check for special case with calendar_dates where added service should not trigger ref. integrity
-                // error.
-                if (
-                    table.name.equals("calendar_dates") &&
-                        "service_id".equals(field.name) &&
-                        "1".equals(csvReader.get(Field.getFieldIndex(fields, "exception_type")))
-
-                ) {
-                    for (NewGTFSError error : errors) {
-                        if (NewGTFSErrorType.REFERENTIAL_INTEGRITY.equals(error.errorType)) {
-                            // Do not record bad service_id reference errors for calendar date entries that add service
-                            // (exception type=1) because a corresponding service_id in calendars.txt is not required in
-                            // this case.
-                            LOG.info(
-                                "A calendar_dates.txt entry added service (exception_type=1) for service_id={}, which does not have (or necessarily need) a corresponding entry in calendars.txt.",
-                                keyValue
-                            );
-                        } else {
-                            errorStorage.storeError(error);
+        if (parseThreads > 1 && postgresText && table == Table.STOP_TIMES) {
+            // Convert the records of this (very large) table on several threads.
+            loadRecordsConcurrently(csvReader, table, fields, cleanFields, keyFieldIndex, postgresBinary);
+        } else {
+            // Iterate over each record and prepare the record for storage in the table either through batch insert
+            // statements or postgres text copy operation.
+            while (csvReader.readRecord()) {
+                // The CSV reader's current record is zero-based and does not include the header line.
+                // Convert to a CSV file line number that will make more sense to people reading error messages.
+                if (csvReader.getCurrentRecord() + 2 > Integer.MAX_VALUE) {
+                    errorStorage.storeError(NewGTFSError.forTable(table, TABLE_TOO_LONG));
+                    break;
+                }
+                // Line 1 is considered the header row, so the first actual row of data will be line 2.
+                int lineNumber = ((int) csvReader.getCurrentRecord()) + 2;
+                if (lineNumber % 500_000 == 0) LOG.info("Processed {}", human(lineNumber));
+                if (csvReader.getColumnCount() != fields.length) {
+                    String badValues = String.format("expected=%d; found=%d", fields.length, csvReader.getColumnCount());
+                    errorStorage.storeError(NewGTFSError.forLine(table, lineNumber, WRONG_NUMBER_OF_FIELDS, badValues));
+                    continue;
+                }
+                // Store value of key field for use in checking duplicate IDs
+                // FIXME: If the key field is missing (keyFieldIndex is still -1) from a loaded table, this will crash.
+                String keyValue = csvReader.get(keyFieldIndex);
+                // The first field holds the line number of the CSV file. Prepared statement parameters are one-based.
+                if (postgresText) transformedStrings[0] = Integer.toString(lineNumber);
+                else insertStatement.setInt(1, lineNumber);
+                // Maintain a separate columnIndex from for loop because some fields may be null and not included in the set
+                // of fields for this table.
+                int columnIndex = 0;
+                for (int f = 0; f < fields.length; f++) {
+                    Field field = fields[f];
+                    // If the field is null, it represents a duplicate header or ID field and must be skipped to maintain
+                    // table integrity.
+                    if (field == null) continue;
+                    // CSV reader get on an empty field will be an empty string literal.
+                    String string = csvReader.get(f);
+                    // Use spec table to check that references are valid and IDs are unique.
+                    Set<NewGTFSError> errors = referenceTracker
+                        .checkReferencesAndUniqueness(keyValue, lineNumber, field, string, table);
+                    // Check for special case with calendar_dates where added service should not trigger ref. integrity
+                    // error.
+                    if (
+                        table.name.equals("calendar_dates") &&
+                            "service_id".equals(field.name) &&
+                            "1".equals(csvReader.get(Field.getFieldIndex(fields, "exception_type")))
+
+                    ) {
+                        for (NewGTFSError error : errors) {
+                            if (NewGTFSErrorType.REFERENTIAL_INTEGRITY.equals(error.errorType)) {
+                                // Do not record bad service_id reference errors for calendar date entries that add service
+                                // (exception type=1) because a corresponding service_id in calendars.txt is not required in
+                                // this case.
+                                LOG.info(
+                                    "A calendar_dates.txt entry added service (exception_type=1) for service_id={}, which does not have (or necessarily need) a corresponding entry in calendars.txt.",
+                                    keyValue
+                                );
+                            } else {
+                                errorStorage.storeError(error);
+                            }
                         }
                     }
+                    // In all other cases (i.e., outside of the calendar_dates special case), store the reference errors found.
+                    else {
+                        errorStorage.storeErrors(errors);
+                    }
+                    // Add value for entry into table
+                    setValueForField(table, columnIndex, lineNumber, field, string, postgresText, transformedStrings);
+                    // Increment column index.
+                    columnIndex += 1;
                 }
-                // In all other cases (i.e., outside of the calendar_dates special case), store the reference errors found.
-                else {
-                    errorStorage.storeErrors(errors);
+                if (tableHasConditionalRequirements) {
+                    LineContext lineContext = new LineContext(table, fields, transformedStrings, lineNumber);
+                    errorStorage.storeErrors(
+                        referenceTracker.checkConditionallyRequiredFields(lineContext)
+                    );
                 }
-                // Add value for entry into table
-                setValueForField(table, columnIndex, lineNumber, field, string, postgresText, transformedStrings);
-                // Increment column index.
-                columnIndex += 1;
-            }
-            if (tableHasConditionalRequirements) {
-                LineContext lineContext = new LineContext(table, fields, transformedStrings, lineNumber);
-                errorStorage.storeErrors(
-                    referenceTracker.checkConditionallyRequiredFields(lineContext)
-                );
-            }
-            if (postgresText) {
-                // Print a new line in the standard postgres text format:
-                // https://www.postgresql.org/docs/9.1/static/sql-copy.html#AEN64380
-                tempTextFileStream.println(String.join("\t", transformedStrings));
-            } else {
-                insertStatement.addBatch();
-                if (lineNumber % INSERT_BATCH_SIZE == 0) insertStatement.executeBatch();
+                if (postgresBinary) {
+                    binaryCopyWriter.writeRow(transformedStrings);
+                } else if (postgresText) {
+                    // Print a new line in the standard postgres text format:
+                    // https://www.postgresql.org/docs/9.1/static/sql-copy.html#AEN64380
+                    tempTextFileStream.println(String.join("\t", transformedStrings));
+                } else {
+                    insertStatement.addBatch();
+                    if (lineNumber % INSERT_BATCH_SIZE == 0) insertStatement.executeBatch();
+                }
+                if (stopTimeStream != null) stopTimeStream.accept(transformedStrings);
             }
         }
         // Record number is zero based but includes the header record, which we don't want to count.
@@ -465,31 +1252,206 @@ public class JdbcGtfsLoader {
 
         // Finalize loading the table, either by copying the pre-validated text file into the database (for Postgres)
         // or inserting any remaining rows (for all others).
-        if (postgresText) {
-            LOG.info("Loading into database table {} from temporary text file...", targetTable.name);
+        if (postgresBinary) {
+            binaryCopyWriter.close();
+            binaryCopyWriter = null;
+        } else if (postgresText) {
             tempTextFileStream.close();
-            copyFromFile(connection, tempTextFile, targetTable.name);
+        }
+        if (postgresText && streamCopy) {
+            // Closing the stream signals the end of the rows to the copy command.
+            streamingCopy.finish();
+            streamingCopy = null;
+        } else if (postgresText) {
+            LOG.info("Loading into database table {} from temporary text file...", targetTable.name);
+            copyFromFile(connection, tempTextFile, targetTable.name, postgresBinary);
         } else {
             insertStatement.executeBatch();
         }
         // Create indexes using spec table. Target table must not be used because fields could be in the wrong order
         // (and the order is currently important to determining the index fields).
-        table.createIndexes(connection, tablePrefix);
+        if (indexThreads > 0) deferredIndexes.put(table, table.getCreateIndexSql(tablePrefix));
+        else table.createIndexes(connection, tablePrefix);
 
         LOG.info("Committing transaction...");
         connection.commit();
         LOG.info("Done.");
+        if (stopTimeStream != null) streamedTripTimesValidator.set(stopTimeStream.finish());
         return numberOfRecordsLoaded;
     }
 
+    /**
+     * Read the remaining records of the CSV file in batches, and convert each batch into rows for the Postgres copy
+     * command on a pool of parsing threads. The converted batches are then taken back in the order they were read:
+     * the referential integrity and duplicate checks (which depend on the order of the records) and the conditional
+     * requirement checks are made on this thread, followed by storing any errors found while converting, and writing
+     * the rows to the copy stream. So the same rows, line numbers and errors are stored as when converting the records
+     * on this thread, though errors for a single record may be stored in a different order.
+     */
+    private void loadRecordsConcurrently(
+        CsvReader csvReader, Table table, Field[] fields, Field[] cleanFields, int keyFieldIndex, boolean postgresBinary
+    ) throws Exception {
+        LOG.info("Parsing {} with {} threads", table.name, parseThreads);
+        ForkJoinPool parsePool = new ForkJoinPool(parseThreads);
+        // Limit the number of batches in memory, by waiting for the oldest batch before reading more records.
+        Deque<Future<RecordBatch>> pendingBatches = new ArrayDeque<>();
+        try {
+            RecordBatch batch = new RecordBatch();
+            boolean tableTooLong = false;
+            while (csvReader.readRecord()) {
+                // The CSV reader's current record is zero-based and does not include the header line.
+                if (csvReader.getCurrentRecord() + 2 > Integer.MAX_VALUE) {
+                    tableTooLong = true;
+                    break;
+                }
+                // Line 1 is considered the header row, so the first actual row of data will be line 2.
+                int lineNumber = ((int) csvReader.getCurrentRecord()) + 2;
+                if (lineNumber % 500_000 == 0) LOG.info("Processed {}", human(lineNumber));
+                batch.add(lineNumber, csvReader.getValues());
+                if (batch.size() == PARSE_BATCH_SIZE) {
+                    RecordBatch batchToConvert = batch;
+                    pendingBatches.add(parsePool.submit(
+                        () -> convertRecords(batchToConvert, table, fields, cleanFields, postgresBinary)
+                    ));
+                    batch = new RecordBatch();
+                    if (pendingBatches.size() > parseThreads * 2) {
+                        storeRecords(pendingBatches.remove(), table, fields, keyFieldIndex, postgresBinary);
+                    }
+                }
+            }
+            RecordBatch lastBatch = batch;
+            pendingBatches.add(parsePool.submit(
+                () -> convertRecords(lastBatch, table, fields, cleanFields, postgresBinary)
+            ));
+            while (!pendingBatches.isEmpty()) {
+                storeRecords(pendingBatches.remove(), table, fields, keyFieldIndex, postgresBinary);
+            }
+            if (tableTooLong) errorStorage.storeError(NewGTFSError.forTable(table, TABLE_TOO_LONG));
+        } finally {
+            parsePool.shutdownNow();
+        }
+    }
+
+    /**
+     * Convert a batch of records into rows for the copy command, on one of the parsing threads. Errors are held in the
+     * batch rather than stored.
+     */
+    private RecordBatch convertRecords(
+        RecordBatch batch, Table table, Field[] fields, Field[] cleanFields, boolean postgresBinary
+    ) throws IOException {
+        ByteArrayOutputStream encodedRows = new ByteArrayOutputStream();
+        DataOutputStream binaryRows = postgresBinary ? new DataOutputStream(encodedRows) : null;
+        StringBuilder textRows = postgresBinary ? null : new StringBuilder();
+        for (int r = 0; r < batch.size(); r++) {
+            String[] values = batch.values.get(r);
+            // Records with the wrong number of fields are skipped (and an error stored) when the batch is stored.
+            if (values.length != fields.length) continue;
+            int lineNumber = batch.lineNumbers[r];
+            String[] transformedStrings = new String[cleanFields.length + 1];
+            transformedStrings[0] = Integer.toString(lineNumber);
+            List<NewGTFSError> conversionErrors = new ArrayList<>(0);
+            int columnIndex = 0;
+            for (int f = 0; f < fields.length; f++) {
+                Field field = fields[f];
+                if (field == null) continue;
+                setValueForField(
+                    table, columnIndex, lineNumber, field, values[f], true, transformedStrings, conversionErrors::add
+                );
+                columnIndex += 1;
+            }
+            if (postgresBinary) BinaryCopyWriter.writeRow(binaryRows, cleanFields, transformedStrings);
+            else textRows.append(String.join("\t", transformedStrings)).append('\n');
+            batch.transformedStrings.set(r, transformedStrings);
+            batch.conversionErrors.set(r, conversionErrors);
+        }
+        if (postgresBinary) binaryRows.flush();
+        else encodedRows.write(textRows.toString().getBytes(StandardCharsets.UTF_8));
+        batch.encodedRows = encodedRows.toByteArray();
+        return batch;
+    }
+
+    /**
+     * Wait for a batch to be converted, then check and store its records in order as described in
+     * {@link #loadRecordsConcurrently}.
+     */
+    private void storeRecords(
+        Future<RecordBatch> convertedBatch, Table table, Field[] fields, int keyFieldIndex, boolean postgresBinary
+    ) throws Exception {
+        RecordBatch batch;
+        try {
+            batch = convertedBatch.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+        boolean tableHasConditionalRequirements = table.hasConditionalRequirements();
+        for (int r = 0; r < batch.size(); r++) {
+            String[] values = batch.values.get(r);
+            int lineNumber = batch.lineNumbers[r];
+            if (values.length != fields.length) {
+                String badValues = String.format("expected=%d; found=%d", fields.length, values.length);
+                errorStorage.storeError(NewGTFSError.forLine(table, lineNumber, WRONG_NUMBER_OF_FIELDS, badValues));
+                continue;
+            }
+            String keyValue = values[keyFieldIndex];
+            for (int f = 0; f < fields.length; f++) {
+                Field field = fields[f];
+                if (field == null) continue;
+                errorStorage.storeErrors(
+                    referenceTracker.checkReferencesAndUniqueness(keyValue, lineNumber, field, values[f], table)
+                );
+            }
+            for (NewGTFSError error : batch.conversionErrors.get(r)) errorStorage.storeError(error);
+            if (tableHasConditionalRequirements) {
+                LineContext lineContext = new LineContext(table, fields, batch.transformedStrings.get(r), lineNumber);
+                errorStorage.storeErrors(referenceTracker.checkConditionallyRequiredFields(lineContext));
+            }
+            if (stopTimeStream != null) stopTimeStream.accept(batch.transformedStrings.get(r));
+        }
+        if (postgresBinary) binaryCopyWriter.writeEncodedRows(batch.encodedRows);
+        else tempTextFileStream.write(batch.encodedRows);
+    }
+
+    /**
+     * Consecutive records read from a CSV file, along with the rows and errors produced by converting them.
+     */
+    private static class RecordBatch {
+        final int[] lineNumbers = new int[PARSE_BATCH_SIZE];
+        final List<String[]> values = new ArrayList<>(PARSE_BATCH_SIZE);
+        final List<String[]> transformedStrings = new ArrayList<>(PARSE_BATCH_SIZE);
+        final List<List<NewGTFSError>> conversionErrors = new ArrayList<>(PARSE_BATCH_SIZE);
+        // The converted rows, in the Postgres text or binary copy format.
+        byte[] encodedRows;
+
+        void add(int lineNumber, String[] recordValues) {
+            lineNumbers[values.size()] = lineNumber;
+            values.add(recordValues);
+            transformedStrings.add(null);
+            conversionErrors.add(null);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
     /**
      * Method that uses the PostgreSQL-specific copy from file command to load csv data into a table on the provided
      * connection. NOTE: This method does not commit the transaction or close the connection.
      */
     public static void copyFromFile(Connection connection, File file, String targetTableName) throws IOException, SQLException {
+        copyFromFile(connection, file, targetTableName, false);
+    }
+
+    /**
+     * Copy a file written in either the Postgres text format or (if binary is true) the binary format written by
+     * {@link BinaryCopyWriter} into a table on the provided connection. NOTE: This method does not commit the
+     * transaction or close the connection.
+     */
+    public static void copyFromFile(Connection connection, File file, String targetTableName, boolean binary) throws IOException, SQLException {
         // Allows sending over network. This is only slightly slower than a local file copy.
-        final String copySql = String.format("copy %s from stdin", targetTableName);
-        // FIXME we should be reading the COPY text from a stream in parallel, not from a temporary text file.
+        final String copySql = copySql(targetTableName, binary);
+        // See withStreamingCopy for reading the COPY text from a stream in parallel instead of from a temporary text file.
         InputStream stream = new BufferedInputStream(new FileInputStream(file.getAbsolutePath()));
         // Our connection pool wraps the Connection objects, so we need to unwrap the Postgres connection interface.
         CopyManager copyManager = new CopyManager(connection.unwrap(BaseConnection.class));
@@ -499,6 +1461,15 @@ public class JdbcGtfsLoader {
         // statement.execute(String.format("copy %s from '%s'", table.name, tempTextFile.getAbsolutePath()));
     }
 
+    /**
+     * @return the SQL for a copy command reading rows in the text or binary format from the client.
+     */
+    static String copySql(String targetTableName, boolean binary) {
+        return binary
+            ? String.format("copy %s from stdin (format binary)", targetTableName)
+            : String.format("copy %s from stdin", targetTableName);
+    }
+
     /**
      * Set value for a field either as a prepared statement parameter or (if using postgres text-loading) in the
      * transformed strings array provided. This also handles the case where the string is empty (i.e., field is null)
@@ -506,10 +1477,21 @@ public class JdbcGtfsLoader {
      * the field is set to null.
      */
     public void setValueForField(Table table, int fieldIndex, int lineNumber, Field field, String string, boolean postgresText, String[] transformedStrings) {
+        setValueForField(table, fieldIndex, lineNumber, field, string, postgresText, transformedStrings, error -> {
+            if (errorStorage != null) errorStorage.storeError(error);
+        });
+    }
+
+    /**
+     * Set value for a field as above, but pass any errors to the given consumer instead of storing them. When using
+     * postgres text-loading, this only writes to the transformed strings array, so it may be called from other threads
+     * (see {@link #loadRecordsConcurrently}).
+     */
+    private void setValueForField(Table table, int fieldIndex, int lineNumber, Field field, String string, boolean postgresText, String[] transformedStrings, Consumer<NewGTFSError> errorConsumer) {
         if (string.isEmpty()) {
             // CSV reader always returns empty strings, not nulls
-            if (field.isRequired() && !field.isEmptyValuePermitted() && errorStorage != null) {
-                errorStorage.storeError(NewGTFSError.forLine(table, lineNumber, MISSING_FIELD, field.name));
+            if (field.isRequired() && !field.isEmptyValuePermitted()) {
+                errorConsumer.accept(NewGTFSError.forLine(table, lineNumber, MISSING_FIELD, field.name));
             }
             setFieldToNull(postgresText, transformedStrings, fieldIndex, field);
         } else {
@@ -541,13 +1523,11 @@ public class JdbcGtfsLoader {
                 for (NewGTFSError error : errors) {
                     error.entityType = table.getEntityClass();
                     error.lineNumber = lineNumber;
-                    if (errorStorage != null) errorStorage.storeError(error);
+                    errorConsumer.accept(error);
                 }
             } catch (StorageException ex) {
                 // FIXME many exceptions don't have an error type
-                if (errorStorage != null) {
-                    errorStorage.storeError(NewGTFSError.forLine(table, lineNumber, ex.errorType, ex.badValue));
-                }
+                errorConsumer.accept(NewGTFSError.forLine(table, lineNumber, ex.errorType, ex.badValue));
                 // Set transformedStrings or prepared statement param to null
                 setFieldToNull(postgresText, transformedStrings, fieldIndex, field);
             }
@@ -135,7 +135,7 @@ public class JdbcTableWriter implements TableWriter {
                     String updatedObject = update(nodeId, node.toString(), false);
                     updatedObjects.add(updatedObject);
                 }
-                if (autoCommit) connection.commit();
+                if (autoCommit) commitTransaction();
                 return mapper.writeValueAsString(updatedObjects);
             }
             // Cast JsonNode to ObjectNode to allow mutations (e.g., updating the ID field).
@@ -235,7 +235,7 @@ public class JdbcTableWriter implements TableWriter {
                 // If nothing failed up to this point, it is safe to assume there were no problems updating/creating the
                 // main entity and any of its children, so we commit the transaction.
                 LOG.info("Committing transaction.");
-                connection.commit();
+                commitTransaction();
             }
             // Add new ID to JSON object.
             jsonObject.put("id", newId);
@@ -277,7 +277,7 @@ public class JdbcTableWriter implements TableWriter {
                 }
             }
             int stopTimesUpdated = updateStopTimesForPatternStops(patternStopsToNormalize);
-            connection.commit();
+            commitTransaction();
             return stopTimesUpdated;
         } catch (Exception e) {
             e.printStackTrace();
@@ -1191,7 +1191,7 @@ public class JdbcTableWriter implements TableWriter {
                 }
                 results.add(result);
             }
-            if (autoCommit) connection.commit();
+            if (autoCommit) commitTransaction();
             LOG.info("Deleted {} {} entities", results.size(), specTable.name);
             return results.size();
         } catch (Exception e) {
@@ -1228,7 +1228,7 @@ public class JdbcTableWriter implements TableWriter {
                 LOG.error("Could not delete {} entity with id: {}", specTable.name, id);
                 throw new SQLException("Could not delete entity");
             }
-            if (autoCommit) connection.commit();
+            if (autoCommit) commitTransaction();
             // FIXME: change return message based on result value
             return result;
         } catch (Exception e) {
@@ -1246,10 +1246,18 @@ public class JdbcTableWriter implements TableWriter {
     @Override
     public void commit() throws SQLException {
         // FIXME: should this take a connection and commit it?
-        connection.commit();
+        commitTransaction();
         connection.close();
     }
 
+    /**
+     * Commit the changes made on the connection, removing any query results for the namespace cached by GraphQL.
+     */
+    private void commitTransaction () throws SQLException {
+        connection.commit();
+        NamespaceChanges.notifyChanged(tablePrefix);
+    }
+
     /**
      * Ensure that database connection closes. This should be called once the table writer is no longer needed.
      */
@@ -0,0 +1,55 @@
+package com.conveyal.gtfs.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Tells listeners (e.g., the cache of GraphQL query results) when the tables of a feed namespace have been changed,
+ * whether by loading, validating, editing or deleting the feed. This lets the layers that hold on to data from a
+ * namespace react to changes without the loader, validators and table writers depending on them.
+ */
+public class NamespaceChanges {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NamespaceChanges.class);
+
+    private static final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+
+    /**
+     * Something that must be told when the tables of a namespace have changed.
+     */
+    public interface Listener {
+        /**
+         * Called once changes to the tables of the namespace (which does not include the dot separator) have been
+         * committed.
+         */
+        void namespaceChanged(String namespace);
+    }
+
+    /**
+     * Add a listener to be told about every namespace change. Adding the same listener again has no effect.
+     */
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tell every listener that the tables of the namespace have changed. A listener that fails is logged rather than
+     * failing the change, which has already been committed.
+     */
+    public static void notifyChanged(String namespace) {
+        for (Listener listener : listeners) {
+            try {
+                listener.namespaceChanged(namespace);
+            } catch (RuntimeException e) {
+                LOG.error("Listener failed on change to namespace {}.", namespace, e);
+            }
+        }
+    }
+}
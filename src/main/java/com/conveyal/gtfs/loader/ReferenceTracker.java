@@ -3,29 +3,104 @@ package com.conveyal.gtfs.loader;
 import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.loader.conditions.ConditionalRequirement;
 import com.google.common.collect.HashMultimap;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.DUPLICATE_ID;
 import static com.conveyal.gtfs.error.NewGTFSErrorType.REFERENTIAL_INTEGRITY;
 
 /**
  * This class is used while loading GTFS to track the unique keys that are encountered in a GTFS
- * feed. It has two sets of strings that it tracks, one for single field keys (e.g., route_id or
- * stop_id) and one for keys that are compound, usually made up of a string ID with a sequence field
- * (e.g., trip_id + stop_sequence for tracking unique stop times).
+ * feed. It tracks two kinds of keys, single field keys (e.g., route_id or stop_id) and keys that are
+ * compound, usually made up of a string ID with a sequence field (e.g., trip_id + stop_sequence for
+ * tracking unique stop times).
+ * <p>
+ * Rather than a set of "field:value" strings, single field keys are kept in a dictionary per field
+ * that numbers each distinct value, and compound keys are kept as pairs of those numbers packed
+ * into primitive longs. This avoids concatenating a new string for every row, which on a large
+ * feed (tens of millions of stop times) used to take many gigabytes of memory.
  * <p>
  * NOTE: Its methods should remain public because they are used during external processes that
  * validate or otherwise iterate over each line of a GTFS file and need to check for reference
- * validity (e.g., while merging GTFS feeds this is used to determine ID conflicts).
+ * validity (e.g., while merging GTFS feeds this is used to determine ID conflicts). The keys can
+ * still be reached through the deprecated transitIds and transitIdsWithSequence sets, which are
+ * now views of the dictionaries rather than sets of strings.
  */
 public class ReferenceTracker {
-    public final Set<String> transitIds = new HashSet<>();
+    // These are concurrent maps (and the dictionaries and sets in them synchronized) so that several
+    // tables can be loaded at the same time (see JdbcGtfsLoader#withLoadThreads). The multimap is
+    // instead synchronized on, both while adding values and while the conditional requirements read
+    // it (e.g., agency_id values are read while stops are adding zone_id values).
+    private final Map<String, IdDictionary> idsForField = new ConcurrentHashMap<>();
     public final HashMultimap<String, String> uniqueValuesForFields = HashMultimap.create();
-    public final Set<String> transitIdsWithSequence = new HashSet<>();
+    private final Map<String, CompoundIdSet> idsWithSequenceForField = new ConcurrentHashMap<>();
+
+    /**
+     * A view of the single field keys as "field:value" strings (e.g., "stop_id:12345"), as they were
+     * once stored. Every "field:value" string is built on demand, so iterating over this is slow.
+     * @deprecated use {@link #containsId(String, String)} and {@link #addId(String, String)}.
+     */
+    @Deprecated
+    public final Set<String> transitIds = new TransitIdSet();
+
+    /**
+     * A view of the compound keys as "orderField:keyValue:orderValue" strings (e.g.,
+     * "stop_sequence:12345:2"), as they were once stored. Every string is built on demand, so
+     * iterating over this is slow.
+     * @deprecated use {@link #containsIdWithSequence(String, String, String)} and
+     * {@link #addIdWithSequence(String, String, String)}.
+     */
+    @Deprecated
+    public final Set<String> transitIdsWithSequence = new TransitIdWithSequenceSet();
+
+    /**
+     * @return whether the value has been seen for the key field (e.g., whether stop_id 12345 has
+     * been loaded).
+     */
+    public boolean containsId(String keyField, String value) {
+        IdDictionary ids = idsForField.get(keyField);
+        return ids != null && ids.contains(value);
+    }
+
+    /**
+     * Record a value of the key field (e.g., stop_id 12345).
+     * @return false if the value had already been recorded for the key field.
+     */
+    public boolean addId(String keyField, String value) {
+        return idsForField.computeIfAbsent(keyField, k -> new IdDictionary()).add(value) == IdDictionary.ADDED;
+    }
+
+    /**
+     * Record a compound key made up of a key value and the value of an order field (e.g.,
+     * stop_sequence 2 on trip 12345).
+     * @return false if the pair of values had already been recorded for the order field.
+     */
+    public boolean addIdWithSequence(String orderField, String keyValue, String orderValue) {
+        return idsWithSequenceForField.computeIfAbsent(orderField, k -> new CompoundIdSet()).add(keyValue, orderValue);
+    }
+
+    /**
+     * @return whether the compound key has been recorded for the order field (e.g., whether
+     * stop_sequence 2 on trip 12345 has been loaded).
+     */
+    public boolean containsIdWithSequence(String orderField, String keyValue, String orderValue) {
+        CompoundIdSet ids = idsWithSequenceForField.get(orderField);
+        return ids != null && ids.contains(keyValue, orderValue);
+    }
 
     /**
      * During table load, checks the uniqueness of the entity ID and that references are valid.
@@ -64,13 +139,14 @@ public class ReferenceTracker {
             // If table has no unique key field (e.g., calendar_dates or transfers), there is no
             // need to check for duplicates.
             : !table.hasUniqueKeyField ? null : keyField;
-        String transitId = String.join(":", keyField, keyValue);
 
         // Unique key values are needed for referential integrity checks as part of checks for fields that have
         // conditional requirements. This also tracks "special" foreign keys like stop#zone_id that are not primary keys
         // of the table they exist in.
         if ((field.name.equals(keyField) && keyField.equals(uniqueKeyField)) || field.isForeign()) {
-            uniqueValuesForFields.put(field.name, value);
+            synchronized (uniqueValuesForFields) {
+                uniqueValuesForFields.put(field.name, value);
+            }
         }
 
         // If the field is optional and there is no value present, skip check.
@@ -82,10 +158,10 @@ public class ReferenceTracker {
             // Check referential integrity if the field is a foreign reference. Note: the
             // reference table must be loaded before the table/value being currently checked.
             String referenceField = field.referenceTable.getKeyFieldName();
-            String referenceTransitId = String.join(":", referenceField, value);
 
-            if (!this.transitIds.contains(referenceTransitId)) {
+            if (!containsId(referenceField, value)) {
                 // If the reference tracker does not contain
+                String referenceTransitId = String.join(":", referenceField, value);
                 NewGTFSError referentialIntegrityError = NewGTFSError
                     .forLine(table, lineNumber, REFERENTIAL_INTEGRITY, referenceTransitId)
                     .setEntityId(keyValue);
@@ -99,35 +175,31 @@ public class ReferenceTracker {
         // reference. However, transfers#to_stop_id is defined as an order field, so we need to
         // check that this field (which is both a foreign ref and order field) is dataset unique
         // in conjunction with the key field.
-        // These hold references to the set of IDs to check for duplicates and the ID to check.
-        // These depend on whether an order field is part of the "unique ID."
-        Set<String> listOfUniqueIds = this.transitIds;
-        String uniqueId = transitId;
-
         // Next, check that the ID is table-unique. For example, the trip_id field is table unique
         // in trips.txt and the the stop_sequence field (joined with trip_id) is table unique in
         // stop_times.txt.
         if (field.name.equals(uniqueKeyField)) {
             // Check for duplicate IDs and store entity-scoped IDs for referential integrity check
+            // Some proprietary tables in the GTFS+ spec do not conform to the general principle in GTFS where a key
+            // field (e.g., stop_id) only acts as the primary key field in the entity's table. For example, stop_id
+            // acts as a primary key on stop_attributes.txt, so we scope the IDs for these tables by the table name
+            // when checking for duplicate entries.
+            String scope = table.required.equals(Requirement.PROPRIETARY) ? table.name + ":" : "";
+            boolean valueAlreadyExists;
             if (isOrderField) {
-                // Check duplicate reference in set of field-scoped id:sequence (e.g.,
-                // stop_sequence:12345:2)
-                // This should not be scoped by key field because there may be conflicts (e.g.,
-                // with trip_id="12345:2")
-                listOfUniqueIds = this.transitIdsWithSequence;
-                uniqueId = String.join(":", field.name, keyValue, value);
+                // Check duplicate reference in field-scoped id + sequence pairs (e.g., stop_sequence
+                // 2 for trip 12345). This should not be scoped by key field because there may be
+                // conflicts (e.g., with trip_id="12345:2")
+                valueAlreadyExists = !addIdWithSequence(scope + field.name, keyValue, value);
+            } else {
+                // Add ID and check duplicate reference in entity-scoped IDs (e.g., stop_id 12345)
+                valueAlreadyExists = !addId(scope + keyField, keyValue);
             }
-            if (table.required.equals(Requirement.PROPRIETARY)) {
-                // Some proprietary tables in the GTFS+ spec do not conform to the general principle in GTFS where a key
-                // field (e.g., stop_id) only acts as the primary key field in the entity's table. For example, stop_id
-                // acts as a primary key on stop_attributes.txt, so we prepend the table name to the unique ID for these
-                // tables when checking for duplicate entries.
-                uniqueId = String.join(":", table.name, uniqueId);
-            }
-             // Add ID and check duplicate reference in entity-scoped IDs (e.g., stop_id:12345)
-            boolean valueAlreadyExists = !listOfUniqueIds.add(uniqueId);
             if (valueAlreadyExists) {
                 // If the value is a duplicate, add an error.
+                String uniqueId = scope + (isOrderField
+                    ? String.join(":", field.name, keyValue, value)
+                    : String.join(":", keyField, keyValue));
                 NewGTFSError duplicateIdError =
                     NewGTFSError.forLine(table, lineNumber, DUPLICATE_ID, uniqueId)
                         .setEntityId(keyValue);
@@ -143,7 +215,7 @@ public class ReferenceTracker {
             // example, this is where we add shape_id from the shapes table, so that when we
             // check the referential integrity of trips#shape_id, we know that the shape_id
             // exists in the shapes table. It also handles tracking calendar_dates#service_id values.
-            listOfUniqueIds.add(uniqueId);
+            addId(keyField, keyValue);
         }
         return errors;
     }
@@ -164,11 +236,196 @@ public class ReferenceTracker {
             ConditionalRequirement[] conditionalRequirements = entry.getValue();
             // Work through each field's conditional requirements.
             for (ConditionalRequirement conditionalRequirement : conditionalRequirements) {
-                errors.addAll(
-                    conditionalRequirement.check(lineContext, referenceField, uniqueValuesForFields)
-                );
+                // The checks only read the multimap, so hold the lock for the duration of each check rather than
+                // copying the values they need.
+                synchronized (uniqueValuesForFields) {
+                    errors.addAll(
+                        conditionalRequirement.check(lineContext, referenceField, uniqueValuesForFields)
+                    );
+                }
             }
         }
         return errors;
     }
+
+    /**
+     * Numbers each distinct value of a field in the order it was first added. The numbers are used
+     * to pack compound keys into longs.
+     */
+    private static class IdDictionary {
+        static final int ADDED = -1;
+        private final TObjectIntMap<String> indexForValue =
+            new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, ADDED);
+
+        synchronized boolean contains(String value) {
+            return indexForValue.containsKey(value);
+        }
+
+        /** @return ADDED if the value is new, otherwise its existing index. */
+        synchronized int add(String value) {
+            return indexForValue.putIfAbsent(value, indexForValue.size());
+        }
+
+        /** @return the index of the value, adding it first if it is new. */
+        synchronized int indexOf(String value) {
+            int index = indexForValue.putIfAbsent(value, indexForValue.size());
+            return index == ADDED ? indexForValue.size() - 1 : index;
+        }
+
+        /** @return the index of the value, or ADDED if it has not been added. */
+        synchronized int find(String value) {
+            return indexForValue.get(value);
+        }
+
+        synchronized int size() {
+            return indexForValue.size();
+        }
+
+        /** @return a copy of the values, in the order of their indexes. */
+        synchronized String[] values() {
+            String[] values = new String[indexForValue.size()];
+            indexForValue.forEachEntry((value, index) -> {
+                values[index] = value;
+                return true;
+            });
+            return values;
+        }
+    }
+
+    /**
+     * A set of (key value, order value) pairs, each stored as the two values' dictionary indexes
+     * packed into a single long.
+     */
+    private static class CompoundIdSet {
+        private final IdDictionary keyValues = new IdDictionary();
+        private final IdDictionary orderValues = new IdDictionary();
+        private final TLongSet pairs = new TLongHashSet();
+
+        synchronized boolean add(String keyValue, String orderValue) {
+            long pair = ((long) keyValues.indexOf(keyValue) << 32) | orderValues.indexOf(orderValue);
+            return pairs.add(pair);
+        }
+
+        synchronized boolean contains(String keyValue, String orderValue) {
+            int keyIndex = keyValues.find(keyValue);
+            int orderIndex = orderValues.find(orderValue);
+            if (keyIndex == IdDictionary.ADDED || orderIndex == IdDictionary.ADDED) return false;
+            return pairs.contains(((long) keyIndex << 32) | orderIndex);
+        }
+
+        synchronized int size() {
+            return pairs.size();
+        }
+
+        /** @return a copy of the pairs as "keyValue:orderValue" strings. */
+        synchronized List<String> values() {
+            String[] keys = keyValues.values();
+            String[] orders = orderValues.values();
+            List<String> values = new ArrayList<>(pairs.size());
+            for (TLongIterator iterator = pairs.iterator(); iterator.hasNext(); ) {
+                long pair = iterator.next();
+                values.add(String.join(":", keys[(int) (pair >>> 32)], orders[(int) pair]));
+            }
+            return values;
+        }
+    }
+
+    /**
+     * @return the field name of the dictionary whose "field:" prefix the string starts with, or null
+     * if there is none. Field names scoped by a proprietary table (e.g., "stop_attributes:stop_id")
+     * contain a colon themselves, so the longest matching field name is used.
+     */
+    private static String findFieldPrefix(Set<String> fields, String string) {
+        String longestField = null;
+        for (String field : fields) {
+            if (string.startsWith(field + ":") && (longestField == null || field.length() > longestField.length())) {
+                longestField = field;
+            }
+        }
+        return longestField;
+    }
+
+    /** The set of "field:value" strings backed by the dictionary of each field. */
+    private class TransitIdSet extends AbstractSet<String> {
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) return false;
+            String transitId = (String) o;
+            String field = findFieldPrefix(idsForField.keySet(), transitId);
+            return field != null && containsId(field, transitId.substring(field.length() + 1));
+        }
+
+        @Override
+        public boolean add(String transitId) {
+            String field = findFieldPrefix(idsForField.keySet(), transitId);
+            if (field == null) {
+                int separator = transitId.indexOf(':');
+                if (separator == -1) throw new IllegalArgumentException("Transit ID must be field:value.");
+                field = transitId.substring(0, separator);
+            }
+            return addId(field, transitId.substring(field.length() + 1));
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (IdDictionary ids : idsForField.values()) size += ids.size();
+            return size;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            List<String> transitIds = new ArrayList<>();
+            for (Map.Entry<String, IdDictionary> entry : idsForField.entrySet()) {
+                for (String value : entry.getValue().values()) transitIds.add(String.join(":", entry.getKey(), value));
+            }
+            return Collections.unmodifiableList(transitIds).iterator();
+        }
+    }
+
+    /**
+     * The set of "orderField:keyValue:orderValue" strings backed by the compound keys of each order
+     * field. Order values (i.e. sequences) are assumed not to contain a colon.
+     */
+    private class TransitIdWithSequenceSet extends AbstractSet<String> {
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) return false;
+            String transitId = (String) o;
+            String field = findFieldPrefix(idsWithSequenceForField.keySet(), transitId);
+            if (field == null) return false;
+            String pair = transitId.substring(field.length() + 1);
+            int separator = pair.lastIndexOf(':');
+            return separator != -1 &&
+                containsIdWithSequence(field, pair.substring(0, separator), pair.substring(separator + 1));
+        }
+
+        @Override
+        public boolean add(String transitId) {
+            String field = findFieldPrefix(idsWithSequenceForField.keySet(), transitId);
+            if (field == null) field = transitId.substring(0, Math.max(0, transitId.indexOf(':')));
+            String pair = transitId.substring(Math.min(transitId.length(), field.length() + 1));
+            int separator = pair.lastIndexOf(':');
+            if (field.isEmpty() || separator == -1) {
+                throw new IllegalArgumentException("Transit ID must be orderField:keyValue:orderValue.");
+            }
+            return addIdWithSequence(field, pair.substring(0, separator), pair.substring(separator + 1));
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (CompoundIdSet ids : idsWithSequenceForField.values()) size += ids.size();
+            return size;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            List<String> transitIds = new ArrayList<>();
+            for (Map.Entry<String, CompoundIdSet> entry : idsWithSequenceForField.entrySet()) {
+                for (String pair : entry.getValue().values()) transitIds.add(String.join(":", entry.getKey(), pair));
+            }
+            return Collections.unmodifiableList(transitIds).iterator();
+        }
+    }
 }
@@ -4,6 +4,8 @@ import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.storage.StorageException;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.SQLType;
@@ -51,6 +53,12 @@ public class ShortField extends Field {
         return result;
     }
 
+    @Override
+    public void writeBinaryCopyValue (DataOutputStream out, String clean) throws IOException {
+        out.writeInt(Short.BYTES);
+        out.writeShort(Short.parseShort(clean));
+    }
+
     @Override
     public SQLType getSqlType () {
         return JDBCType.SMALLINT;
@@ -0,0 +1,162 @@
+package com.conveyal.gtfs.loader;
+
+import com.conveyal.gtfs.model.Entity;
+import com.conveyal.gtfs.model.StopTime;
+import com.conveyal.gtfs.validator.NewTripTimesValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.conveyal.gtfs.loader.JdbcGtfsLoader.POSTGRES_NULL_TEXT;
+
+/**
+ * Hands the rows of stop_times.txt to a {@link NewTripTimesValidator} as they are loaded, grouped by trip, so that the
+ * trips do not need to be read back from the database to be validated (see
+ * {@link JdbcGtfsLoader#withTripValidationWhileLoading(boolean)}). This only works if the rows of each trip are
+ * together and in order of stop_sequence, as they are in most feeds. As soon as a row is found out of this order, the
+ * stream is given up and the trips are validated from the database as usual, which sorts them.
+ *
+ * The rows are converted from the Postgres text values that are being loaded, so the stop times are identical to those
+ * that would be read back from the database.
+ */
+class StopTimeStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StopTimeStream.class);
+
+    private final NewTripTimesValidator validator;
+    // The position in the row values of each stop time field, or -1 if the field is not in the file.
+    private final int tripIdIndex;
+    private final int stopIdIndex;
+    private final int stopSequenceIndex;
+    private final int arrivalTimeIndex;
+    private final int departureTimeIndex;
+    private final int stopHeadsignIndex;
+    private final int pickupTypeIndex;
+    private final int dropOffTypeIndex;
+    private final int continuousPickupIndex;
+    private final int continuousDropOffIndex;
+    private final int timepointIndex;
+    private final int shapeDistTraveledIndex;
+
+    private final Set<String> finishedTripIds = new HashSet<>();
+    private List<StopTime> stopTimesForTrip = new ArrayList<>();
+    private boolean inOrder = true;
+
+    /**
+     * @param fields the fields of the loaded table, in the order of the row values after the line number.
+     */
+    StopTimeStream (NewTripTimesValidator validator, Field[] fields) {
+        this.validator = validator;
+        tripIdIndex = valueIndex(fields, "trip_id");
+        stopIdIndex = valueIndex(fields, "stop_id");
+        stopSequenceIndex = valueIndex(fields, "stop_sequence");
+        arrivalTimeIndex = valueIndex(fields, "arrival_time");
+        departureTimeIndex = valueIndex(fields, "departure_time");
+        stopHeadsignIndex = valueIndex(fields, "stop_headsign");
+        pickupTypeIndex = valueIndex(fields, "pickup_type");
+        dropOffTypeIndex = valueIndex(fields, "drop_off_type");
+        continuousPickupIndex = valueIndex(fields, "continuous_pickup");
+        continuousDropOffIndex = valueIndex(fields, "continuous_drop_off");
+        timepointIndex = valueIndex(fields, "timepoint");
+        shapeDistTraveledIndex = valueIndex(fields, "shape_dist_traveled");
+    }
+
+    private static int valueIndex (Field[] fields, String name) {
+        int fieldIndex = Field.getFieldIndex(fields, name);
+        // The first value of each row is the line number.
+        return fieldIndex < 0 ? -1 : fieldIndex + 1;
+    }
+
+    /**
+     * Take the next row loaded, validating the previous trip if this row begins a new one.
+     * @param transformedStrings the line number followed by the Postgres text value of each field.
+     */
+    void accept (String[] transformedStrings) {
+        if (!inOrder) return;
+        StopTime stopTime = toStopTime(transformedStrings);
+        // Rows without a trip are skipped when validating trips from the database too.
+        if (stopTime.trip_id == null) return;
+        if (!stopTimesForTrip.isEmpty()) {
+            StopTime previous = stopTimesForTrip.get(stopTimesForTrip.size() - 1);
+            if (!stopTime.trip_id.equals(previous.trip_id)) {
+                finishTrip();
+            } else if (stopTime.stop_sequence < previous.stop_sequence) {
+                giveUp(stopTime);
+                return;
+            }
+        }
+        if (stopTime.stop_sequence == Entity.INT_MISSING || finishedTripIds.contains(stopTime.trip_id)) {
+            giveUp(stopTime);
+            return;
+        }
+        stopTimesForTrip.add(stopTime);
+    }
+
+    /**
+     * Validate the last trip once all rows have been loaded.
+     * @return the validator if every trip was validated, or null if the stream was given up.
+     */
+    NewTripTimesValidator finish () {
+        if (!inOrder) return null;
+        if (!stopTimesForTrip.isEmpty()) finishTrip();
+        LOG.info("Validated {} trips while loading stop times.", finishedTripIds.size());
+        return validator;
+    }
+
+    private void finishTrip () {
+        String tripId = stopTimesForTrip.get(0).trip_id;
+        validator.validateStreamedTrip(stopTimesForTrip);
+        finishedTripIds.add(tripId);
+        stopTimesForTrip = new ArrayList<>();
+    }
+
+    private void giveUp (StopTime stopTime) {
+        LOG.info(
+            "Stop times are not grouped by trip in order of stop_sequence (line {}), trips will be validated after loading.",
+            stopTime.id
+        );
+        inOrder = false;
+        stopTimesForTrip = null;
+        finishedTripIds.clear();
+    }
+
+    private StopTime toStopTime (String[] transformedStrings) {
+        StopTime stopTime = new StopTime();
+        stopTime.id = Integer.parseInt(transformedStrings[0]);
+        stopTime.trip_id = getString(transformedStrings, tripIdIndex);
+        stopTime.arrival_time = getInt(transformedStrings, arrivalTimeIndex);
+        stopTime.departure_time = getInt(transformedStrings, departureTimeIndex);
+        stopTime.stop_id = getString(transformedStrings, stopIdIndex);
+        stopTime.stop_sequence = getInt(transformedStrings, stopSequenceIndex);
+        stopTime.stop_headsign = getString(transformedStrings, stopHeadsignIndex);
+        stopTime.pickup_type = getInt(transformedStrings, pickupTypeIndex);
+        stopTime.drop_off_type = getInt(transformedStrings, dropOffTypeIndex);
+        stopTime.continuous_pickup = getInt(transformedStrings, continuousPickupIndex);
+        stopTime.continuous_drop_off = getInt(transformedStrings, continuousDropOffIndex);
+        stopTime.timepoint = getInt(transformedStrings, timepointIndex);
+        String shapeDistTraveled = getString(transformedStrings, shapeDistTraveledIndex);
+        stopTime.shape_dist_traveled = shapeDistTraveled == null
+            ? Entity.DOUBLE_MISSING
+            : Double.parseDouble(shapeDistTraveled);
+        return stopTime;
+    }
+
+    /**
+     * @return the value that the database will hold for the Postgres text value, which has its backslashes escaped.
+     */
+    private static String getString (String[] transformedStrings, int index) {
+        if (index < 0) return null;
+        String value = transformedStrings[index];
+        if (value == null || POSTGRES_NULL_TEXT.equals(value)) return null;
+        return value.replace("\\\\", "\\");
+    }
+
+    private static int getInt (String[] transformedStrings, int index) {
+        String value = getString(transformedStrings, index);
+        return value == null ? Entity.INT_MISSING : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,167 @@
+package com.conveyal.gtfs.loader;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies rows into a Postgres table while they are still being produced, without an intermediate file. Rows written to
+ * the output stream (in the Postgres text or binary copy format) are gathered into chunks and handed through a bounded
+ * queue to a copy command running on its own thread and connection. The producer blocks when the queue is full, so it
+ * can never get more than a few megabytes ahead of the database.
+ *
+ * The copy is committed on its own connection, so the target table must already be committed and visible to other
+ * connections before the copy begins.
+ */
+public class StreamingCopy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingCopy.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_QUEUED_CHUNKS = 64;
+    // An empty chunk signals the end of the rows.
+    private static final byte[] END_OF_ROWS = new byte[0];
+
+    private final String targetTableName;
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Future<Long> copyResult;
+    private final OutputStream outputStream = new ChunkOutputStream();
+
+    /**
+     * Start copying into the target table (in namespace.table notation) on a new connection from the data source,
+     * expecting rows in the Postgres text format or (if binary is true) the binary format.
+     */
+    public StreamingCopy (DataSource dataSource, String targetTableName, boolean binary) {
+        this.targetTableName = targetTableName;
+        copyResult = executor.submit(() -> {
+            try (Connection connection = dataSource.getConnection()) {
+                // Our connection pool wraps the Connection objects, so we need to unwrap the Postgres connection interface.
+                CopyManager copyManager = new CopyManager(connection.unwrap(BaseConnection.class));
+                CopyIn copyIn = copyManager.copyIn(JdbcGtfsLoader.copySql(targetTableName, binary));
+                try {
+                    byte[] chunk;
+                    while ((chunk = chunks.take()) != END_OF_ROWS) copyIn.writeToCopy(chunk, 0, chunk.length);
+                    long rowCount = copyIn.endCopy();
+                    connection.commit();
+                    return rowCount;
+                } finally {
+                    if (copyIn.isActive()) copyIn.cancelCopy();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the stream to write rows to. Closing it signals that all rows have been written.
+     */
+    public OutputStream getOutputStream () {
+        return outputStream;
+    }
+
+    /**
+     * Wait for the copy command to consume all rows written to the (closed) output stream and commit them, rethrowing
+     * any exception encountered by the copy command.
+     * @return the number of rows copied into the table.
+     */
+    public long finish () throws Exception {
+        try {
+            long rowCount = copyResult.get();
+            LOG.info("Streamed {} rows into database table {}", rowCount, targetTableName);
+            return rowCount;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Abandon the copy (e.g., because producing the rows failed part way through). Nothing is committed to the table.
+     */
+    public void cancel () {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gathers written bytes into fixed size chunks and queues each chunk for the copy command as it fills up.
+     */
+    private class ChunkOutputStream extends OutputStream {
+
+        private byte[] chunk = new byte[CHUNK_SIZE];
+        private int count = 0;
+        private boolean closed = false;
+
+        @Override
+        public void write (int b) throws IOException {
+            if (count == chunk.length) queueChunk();
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write (byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == chunk.length) queueChunk();
+                int n = Math.min(length, chunk.length - count);
+                System.arraycopy(bytes, offset, chunk, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void close () throws IOException {
+            if (closed) return;
+            closed = true;
+            if (count > 0) queueChunk();
+            enqueue(END_OF_ROWS);
+        }
+
+        private void queueChunk () throws IOException {
+            byte[] full = count == chunk.length ? chunk : Arrays.copyOf(chunk, count);
+            enqueue(full);
+            chunk = new byte[CHUNK_SIZE];
+            count = 0;
+        }
+
+        /**
+         * Wait for space in the queue, giving up if the copy command has stopped consuming chunks.
+         */
+        private void enqueue (byte[] bytes) throws IOException {
+            try {
+                while (!chunks.offer(bytes, 1, TimeUnit.SECONDS)) {
+                    if (copyResult.isDone()) {
+                        // Report the reason the copy command stopped (if any) to the producer of the rows.
+                        Throwable cause = null;
+                        try {
+                            copyResult.get();
+                        } catch (ExecutionException e) {
+                            cause = e.getCause();
+                        }
+                        throw new IOException("Copy into " + targetTableName + " has stopped.", cause);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+}
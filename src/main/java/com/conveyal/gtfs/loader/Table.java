@@ -46,14 +46,12 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.DUPLICATE_HEADER;
@@ -587,23 +585,31 @@ public class Table {
      * It then creates a CSV reader for that table if it's found.
      */
     public CsvReader getCsvReader(ZipFile zipFile, SQLErrorStorage sqlErrorStorage) {
+        return getCsvReader(new ZipFileGtfsSource(zipFile), sqlErrorStorage);
+    }
+
+    /**
+     * Find the entry name of this table's file in a GTFS feed (see {@link GtfsSource#findEntry(String)}).
+     * @return the entry name, or null if the table is not in the feed.
+     */
+    public String getEntryName(GtfsSource source) throws IOException {
+        return source.findEntry(this.name + ".txt");
+    }
+
+    /**
+     * Create a CSV reader for this table's file in a GTFS feed, which may be in a subdirectory (in which case an error
+     * is recorded, as long as errorStorage is not null).
+     * @return the CSV reader, or null if the table is not in the feed or cannot be read.
+     */
+    public CsvReader getCsvReader(GtfsSource source, SQLErrorStorage sqlErrorStorage) {
         final String tableFileName = this.name + ".txt";
-        ZipEntry entry = zipFile.getEntry(tableFileName);
-        if (entry == null) {
-            // Table was not found, check if it is in a subdirectory.
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry e = entries.nextElement();
-                if (e.getName().endsWith(tableFileName)) {
-                    entry = e;
-                    if (sqlErrorStorage != null) sqlErrorStorage.storeError(NewGTFSError.forTable(this, TABLE_IN_SUBDIRECTORY));
-                    break;
-                }
-            }
-        }
-        if (entry == null) return null;
         try {
-            InputStream zipInputStream = zipFile.getInputStream(entry);
+            String entryName = getEntryName(source);
+            if (entryName == null) return null;
+            if (!entryName.equals(tableFileName) && sqlErrorStorage != null) {
+                sqlErrorStorage.storeError(NewGTFSError.forTable(this, TABLE_IN_SUBDIRECTORY));
+            }
+            InputStream zipInputStream = source.getInputStream(entryName);
             // Skip any byte order mark that may be present. Files must be UTF-8,
             // but the GTFS spec says that "files that include the UTF byte order mark are acceptable".
             InputStream bomInputStream = new BOMInputStream(zipInputStream);
@@ -877,12 +883,24 @@ public class Table {
      * FIXME: add foreign reference indexes?
      */
     public void createIndexes(Connection connection, String namespace) throws SQLException {
+        for (String indexSql : getCreateIndexSql(namespace)) {
+            LOG.info(indexSql);
+            connection.createStatement().execute(indexSql);
+        }
+    }
+
+    /**
+     * Get the SQL statements that create this table's indexes (see {@link #createIndexes}), so that they can be run
+     * later or on other connections. The same WARNING applies: this MUST be called on a spec table.
+     */
+    public List<String> getCreateIndexSql(String namespace) {
+        List<String> indexStatements = new ArrayList<>();
         if ("agency".equals(name) || "feed_info".equals(name)) {
             // Skip indexing for the small tables that have so few records that indexes are unlikely to
             // improve query performance or that are unlikely to be joined to other tables. NOTE: other tables could be
             // added here in the future as needed.
             LOG.info("Skipping indexes for {} table", name);
-            return;
+            return indexStatements;
         }
         LOG.info("Indexing {}...", name);
         String tableName;
@@ -894,29 +912,26 @@ public class Table {
         }
         // We determine which columns should be indexed based on field order in the GTFS spec model table.
         // Not sure that's a good idea, this could use some abstraction. TODO getIndexColumns() on each table.
-        String indexColumns = getIndexFields();
+        // The id comes last to break ties between duplicate keys, so that the rows are held in the index in the order
+        // they are paged through with a cursor (see JDBCFetcher#getCursorFields) and each page is read without sorting.
+        String indexColumns = String.join(",", getIndexFields(), "id");
         // TODO verify referential integrity and uniqueness of keys
         // TODO create primary key and fall back on plain index (consider not null & unique constraints)
         // TODO use line number as primary key
         // Note: SQLITE requires specifying a name for indexes.
         String indexName = String.join("_", tableName.replace(".", "_"), "idx");
-        String indexSql = String.format("create index %s on %s (%s)", indexName, tableName, indexColumns);
+        indexStatements.add(String.format("create index %s on %s (%s)", indexName, tableName, indexColumns));
         //String indexSql = String.format("alter table %s add primary key (%s)", tableName, indexColumns);
-        LOG.info(indexSql);
-        connection.createStatement().execute(indexSql);
         // TODO add foreign key constraints, and recover recording errors as needed.
 
         // More indexing
-        // TODO integrate with the above indexing code, iterating over a List<String> of index column expressions
         for (Field field : fields) {
             if (field.shouldBeIndexed()) {
-                Statement statement = connection.createStatement();
                 String fieldIndex = String.join("_", tableName.replace(".", "_"), field.name, "idx");
-                String sql = String.format("create index %s on %s (%s)", fieldIndex, tableName, field.name);
-                LOG.info(sql);
-                statement.execute(sql);
+                indexStatements.add(String.format("create index %s on %s (%s)", fieldIndex, tableName, field.name));
             }
         }
+        return indexStatements;
     }
 
     /**
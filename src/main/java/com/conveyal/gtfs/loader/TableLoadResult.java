@@ -13,6 +13,8 @@ public class TableLoadResult implements Serializable {
     public int errorCount;
     public String fatalException = null;
     public int fileSize;
+    /** Whether the table was copied from the previous namespace of an incremental load, as its file was unchanged. */
+    public boolean copiedFromPreviousNamespace;
 
     /** No-arg constructor for Mongo */
     public TableLoadResult () { }
@@ -2,6 +2,9 @@ package com.conveyal.gtfs.loader;
 
 import com.conveyal.gtfs.model.Entity;
 
+import java.util.Map;
+import java.util.stream.Stream;
+
 /**
  * This is an interface for classes that can iterate over all entities in a single GTFS table, or fetch single entities
  * by ID, or fetch ordered groups of entities with the same ID (e.g. all stop times with the same trip_id).
@@ -17,4 +20,31 @@ public interface TableReader <T extends Entity> extends Iterable<T> {
 
     Iterable<T> getAllOrdered ();
 
+    /**
+     * @return a read-only map from ID to entity for the whole table, which is built the first time it is requested and
+     * then shared by every caller.
+     */
+    Map<String, T> getIndex ();
+
+    /**
+     * Release the index built by {@link #getIndex()}, if any.
+     * @return the number of entities that were held in the index.
+     */
+    int clearIndex ();
+
+    /**
+     * @return a stream of all the entities in this table in an unspecified order, read through a database cursor that
+     * fetches the given number of rows at a time. The stream holds a database connection until it reaches the end of
+     * the table or is closed, so it should be closed (e.g., in a try-with-resources block) when it may not be read to
+     * the end.
+     */
+    Stream<T> stream (int fetchSize);
+
+    /**
+     * @return a parallel stream of all the entities in this table in an unspecified order. The table is split into
+     * about the given number of ranges of its key field, each of which is read over its own database connection. Like
+     * {@link #stream(int)}, the stream must be closed if it may not be read to the end.
+     */
+    Stream<T> parallelStream (int partitionCount, int fetchSize);
+
 }
@@ -0,0 +1,122 @@
+package com.conveyal.gtfs.loader;
+
+import org.postgresql.copy.PGCopyOutputStream;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Writes rows into a table on the given connection, streaming them through a copy command when connected to Postgres
+ * or falling back to batched inserts (see {@link BatchTracker}) for other databases. This is for the tables derived
+ * during validation that can have millions of rows, such as service_dates. Like the copy and insert statements it
+ * wraps, it does not commit the transaction or close the connection.
+ */
+public class TableRowWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TableRowWriter.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final String tableName;
+    private final int columnCount;
+    // Only one of these is set, depending on whether the rows are copied or inserted.
+    private final Writer copyWriter;
+    private final PreparedStatement insertStatement;
+    private final BatchTracker batchTracker;
+    private int rowCount = 0;
+
+    /**
+     * @param tableName the table (in namespace.table notation), which must already exist.
+     */
+    public TableRowWriter (Connection connection, String tableName, int columnCount) throws SQLException {
+        this.tableName = tableName;
+        this.columnCount = columnCount;
+        if (connection.getMetaData().getDatabaseProductName().equals("PostgreSQL")) {
+            // Our connection pool wraps the Connection objects, so we need to unwrap the Postgres connection interface.
+            PGCopyOutputStream copyStream = new PGCopyOutputStream(
+                connection.unwrap(BaseConnection.class), JdbcGtfsLoader.copySql(tableName, false), COPY_BUFFER_SIZE
+            );
+            copyWriter = new BufferedWriter(new OutputStreamWriter(copyStream, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+            insertStatement = null;
+            batchTracker = null;
+        } else {
+            String[] parameters = new String[columnCount];
+            Arrays.fill(parameters, "?");
+            String sql = String.format("insert into %s values (%s)", tableName, String.join(", ", parameters));
+            copyWriter = null;
+            insertStatement = connection.prepareStatement(sql);
+            batchTracker = new BatchTracker(tableName, insertStatement);
+        }
+    }
+
+    /**
+     * Write a row with one value for each column, in column order. Null values are written as SQL nulls.
+     */
+    public void writeRow (Object... values) throws SQLException {
+        if (values.length != columnCount) {
+            throw new IllegalArgumentException(String.format("Expected %d values for %s.", columnCount, tableName));
+        }
+        try {
+            if (copyWriter != null) {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) copyWriter.write('\t');
+                    writeCopyValue(values[i]);
+                }
+                copyWriter.write('\n');
+            } else {
+                for (int i = 0; i < values.length; i++) insertStatement.setObject(i + 1, values[i]);
+                batchTracker.addBatch();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not copy rows into " + tableName, e);
+        }
+        rowCount++;
+    }
+
+    /**
+     * Write any rows still buffered and end the copy command.
+     * @return the number of rows written.
+     */
+    public int finish () throws SQLException {
+        try {
+            if (copyWriter != null) copyWriter.close();
+            else batchTracker.executeRemaining();
+        } catch (IOException e) {
+            throw new SQLException("Could not copy rows into " + tableName, e);
+        }
+        LOG.info("Wrote {} rows into {}", rowCount, tableName);
+        return rowCount;
+    }
+
+    /**
+     * Write a value in the Postgres text copy format, escaping the characters that have a special meaning.
+     * https://www.postgresql.org/docs/9.1/static/sql-copy.html#AEN64380
+     */
+    private void writeCopyValue (Object value) throws IOException {
+        if (value == null) {
+            copyWriter.write("\\N");
+            return;
+        }
+        String string = value.toString();
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\': copyWriter.write("\\\\"); break;
+                case '\t': copyWriter.write("\\t"); break;
+                case '\n': copyWriter.write("\\n"); break;
+                case '\r': copyWriter.write("\\r"); break;
+                default: copyWriter.write(c);
+            }
+        }
+    }
+}
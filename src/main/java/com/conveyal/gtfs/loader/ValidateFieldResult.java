@@ -2,6 +2,7 @@ package com.conveyal.gtfs.loader;
 
 import com.conveyal.gtfs.error.NewGTFSError;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -15,15 +16,32 @@ import java.util.Set;
  */
 public class ValidateFieldResult<T> {
     public T clean;
-    public Set<NewGTFSError> errors = new HashSet<>();
+    public Set<NewGTFSError> errors;
 
-    public ValidateFieldResult() {}
+    public ValidateFieldResult() {
+        this.errors = new HashSet<>();
+    }
 
     /** Constructor used to set a default value (which may then be updated with the clean value). */
     public ValidateFieldResult(T defaultValue) {
+        this();
         this.clean = defaultValue;
     }
 
+    private ValidateFieldResult(T clean, Set<NewGTFSError> errors) {
+        this.clean = clean;
+        this.errors = errors;
+    }
+
+    /**
+     * Builder method for the result of a value that passed validation. Rather than a new set of errors, this shares a
+     * single immutable empty set, so no errors can be added to the result. This is meant for the fast paths of Fields
+     * that are called on every row of large tables.
+     */
+    public static <T> ValidateFieldResult<T> valid(T clean) {
+        return new ValidateFieldResult<>(clean, Collections.emptySet());
+    }
+
     /** Builder method that constructs a ValidateFieldResult with type String from the input result. */
     public static ValidateFieldResult<String> from(ValidateFieldResult result) {
         ValidateFieldResult<String> stringResult = new ValidateFieldResult<>();
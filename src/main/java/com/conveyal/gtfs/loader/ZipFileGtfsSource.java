@@ -0,0 +1,62 @@
+package com.conveyal.gtfs.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A GTFS feed in a zip file on local disk. The zip file's central directory gives the name, size and CRC of every
+ * entry up front, and entries can be read in any order.
+ */
+public class ZipFileGtfsSource implements GtfsSource {
+
+    private final ZipFile zipFile;
+
+    public ZipFileGtfsSource (String zipFilePath) throws IOException {
+        this(new ZipFile(zipFilePath));
+    }
+
+    public ZipFileGtfsSource (ZipFile zipFile) {
+        this.zipFile = zipFile;
+    }
+
+    @Override
+    public String getName () {
+        return zipFile.getName();
+    }
+
+    @Override
+    public String findEntry (String fileName) {
+        ZipEntry entry = zipFile.getEntry(fileName);
+        if (entry != null) return entry.getName();
+        // File was not found, check if it is in a subdirectory.
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry e = entries.nextElement();
+            if (e.getName().endsWith(fileName)) return e.getName();
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream getInputStream (String entryName) throws IOException {
+        return zipFile.getInputStream(zipFile.getEntry(entryName));
+    }
+
+    @Override
+    public long getSize (String entryName) {
+        return zipFile.getEntry(entryName).getSize();
+    }
+
+    @Override
+    public long getCrc (String entryName) {
+        return zipFile.getEntry(entryName).getCrc();
+    }
+
+    @Override
+    public void close () throws IOException {
+        zipFile.close();
+    }
+}
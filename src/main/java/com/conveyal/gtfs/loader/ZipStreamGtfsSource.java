@@ -0,0 +1,245 @@
+package com.conveyal.gtfs.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A GTFS feed in a zip file that is read from a stream (e.g., while it is being downloaded), so that it does not need
+ * to be saved to disk before loading. The entries of the zip file can only be read in the order they appear in the
+ * stream. An entry that is requested when it is next in the stream is read straight from the stream. Any entries that
+ * must be passed over to reach a requested entry are spooled to temporary files, which are deleted when the source is
+ * closed. So the disk space used depends on the order of the entries: none if they are in the order the tables are
+ * loaded, or up to the size of the largest tables if (as is usual) they are in alphabetical order.
+ *
+ * Sizes and CRCs of entries are only known once they have been read (the stream may not include them before the entry
+ * data), and an entry found in a subdirectory is used even if the same file appears later in the root of the feed.
+ */
+public class ZipStreamGtfsSource implements GtfsSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZipStreamGtfsSource.class);
+
+    // While an entry is read from the stream, up to this many bytes are kept in memory so that the entry can still be
+    // spooled (and read again) if it is this small or the reader stops part way through (e.g., after the first line
+    // of feed_info.txt).
+    private static final int MAX_BUFFERED_PREFIX = 1024 * 1024;
+
+    private final String name;
+    private final ZipInputStream zipInputStream;
+
+    // The following fields are guarded by this source's monitor.
+    // The names of all entries reached in the stream so far, in stream order.
+    private final List<String> entryNames = new ArrayList<>();
+    // The entries that were spooled to temporary files, which can be read any number of times.
+    private final Map<String, SpooledEntry> spooledEntries = new HashMap<>();
+    // The size and CRC of large entries that were read straight from the stream, which cannot be read again.
+    private final Map<String, ZipEntry> streamedEntries = new HashMap<>();
+    // The entry that the stream is positioned at, if it has not been spooled or read yet.
+    private ZipEntry currentEntry;
+    // Whether the current entry is being read straight from the stream, in which case the stream must not be moved on.
+    private boolean readingCurrentEntry = false;
+    private boolean endOfStream = false;
+
+    /**
+     * @param name a name for the feed (e.g., the URL it is downloaded from), recorded in the feed registry.
+     */
+    public ZipStreamGtfsSource (String name, InputStream inputStream) {
+        this.name = name;
+        this.zipInputStream = new ZipInputStream(inputStream);
+    }
+
+    @Override
+    public String getName () {
+        return name;
+    }
+
+    @Override
+    public synchronized String findEntry (String fileName) throws IOException {
+        while (true) {
+            if (entryNames.contains(fileName)) return fileName;
+            // Use the first entry found in a subdirectory, rather than reading the rest of the stream to check that
+            // there is no entry in the root.
+            for (String entryName : entryNames) {
+                if (entryName.endsWith(fileName)) return entryName;
+            }
+            if (endOfStream) return null;
+            advance();
+        }
+    }
+
+    @Override
+    public synchronized InputStream getInputStream (String entryName) throws IOException {
+        while (true) {
+            SpooledEntry spooledEntry = spooledEntries.get(entryName);
+            if (spooledEntry != null) return new FileInputStream(spooledEntry.file);
+            if (readingCurrentEntry) {
+                // Wait for the entry being read to be finished with before moving the stream on.
+                waitForCurrentEntry();
+            } else if (currentEntry != null && currentEntry.getName().equals(entryName)) {
+                readingCurrentEntry = true;
+                return new EntryInputStream();
+            } else if (entryNames.contains(entryName)) {
+                throw new IOException("Zip entry " + entryName + " has already been read from the stream.");
+            } else if (endOfStream) {
+                throw new FileNotFoundException("Zip entry " + entryName + " was not found in the stream.");
+            } else {
+                advance();
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getSize (String entryName) {
+        ZipEntry entry = getEntry(entryName);
+        return entry == null ? -1 : entry.getSize();
+    }
+
+    @Override
+    public synchronized long getCrc (String entryName) {
+        ZipEntry entry = getEntry(entryName);
+        return entry == null ? -1 : entry.getCrc();
+    }
+
+    private ZipEntry getEntry (String entryName) {
+        if (spooledEntries.containsKey(entryName)) return spooledEntries.get(entryName).entry;
+        if (streamedEntries.containsKey(entryName)) return streamedEntries.get(entryName);
+        if (currentEntry != null && currentEntry.getName().equals(entryName)) return currentEntry;
+        return null;
+    }
+
+    /**
+     * Move the stream on to the next file entry, spooling the current entry if it has not been read.
+     */
+    private void advance () throws IOException {
+        while (readingCurrentEntry) waitForCurrentEntry();
+        if (currentEntry != null) spool(currentEntry, new byte[0]);
+        ZipEntry entry;
+        do {
+            entry = zipInputStream.getNextEntry();
+        } while (entry != null && entry.isDirectory());
+        if (entry == null) {
+            endOfStream = true;
+        } else {
+            currentEntry = entry;
+            entryNames.add(entry.getName());
+        }
+    }
+
+    /**
+     * Write the already read prefix and the rest of the current entry to a temporary file.
+     */
+    private void spool (ZipEntry entry, byte[] prefix) throws IOException {
+        File file = File.createTempFile("gtfs-entry-", ".txt");
+        file.deleteOnExit();
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            outputStream.write(prefix);
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = zipInputStream.read(buffer)) != -1) outputStream.write(buffer, 0, n);
+        }
+        LOG.info("Spooled zip entry {} ({} bytes) to {}", entry.getName(), file.length(), file);
+        spooledEntries.put(entry.getName(), new SpooledEntry(entry, file));
+        currentEntry = null;
+    }
+
+    private void waitForCurrentEntry () throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Delete any temporary files and close the stream.
+     */
+    @Override
+    public synchronized void close () throws IOException {
+        for (SpooledEntry spooledEntry : spooledEntries.values()) spooledEntry.file.delete();
+        spooledEntries.clear();
+        zipInputStream.close();
+    }
+
+    private static class SpooledEntry {
+        final ZipEntry entry;
+        final File file;
+
+        SpooledEntry (ZipEntry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Reads the current entry straight from the zip stream, without closing the zip stream when it is closed. If the
+     * entry is small or is closed before it has been read to the end, it is spooled so it can be read again.
+     */
+    private class EntryInputStream extends InputStream {
+
+        private ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        private boolean endOfEntry = false;
+        private boolean closed = false;
+
+        @Override
+        public int read () throws IOException {
+            int b = zipInputStream.read();
+            if (b == -1) endOfEntry = true;
+            else if (prefix != null) prefix.write(b);
+            checkPrefixSize();
+            return b;
+        }
+
+        @Override
+        public int read (byte[] bytes, int offset, int length) throws IOException {
+            int n = zipInputStream.read(bytes, offset, length);
+            if (n == -1) endOfEntry = true;
+            else if (prefix != null) prefix.write(bytes, offset, n);
+            checkPrefixSize();
+            return n;
+        }
+
+        private void checkPrefixSize () {
+            if (prefix != null && prefix.size() > MAX_BUFFERED_PREFIX) prefix = null;
+        }
+
+        @Override
+        public void close () throws IOException {
+            synchronized (ZipStreamGtfsSource.this) {
+                if (closed) return;
+                closed = true;
+                try {
+                    if (prefix != null) {
+                        // Keep small entries (or the rest of an entry that was not read to the end) for reading again.
+                        spool(currentEntry, prefix.toByteArray());
+                    } else if (endOfEntry) {
+                        // The size and CRC have been filled in from the stream.
+                        streamedEntries.put(currentEntry.getName(), currentEntry);
+                        currentEntry = null;
+                    } else {
+                        LOG.warn("Zip entry {} was not read to the end and cannot be read again.", currentEntry.getName());
+                        currentEntry = null;
+                    }
+                } finally {
+                    readingCurrentEntry = false;
+                    ZipStreamGtfsSource.this.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,10 @@ public abstract class ConditionalRequirement {
      */
     protected String dependentFieldName;
 
+    public String getDependentFieldName() {
+        return dependentFieldName;
+    }
+
     /**
      * All sub classes must implement this method and provide related conditional checks.
      */
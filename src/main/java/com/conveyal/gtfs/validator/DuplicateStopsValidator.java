@@ -3,8 +3,10 @@ package com.conveyal.gtfs.validator;
 import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.Stop;
 import com.conveyal.gtfs.util.Util;
+import com.google.common.collect.ImmutableSet;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.index.strtree.STRtree;
@@ -29,6 +31,11 @@ public class DuplicateStopsValidator extends FeedValidator {
         super(feed, errorStorage);
     }
 
+    @Override
+    public Set<Table> getTablesRead () {
+        return ImmutableSet.of(Table.STOPS);
+    }
+
     @Override
     public void validate () {
         // Project all stop coordinates and put them in a spatial index
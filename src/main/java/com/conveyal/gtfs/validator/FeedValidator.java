@@ -2,6 +2,10 @@ package com.conveyal.gtfs.validator;
 
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
+
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * A subtype of validator that can validate the entire feed at once.
@@ -15,4 +19,36 @@ public abstract class FeedValidator extends Validator {
     /** The main extension point. Each subsclass must define this method. */
     public abstract void validate ();
 
+    /**
+     * @return the tables read by {@link #validate()}, or null if they are not known, in which case the validator is
+     * never run at the same time as another validator. Validators that only read tables can be run at the same time
+     * (see {@link Feed#withValidatorThreads(int)}). The tables used by {@link #complete} do not need to be included,
+     * because validators are always completed one at a time.
+     */
+    public Set<Table> getTablesRead () {
+        return null;
+    }
+
+    /**
+     * @return the tables created, altered or modified by {@link #validate()}.
+     */
+    public Set<Table> getTablesWritten () {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return whether this validator may validate the feed at the same time as the other validator, i.e. both declare
+     * the tables they read and neither writes a table that the other reads or writes.
+     */
+    public boolean canRunAlongside (FeedValidator other) {
+        Set<Table> tablesRead = getTablesRead();
+        Set<Table> otherTablesRead = other.getTablesRead();
+        if (tablesRead == null || otherTablesRead == null) return false;
+        Set<Table> tablesWritten = getTablesWritten();
+        Set<Table> otherTablesWritten = other.getTablesWritten();
+        return Collections.disjoint(tablesWritten, otherTablesRead)
+            && Collections.disjoint(tablesWritten, otherTablesWritten)
+            && Collections.disjoint(otherTablesWritten, tablesRead);
+    }
+
 }
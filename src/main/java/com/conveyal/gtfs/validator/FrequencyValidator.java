@@ -3,6 +3,7 @@ package com.conveyal.gtfs.validator;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.Frequency;
 import com.conveyal.gtfs.model.Route;
 import com.conveyal.gtfs.model.Stop;
@@ -10,11 +11,13 @@ import com.conveyal.gtfs.model.StopTime;
 import com.conveyal.gtfs.model.Trip;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public class FrequencyValidator extends FeedValidator {
 
@@ -29,6 +32,11 @@ public class FrequencyValidator extends FeedValidator {
 
     private ListMultimap<String, Frequency> frequenciesById = ArrayListMultimap.create();
 
+    @Override
+    public Set<Table> getTablesRead() {
+        return ImmutableSet.of(Table.FREQUENCIES);
+    }
+
     @Override
     public void validate() {
         // First, collect all frequencies for each trip ID.
@@ -2,9 +2,12 @@ package com.conveyal.gtfs.validator;
 
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.*;
+import com.google.common.collect.ImmutableSet;
 
 import java.net.URL;
+import java.util.Set;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.FIELD_VALUE_TOO_LONG;
 
@@ -23,6 +26,11 @@ public class MTCValidator extends FeedValidator {
         super(feed, errorStorage);
     }
 
+    @Override
+    public Set<Table> getTablesRead() {
+        return ImmutableSet.of(Table.AGENCY, Table.STOPS, Table.TRIPS);
+    }
+
     @Override
     public void validate() {
         for (Agency agency : feed.agencies) {
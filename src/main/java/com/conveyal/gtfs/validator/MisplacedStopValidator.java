@@ -2,11 +2,15 @@ package com.conveyal.gtfs.validator;
 
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.Stop;
 import com.conveyal.gtfs.storage.BooleanAsciiGrid;
+import com.google.common.collect.ImmutableSet;
 import org.locationtech.jts.geom.Envelope;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
+import java.util.Set;
+
 import static com.conveyal.gtfs.error.NewGTFSErrorType.STOP_GEOGRAPHIC_OUTLIER;
 import static com.conveyal.gtfs.error.NewGTFSErrorType.STOP_LOW_POPULATION_DENSITY;
 import static com.conveyal.gtfs.util.Util.getCoordString;
@@ -27,6 +31,11 @@ public class MisplacedStopValidator extends FeedValidator {
         this.validationResult = validationResult;
     }
 
+    @Override
+    public Set<Table> getTablesRead() {
+        return ImmutableSet.of(Table.STOPS);
+    }
+
     @Override
     public void validate() {
         // Look for outliers
@@ -2,12 +2,14 @@ package com.conveyal.gtfs.validator;
 
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.Route;
 import com.conveyal.gtfs.model.Stop;
 import com.conveyal.gtfs.model.Trip;
+import com.google.common.collect.ImmutableSet;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.*;
 
@@ -17,6 +19,11 @@ public class NamesValidator extends FeedValidator {
         super(feed, errorStorage);
     }
 
+    @Override
+    public Set<Table> getTablesRead() {
+        return ImmutableSet.of(Table.ROUTES, Table.STOPS, Table.TRIPS);
+    }
+
     @Override
     public void validate() {
         // Check routes
@@ -59,11 +66,8 @@ public class NamesValidator extends FeedValidator {
                 registerError(stop, STOP_DESCRIPTION_SAME_AS_NAME, desc);
             }
         }
-        // Place routes into a map for quick access while validating trip names.
-        Map<String, Route> routesForId = new HashMap<>();
-        for (Route route : feed.routes) {
-            routesForId.put(route.route_id, route);
-        }
+        // Use the shared index of routes for quick access while validating trip names.
+        Map<String, Route> routesForId = feed.routeById();
         // Check trip names (headsigns and TODO short names)
         for (Trip trip : feed.trips) {
             String headsign = normalize(trip.trip_headsign);
@@ -1,20 +1,31 @@
 package com.conveyal.gtfs.validator;
 
+import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.Entity;
 import com.conveyal.gtfs.model.Route;
 import com.conveyal.gtfs.model.Stop;
 import com.conveyal.gtfs.model.StopTime;
 import com.conveyal.gtfs.model.Trip;
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.CONDITIONALLY_REQUIRED;
 import static com.conveyal.gtfs.error.NewGTFSErrorType.MISSING_ARRIVAL_OR_DEPARTURE;
@@ -34,37 +45,138 @@ public class NewTripTimesValidator extends FeedValidator {
 
     int tripCount = 0;
 
-    // Caching stops and trips gives a massive speed improvement by avoiding database calls.
-    // TODO build this same kind of caching into the table reader class.
+    // Caching stops and trips gives a massive speed improvement by avoiding database calls. These are the indexes
+    // shared by all validators of the feed, set when validation starts.
 //    ListMultimap<String, ShapePoint> shapeById = MultimapBuilder.treeKeys().arrayListValues().build();
-    Map<String, Stop> stopById = new HashMap<>();
-    Map<String, Trip> tripById = new HashMap<>();
-    Map<String, Route> routeById = new HashMap<>();
+    Map<String, Stop> stopById;
+    Map<String, Trip> tripById;
+    Map<String, Route> routeById;
 
     // As an optimization, these validators are fed the stoptimes for each trip to avoid repeated iteration and grouping.
     private final TripValidator[] tripValidators;
+    private final SpeedTripValidator speedTripValidator;
+    private final ReferencesTripValidator referencesTripValidator;
+    private final ServiceValidator serviceValidator;
+    private final PatternFinderValidator patternFinderValidator;
+
+    // The number of threads checking trips, or one to check every trip on the thread reading the stop times.
+    private final int threads;
+
+    // The number of trips handed to a worker thread at a time.
+    int tripBatchSize = 1_000;
+
+    // Whether the trips were checked from stop times handed over while the feed was loaded (see
+    // validateStreamedTrip), in which case they are not read back from the database.
+    private boolean tripsStreamed = false;
+
+    // The resources used by each trip validator, in the same order as the trip validators, or null if the trip
+    // validators are not being profiled.
+    private ValidatorProfile[] tripValidatorProfiles;
+    private final ValidatorProfile.Meter meter = new ValidatorProfile.Meter();
 
     public NewTripTimesValidator(Feed feed, SQLErrorStorage errorStorage) {
+        this(feed, errorStorage, 1);
+    }
+
+    /**
+     * @param threads the number of threads checking trips (see {@link #validateTripsConcurrently()}).
+     */
+    public NewTripTimesValidator(Feed feed, SQLErrorStorage errorStorage, int threads) {
         super(feed, errorStorage);
+        this.threads = Math.max(1, threads);
+        speedTripValidator = new SpeedTripValidator(feed, errorStorage);
+        referencesTripValidator = new ReferencesTripValidator(feed, errorStorage);
+        serviceValidator = new ServiceValidator(feed, errorStorage);
+        patternFinderValidator = new PatternFinderValidator(feed, errorStorage);
         tripValidators = new TripValidator[] {
-            new SpeedTripValidator(feed, errorStorage),
-            new ReferencesTripValidator(feed, errorStorage),
+            speedTripValidator,
+            referencesTripValidator,
             new ReversedTripValidator(feed, errorStorage),
-            new ServiceValidator(feed, errorStorage),
-            new PatternFinderValidator(feed, errorStorage)
+            serviceValidator,
+            patternFinderValidator
         };
     }
 
+    /**
+     * Create a validator that checks a batch of trips on a worker thread, sharing the cached entities of the parent
+     * and collecting its errors (and those of its trip validators) in the given buffer.
+     */
+    private NewTripTimesValidator(NewTripTimesValidator parent, List<NewGTFSError> errorBuffer) {
+        super(parent.feed, parent.errorStorage);
+        this.threads = 1;
+        this.stopById = parent.stopById;
+        this.tripById = parent.tripById;
+        this.routeById = parent.routeById;
+        this.errorBuffer = errorBuffer;
+        speedTripValidator = new SpeedTripValidator(feed, errorStorage);
+        referencesTripValidator = new ReferencesTripValidator(feed, errorStorage);
+        serviceValidator = null;
+        patternFinderValidator = null;
+        // The service and pattern finder validators depend on the order of the trips, so are run when the results of
+        // each batch are taken back in order.
+        tripValidators = new TripValidator[] {
+            speedTripValidator,
+            referencesTripValidator,
+            new ReversedTripValidator(feed, errorStorage)
+        };
+        for (TripValidator tripValidator : tripValidators) tripValidator.errorBuffer = errorBuffer;
+        if (parent.tripValidatorProfiles != null) tripValidatorProfiles = createTripValidatorProfiles(parent);
+    }
+
+    /**
+     * Fluent method that makes this validator measure the resources used by each of its trip validators (see
+     * {@link #getTripValidatorProfiles()}). This is off by default because the threads are measured around every trip
+     * checked by every trip validator, which noticeably slows down validation of feeds with many short trips. Trips
+     * already checked while the feed was loaded are not included in the profiles.
+     */
+    public NewTripTimesValidator withTripValidatorProfiling(boolean profileTripValidators) {
+        if (!profileTripValidators) tripValidatorProfiles = null;
+        else if (tripValidatorProfiles == null) tripValidatorProfiles = createTripValidatorProfiles(this);
+        return this;
+    }
+
+    private ValidatorProfile[] createTripValidatorProfiles(NewTripTimesValidator parent) {
+        ValidatorProfile[] profiles = new ValidatorProfile[tripValidators.length];
+        for (int i = 0; i < tripValidators.length; i++) profiles[i] = new ValidatorProfile(tripValidators[i], parent);
+        return profiles;
+    }
+
+    /**
+     * @return the resources used by each trip validator during validation, which are also included in the profile of
+     * this validator, or an empty list if trip validator profiling is not enabled.
+     */
+    public List<ValidatorProfile> getTripValidatorProfiles() {
+        if (tripValidatorProfiles == null) return Collections.emptyList();
+        return Arrays.asList(tripValidatorProfiles);
+    }
+
+    /**
+     * Only the stop times and the tables they refer to are read while checking trips. The calendars are read and the
+     * trips table is altered (to add pattern IDs) when the validator is completed.
+     */
+    @Override
+    public Set<Table> getTablesRead () {
+        if (tripsStreamed) return Collections.emptySet();
+        return ImmutableSet.of(Table.ROUTES, Table.STOPS, Table.TRIPS, Table.STOP_TIMES);
+    }
+
     @Override
     public void validate () {
-        // TODO cache automatically in feed or TableReader object
+        if (tripsStreamed) {
+            LOG.info("{} trips were already checked while loading the feed.", tripCount);
+            return;
+        }
         LOG.info("Cacheing stops, trips, and routes...");
-        for (Stop stop : feed.stops) stopById.put(stop.stop_id, stop);
+        stopById = feed.stopById();
         // FIXME: determine a good way to validate shapes without caching them all in memory...
 //        for (ShapePoint shape : feed.shapePoints.getAllOrdered()) shapeById.put(shape.shape_id, shape);
-        for (Trip trip: feed.trips) tripById.put(trip.trip_id, trip);
-        for (Route route: feed.routes) routeById.put(route.route_id, route);
+        tripById = feed.tripById();
+        routeById = feed.routeById();
         LOG.info("Done.");
+        if (threads > 1) {
+            validateTripsConcurrently();
+            return;
+        }
         // Accumulate StopTimes with the same trip_id into a list, then process each trip separately.
         List<StopTime> stopTimesForTrip = new ArrayList<>();
         String previousTripId = null;
@@ -82,6 +194,142 @@ public class NewTripTimesValidator extends FeedValidator {
         if (!stopTimesForTrip.isEmpty()) processTrip(stopTimesForTrip);
     }
 
+    /**
+     * Check a trip whose stop times were handed over while the feed was loaded (see
+     * {@link com.conveyal.gtfs.loader.JdbcGtfsLoader#withTripValidationWhileLoading(boolean)}), rather than read back
+     * from the database. The trips may be handed over in any order, but each with all its stop times in order of
+     * stop_sequence. Errors found are held until the validator is handed to the feed for the rest of validation (see
+     * {@link #resumeStreamedValidation(Feed, SQLErrorStorage)}), so that they can be dropped if streaming is given up.
+     */
+    public void validateStreamedTrip (List<StopTime> stopTimes) {
+        if (!tripsStreamed) {
+            tripsStreamed = true;
+            stopById = feed.stopById();
+            tripById = feed.tripById();
+            routeById = feed.routeById();
+            errorBuffer = new ArrayList<>();
+            for (TripValidator tripValidator : tripValidators) tripValidator.errorBuffer = errorBuffer;
+        }
+        processTrip(stopTimes);
+    }
+
+    /**
+     * Prepare a validator that checked streamed trips to be completed as part of validating the feed, switching to the
+     * feed and error storage used for validation and storing the errors held so far. Zero travel time errors that are
+     * still held by the speed validator are left to be stored (or not) when it is completed, as usual.
+     */
+    public void resumeStreamedValidation (Feed feed, SQLErrorStorage errorStorage) {
+        List<NewGTFSError> heldErrors = errorBuffer == null ? Collections.emptyList() : errorBuffer;
+        List<Validator> validators = new ArrayList<>(Arrays.asList(tripValidators));
+        validators.add(this);
+        for (Validator validator : validators) {
+            validator.feed = feed;
+            validator.errorStorage = errorStorage;
+            validator.errorBuffer = null;
+        }
+        for (NewGTFSError error : heldErrors) {
+            if (!speedTripValidator.travelTimeZeroErrors.contains(error)) registerError(error);
+        }
+    }
+
+    /**
+     * Check the trips in batches on a pool of worker threads. The stop times are still read and grouped by trip on the
+     * calling thread. Each worker checks its batch with its own speed and references validators, collecting rather
+     * than storing the errors found. The results of the batches are then taken back in the order they were read: the
+     * errors are stored and the order-dependent service and pattern finder validators are fed the checked trips,
+     * exactly as if every trip had been checked in turn. So the errors (and their order) and the patterns found do not
+     * depend on the number of threads.
+     */
+    private void validateTripsConcurrently () {
+        LOG.info("Validating trips on {} threads.", threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<TripBatch>> pendingBatches = new ArrayDeque<>();
+        try {
+            List<List<StopTime>> trips = new ArrayList<>();
+            List<StopTime> stopTimesForTrip = new ArrayList<>();
+            String previousTripId = null;
+            for (StopTime stopTime : feed.stopTimes.getAllOrdered()) {
+                if (stopTime.trip_id == null) continue;
+                if (!stopTime.trip_id.equals(previousTripId) && !stopTimesForTrip.isEmpty()) {
+                    trips.add(stopTimesForTrip);
+                    stopTimesForTrip = new ArrayList<>();
+                    if (trips.size() == tripBatchSize) {
+                        submitBatch(executor, pendingBatches, trips);
+                        trips = new ArrayList<>();
+                    }
+                }
+                stopTimesForTrip.add(stopTime);
+                previousTripId = stopTime.trip_id;
+            }
+            if (!stopTimesForTrip.isEmpty()) trips.add(stopTimesForTrip);
+            if (!trips.isEmpty()) submitBatch(executor, pendingBatches, trips);
+            while (!pendingBatches.isEmpty()) completeBatch(pendingBatches.remove());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hand a batch of trips to the worker threads, first taking back the results of earlier batches if enough are
+     * waiting that the reading thread would otherwise get far ahead of the workers.
+     */
+    private void submitBatch (ExecutorService executor, Deque<Future<TripBatch>> pendingBatches, List<List<StopTime>> trips) {
+        while (pendingBatches.size() >= threads * 2) completeBatch(pendingBatches.remove());
+        pendingBatches.add(executor.submit(() -> {
+            TripBatch batch = new TripBatch();
+            NewTripTimesValidator worker = new NewTripTimesValidator(this, batch.errors);
+            for (List<StopTime> stopTimes : trips) {
+                CheckedTrip checkedTrip = worker.checkTrip(stopTimes);
+                if (checkedTrip != null) worker.validateTrip(checkedTrip);
+                batch.checkedTrips.add(checkedTrip);
+            }
+            batch.speedTripValidator = worker.speedTripValidator;
+            batch.referencesTripValidator = worker.referencesTripValidator;
+            batch.tripValidatorCount = worker.tripValidators.length;
+            batch.tripValidatorProfiles = worker.tripValidatorProfiles;
+            return batch;
+        }));
+    }
+
+    /**
+     * Take back the results of a batch of trips checked by a worker thread, storing its errors and feeding its trips
+     * to the validators that must see every trip in order.
+     */
+    private void completeBatch (Future<TripBatch> future) {
+        TripBatch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        for (NewGTFSError error : batch.errors) {
+            // The worker held on to zero travel time errors found before any unrounded travel time in its batch. If
+            // all travel times in earlier batches were rounded too, these errors must continue to be held on to.
+            if (speedTripValidator.allTravelTimesAreRounded &&
+                batch.speedTripValidator.travelTimeZeroErrors.contains(error)) {
+                speedTripValidator.travelTimeZeroErrors.add(error);
+            } else {
+                registerError(error);
+            }
+        }
+        if (!batch.speedTripValidator.allTravelTimesAreRounded) speedTripValidator.allTravelTimesAreRounded = false;
+        referencesTripValidator.referencedStops.addAll(batch.referencesTripValidator.referencedStops);
+        referencesTripValidator.referencedTrips.addAll(batch.referencesTripValidator.referencedTrips);
+        referencesTripValidator.referencedRoutes.addAll(batch.referencesTripValidator.referencedRoutes);
+        if (batch.tripValidatorProfiles != null) {
+            for (int i = 0; i < batch.tripValidatorCount; i++) tripValidatorProfiles[i].add(batch.tripValidatorProfiles[i]);
+        }
+        for (CheckedTrip checkedTrip : batch.checkedTrips) {
+            if (++tripCount % 20_000 == 0) LOG.info("Validating trip {}", tripCount);
+            if (checkedTrip == null) continue;
+            // The order-dependent service and pattern finder validators follow the trip validators run by the workers.
+            for (int i = batch.tripValidatorCount; i < tripValidators.length; i++) validateTrip(i, checkedTrip);
+        }
+    }
+
     protected static boolean missingEitherTime (StopTime stopTime) {
         return (stopTime.arrival_time == Entity.INT_MISSING || stopTime.departure_time == Entity.INT_MISSING);
     }
@@ -131,6 +379,38 @@ public class NewTripTimesValidator extends FeedValidator {
      */
     private void processTrip (List<StopTime> stopTimes) {
         if (++tripCount % 20_000 == 0) LOG.info("Validating trip {}", tripCount);
+        CheckedTrip checkedTrip = checkTrip(stopTimes);
+        if (checkedTrip != null) validateTrip(checkedTrip);
+    }
+
+    /**
+     * Pass the cleaned lists of stop_times and stops for a trip into each trip validator in turn.
+     */
+    private void validateTrip (CheckedTrip checkedTrip) {
+        for (int i = 0; i < tripValidators.length; i++) validateTrip(i, checkedTrip);
+    }
+
+    /**
+     * Pass the cleaned lists of stop_times and stops for a trip into the trip validator at the given index, measuring
+     * it if trip validators are being profiled.
+     */
+    private void validateTrip (int tripValidatorIndex, CheckedTrip checkedTrip) {
+        TripValidator tripValidator = tripValidators[tripValidatorIndex];
+        if (tripValidatorProfiles == null) {
+            tripValidator.validateTrip(checkedTrip.trip, checkedTrip.route, checkedTrip.stopTimes, checkedTrip.stops);
+            return;
+        }
+        int errorCountBefore = tripValidator.registeredErrorCount;
+        meter.start();
+        tripValidator.validateTrip(checkedTrip.trip, checkedTrip.route, checkedTrip.stopTimes, checkedTrip.stops);
+        meter.stop(tripValidatorProfiles[tripValidatorIndex], tripValidator.registeredErrorCount - errorCountBefore);
+    }
+
+    /**
+     * Check the stop times of a single trip, repairing missing times and removing stop times for missing stops.
+     * @return the trip with its cleaned lists of stop_times and stops, or null if it cannot be validated any further.
+     */
+    private CheckedTrip checkTrip (List<StopTime> stopTimes) {
         // All stop times have the same trip_id, so we look it up right away.
         // FIXME: gtfs_load error if there are no stop times? / feed=Birnie_Bus_20141105T102949-05_24e99790-211d-4f92-b1d2-147e6f3d5040.zip
         String tripId = stopTimes.get(0).trip_id;
@@ -138,13 +418,13 @@ public class NewTripTimesValidator extends FeedValidator {
         if (trip == null) {
             // This feed does not contain a trip with the ID specified in these stop_times.
             // This error should already have been caught TODO verify.
-            return;
+            return null;
         }
 
         // Our code should only call this method with non-null stopTimes.
         if (stopTimes.size() < 2) {
             registerError(trip, TRIP_TOO_FEW_STOP_TIMES);
-            return;
+            return null;
         }
         boolean hasContinuousBehavior = false;
         // Make a parallel list of stops based on the stop_times for this trip.
@@ -165,7 +445,7 @@ public class NewTripTimesValidator extends FeedValidator {
             }
         }
         // StopTimes list may have shrunk due to missing stop references.
-        if (stopTimes.size() < 2) return;
+        if (stopTimes.size() < 2) return null;
         // Check that first and last stop times are not missing values and repair them.
         // Note that this repair will be seen by the validators but not saved in the database.
         fixInitialFinal(stopTimes.get(0));
@@ -188,17 +468,22 @@ public class NewTripTimesValidator extends FeedValidator {
                 "shape_id is required when a trip has continuous behavior defined."
             );
         }
-        // Pass these same cleaned lists of stop_times and stops into each trip validator in turn.
-        for (TripValidator tripValidator : tripValidators) tripValidator.validateTrip(trip, route, stopTimes, stops);
+        return new CheckedTrip(trip, route, stopTimes, stops);
     }
 
     /**
      * Completing this feed validator means completing each of its constituent trip validators.
      */
     public void complete (ValidationResult validationResult) {
-        for (TripValidator tripValidator : tripValidators) {
+        for (int i = 0; i < tripValidators.length; i++) {
+            TripValidator tripValidator = tripValidators[i];
             LOG.info("Running complete stage for {}", tripValidator.getClass().getSimpleName());
+            int errorCountBefore = tripValidator.registeredErrorCount;
+            meter.start();
             tripValidator.complete(validationResult);
+            if (tripValidatorProfiles != null) {
+                meter.stop(tripValidatorProfiles[i], tripValidator.registeredErrorCount - errorCountBefore);
+            }
             LOG.info("{} finished", tripValidator.getClass().getSimpleName());
         }
     }
@@ -216,4 +501,37 @@ public class NewTripTimesValidator extends FeedValidator {
             continuousPickup == 2 ||
             continuousPickup == 3;
     }
+
+    /**
+     * A trip with its cleaned lists of stop_times and stops, ready to be fed to the trip validators.
+     */
+    private static class CheckedTrip {
+        final Trip trip;
+        final Route route;
+        final List<StopTime> stopTimes;
+        final List<Stop> stops;
+
+        CheckedTrip (Trip trip, Route route, List<StopTime> stopTimes, List<Stop> stops) {
+            this.trip = trip;
+            this.route = route;
+            this.stopTimes = stopTimes;
+            this.stops = stops;
+        }
+    }
+
+    /**
+     * The results of checking a batch of trips on a worker thread.
+     */
+    private static class TripBatch {
+        // The checked trips in order, with null for trips that could not be validated any further.
+        final List<CheckedTrip> checkedTrips = new ArrayList<>();
+        // The errors found in the order they were found, including zero travel time errors that may need holding on to.
+        final List<NewGTFSError> errors = new ArrayList<>();
+        SpeedTripValidator speedTripValidator;
+        ReferencesTripValidator referencesTripValidator;
+        // The number of trip validators run by the worker, which are the first trip validators of the parent.
+        int tripValidatorCount;
+        // The resources used by the worker's trip validators, or null if they are not being profiled.
+        ValidatorProfile[] tripValidatorProfiles;
+    }
 }
@@ -27,7 +27,6 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -67,11 +66,7 @@ public class PatternFinderValidator extends TripValidator {
     @Override
     public void complete(ValidationResult validationResult) {
         LOG.info("Finding patterns...");
-        // FIXME: There may be a better way to handle getting the full list of stops
-        Map<String, Stop> stopById = new HashMap<>();
-        for (Stop stop : feed.stops) {
-            stopById.put(stop.stop_id, stop);
-        }
+        Map<String, Stop> stopById = feed.stopById();
         // FIXME In the editor we need patterns to exist separately from and before trips themselves, so me make another table.
         Map<TripPatternKey, Pattern> patterns = patternFinder.createPatternObjects(stopById, errorStorage);
         Connection connection = null;
@@ -3,10 +3,10 @@ package com.conveyal.gtfs.validator;
 import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
 import com.conveyal.gtfs.error.SQLErrorStorage;
-import com.conveyal.gtfs.loader.BatchTracker;
 import com.conveyal.gtfs.loader.DateField;
 import com.conveyal.gtfs.loader.Feed;
 import com.conveyal.gtfs.loader.Table;
+import com.conveyal.gtfs.loader.TableRowWriter;
 import com.conveyal.gtfs.model.Calendar;
 import com.conveyal.gtfs.model.CalendarDate;
 import com.conveyal.gtfs.model.Entity;
@@ -15,13 +15,16 @@ import com.conveyal.gtfs.model.Stop;
 import com.conveyal.gtfs.model.StopTime;
 import com.conveyal.gtfs.model.Trip;
 import com.conveyal.gtfs.storage.StorageException;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.hash.TIntIntHashMap;
 import org.apache.commons.dbutils.DbUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.DayOfWeek;
@@ -29,11 +32,13 @@ import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.SERVICE_WITHOUT_DAYS_OF_WEEK;
@@ -60,7 +65,9 @@ public class ServiceValidator extends TripValidator {
     private HashMap<String, List<BlockInterval>> blockIntervals = new HashMap<>();
     private Map<String, ServiceInfo> serviceInfoForServiceId = new HashMap<>();
 
-    private Map<LocalDate, DateInfo> dateInfoForDate = new HashMap<>();
+    // The date from which the days in the service day sets are counted, which is the first date of any calendar or
+    // calendar date.
+    private LocalDate feedFirstDate;
 
     public ServiceValidator(Feed feed, SQLErrorStorage errorStorage) {
         super(feed, errorStorage);
@@ -120,28 +127,51 @@ public class ServiceValidator extends TripValidator {
     private void validateServiceInfo(ValidationResult validationResult) {
         LOG.info("Merging calendars and calendar_dates...");
 
-        // First handle the calendar entries, which define repeating weekly schedules.
+        // The day of each service is stored as a bit in a set of days counted from the first date of any calendar or
+        // calendar date, so that date is found before any service days are recorded. The calendars are few, so are
+        // kept until then, and the calendar dates (which may be many) are reduced to their service, day and type.
+        List<Calendar> calendars = new ArrayList<>();
+        long firstEpochDay = Long.MAX_VALUE;
         for (Calendar calendar : feed.calendars) {
             // Validate that calendars apply to at least one day of the week.
             if (!isCalendarUsedDuringWeek(calendar)) {
                 if (errorStorage != null) registerError(calendar, SERVICE_WITHOUT_DAYS_OF_WEEK);
             }
+            calendars.add(calendar);
+            if (calendar.start_date != null) firstEpochDay = Math.min(firstEpochDay, calendar.start_date.toEpochDay());
+        }
+        List<ServiceInfo> exceptionServices = new ArrayList<>();
+        TLongList exceptionEpochDays = new TLongArrayList();
+        TIntList exceptionTypes = new TIntArrayList();
+        for (CalendarDate calendarDate : feed.calendarDates) {
+            ServiceInfo serviceInfo = serviceInfoForServiceId.computeIfAbsent(calendarDate.service_id, ServiceInfo::new);
+            if (calendarDate.date == null) {
+                // TODO ERR? Can happen with bad data (unparseable dates).
+                if (calendarDate.exception_type == 1) serviceInfo.activeOnInvalidDate = true;
+                else if (calendarDate.exception_type == 2) serviceInfo.activeOnInvalidDate = false;
+                continue;
+            }
+            exceptionServices.add(serviceInfo);
+            exceptionEpochDays.add(calendarDate.date.toEpochDay());
+            exceptionTypes.add(calendarDate.exception_type);
+            firstEpochDay = Math.min(firstEpochDay, calendarDate.date.toEpochDay());
+        }
+        if (firstEpochDay != Long.MAX_VALUE) feedFirstDate = LocalDate.ofEpochDay(firstEpochDay);
 
+        // First handle the calendar entries, which define repeating weekly schedules.
+        for (Calendar calendar : calendars) {
             try {
-                LocalDate endDate = calendar.end_date;
-                // Loop over all days in this calendar entry, recording on which ones it is active.
-                for (LocalDate date = calendar.start_date; date.isBefore(endDate) || date.isEqual(endDate); date = date.plusDays(1)) {
-                    DayOfWeek dayOfWeek = date.getDayOfWeek();
-                    if (    (dayOfWeek == DayOfWeek.MONDAY && calendar.monday > 0) ||
-                        (dayOfWeek == DayOfWeek.TUESDAY && calendar.tuesday > 0) ||
-                        (dayOfWeek == DayOfWeek.WEDNESDAY && calendar.wednesday > 0) ||
-                        (dayOfWeek == DayOfWeek.THURSDAY && calendar.thursday > 0) ||
-                        (dayOfWeek == DayOfWeek.FRIDAY && calendar.friday > 0) ||
-                        (dayOfWeek == DayOfWeek.SATURDAY && calendar.saturday > 0) ||
-                        (dayOfWeek == DayOfWeek.SUNDAY && calendar.sunday > 0)) {
-                        // Service is active on this date.
-                        serviceInfoForServiceId.computeIfAbsent(calendar.service_id, ServiceInfo::new).datesActive.add(date);
+                int startDay = dayOf(calendar.start_date);
+                int endDay = dayOf(calendar.end_date);
+                ServiceInfo serviceInfo = null;
+                // Loop over the first week of this calendar entry, recording every seventh day from each day of the
+                // week on which it is active.
+                for (int firstDay = startDay; firstDay < startDay + 7 && firstDay <= endDay; firstDay++) {
+                    if (!isActiveOn(calendar, feedFirstDate.plusDays(firstDay).getDayOfWeek())) continue;
+                    if (serviceInfo == null) {
+                        serviceInfo = serviceInfoForServiceId.computeIfAbsent(calendar.service_id, ServiceInfo::new);
                     }
+                    for (int day = firstDay; day <= endDay; day += 7) serviceInfo.daysActive.set(day);
                 }
             } catch (Exception ex) {
                 LOG.error("Error validating service entries (merging calendars and calendar_dates)", ex);
@@ -149,15 +179,16 @@ public class ServiceValidator extends TripValidator {
             }
         }
 
-        // Next handle the calendar_dates, which specify exceptions to the repeating weekly schedules.
-        for (CalendarDate calendarDate : feed.calendarDates) {
-            ServiceInfo serviceInfo = serviceInfoForServiceId.computeIfAbsent(calendarDate.service_id, ServiceInfo::new);
-            if (calendarDate.exception_type == 1) {
+        // Next handle the calendar_dates, which specify exceptions to the repeating weekly schedules. These are applied
+        // in order, so that a date both added and removed ends up as it was last specified.
+        for (int i = 0; i < exceptionServices.size(); i++) {
+            int day = (int) (exceptionEpochDays.get(i) - firstEpochDay);
+            if (exceptionTypes.get(i) == 1) {
                 // Service added, add to set for this date.
-                serviceInfo.datesActive.add(calendarDate.date);
-            } else if (calendarDate.exception_type == 2) {
+                exceptionServices.get(i).daysActive.set(day);
+            } else if (exceptionTypes.get(i) == 2) {
                 // Service removed, remove from Set for this date.
-                serviceInfo.datesActive.remove(calendarDate.date);
+                exceptionServices.get(i).daysActive.clear(day);
             }
             // Otherwise exception_type is out of range. This should already have been caught during the loading phase.
         }
@@ -177,7 +208,7 @@ public class ServiceValidator extends TripValidator {
 
         // Check for incoherent or erroneous services.
         for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) {
-            if (serviceInfo.datesActive.isEmpty()) {
+            if (serviceInfo.daysActive.isEmpty() && !serviceInfo.activeOnInvalidDate) {
                 // This service must have been referenced by trips but is never active on any day.
                 registerError(NewGTFSError.forFeed(NewGTFSErrorType.SERVICE_NEVER_ACTIVE, serviceInfo.serviceId));
                 for (String tripId : serviceInfo.tripIds) {
@@ -192,38 +223,34 @@ public class ServiceValidator extends TripValidator {
             }
         }
 
-        // Accumulate info about services into each date that they are active.
-        for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) {
-            for (LocalDate date : serviceInfo.datesActive) {
-                dateInfoForDate.computeIfAbsent(date, DateInfo::new).add(serviceInfo);
-            }
-        }
+        // Find the days on which any service is active.
+        BitSet daysWithService = new BitSet();
+        for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) daysWithService.or(serviceInfo.daysActive);
 
         // Check for dates that have no service within full range of dates with defined service.
         // Sum up service duration by mode for each day within that range.
-        if (dateInfoForDate.isEmpty()) {
+        if (daysWithService.isEmpty()) {
             registerError(NewGTFSError.forFeed(NewGTFSErrorType.NO_SERVICE, null));
         } else {
-            LocalDate firstDate = LocalDate.MAX;
-            LocalDate lastDate = LocalDate.MIN;
-            for (LocalDate date : dateInfoForDate.keySet()) {
-                // If the date is invalid, skip.
-                if (date == null) {
-                    LOG.error("Encountered null date. Did something go wrong with computeIfAbsent?");
-                    continue;
-                }
-                if (date.isBefore(firstDate)) firstDate = date;
-                if (date.isAfter(lastDate)) lastDate = date;
-            }
+            int firstDay = daysWithService.nextSetBit(0);
+            int lastDay = daysWithService.length() - 1;
+            LocalDate firstDate = feedFirstDate.plusDays(firstDay);
             // Copy some useful information into the ValidationResult object to return to the caller.
             // These variables are actually not directly tied to data in the calendar_dates.txt file.  Instead, they
             // represent the first and last date respectively of any entry in the calendar.txt and calendar_dates.txt
             // files.
             validationResult.firstCalendarDate = firstDate;
-            validationResult.lastCalendarDate = lastDate;
-            // Is this any different? firstDate.until(lastDate, ChronoUnit.DAYS);
-            // If no days were found in the dateInfoForDate, nDays is a very large negative number, so we default to 0.
-            int nDays = Math.max(0, (int) ChronoUnit.DAYS.between(firstDate, lastDate) + 1);
+            validationResult.lastCalendarDate = feedFirstDate.plusDays(lastDay);
+            int nDays = lastDay - firstDay + 1;
+            // Accumulate info about services into each date that they are active.
+            DateInfo[] dateInfoForDay = new DateInfo[nDays];
+            for (int d = 0; d < nDays; d++) dateInfoForDay[d] = new DateInfo();
+            for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) {
+                BitSet days = serviceInfo.daysActive;
+                for (int day = days.nextSetBit(0); day >= 0; day = days.nextSetBit(day + 1)) {
+                    dateInfoForDay[day - firstDay].add(serviceInfo);
+                }
+            }
             validationResult.dailyBusSeconds = new int[nDays];
             validationResult.dailyTramSeconds = new int[nDays];
             validationResult.dailyMetroSeconds = new int[nDays];
@@ -231,12 +258,8 @@ public class ServiceValidator extends TripValidator {
             validationResult.dailyTotalSeconds = new int[nDays];
             validationResult.dailyTripCounts = new int[nDays];
             for (int d = 0; d < nDays; d++) {
-                LocalDate date = firstDate.plusDays(d); // current date being processed
                 // Add one value per day. Trove map returns zero for missing keys.
-                DateInfo dateInfo = dateInfoForDate.get(date);
-                if (dateInfo == null) {
-                    dateInfo = new DateInfo(date); // new empty object to get empty durations map.
-                }
+                DateInfo dateInfo = dateInfoForDay[d];
                 validationResult.dailyBusSeconds[d] = dateInfo.durationByRouteType.get(3);
                 validationResult.dailyTramSeconds[d] = dateInfo.durationByRouteType.get(0);
                 validationResult.dailyMetroSeconds[d] = dateInfo.durationByRouteType.get(1);
@@ -245,9 +268,9 @@ public class ServiceValidator extends TripValidator {
                 validationResult.dailyTripCounts[d] = dateInfo.tripCount;
                 if (dateInfo.getTotalServiceDurationSeconds() <= 0) {
                     // Check for low or zero service, which seems to happen even when services are defined.
-                    // This will also catch cases where dateInfo was null and the new instance contains no service.
+                    // This will also catch cases where no service is active on the date.
                     registerError(NewGTFSError.forFeed(NewGTFSErrorType.DATE_NO_SERVICE,
-                                                       DateField.GTFS_DATE_FORMATTER.format(date)));
+                                                       DateField.GTFS_DATE_FORMATTER.format(firstDate.plusDays(d))));
                 }
             }
         }
@@ -272,40 +295,40 @@ public class ServiceValidator extends TripValidator {
             String sql = String.format("create table %s (service_id varchar, n_days_active integer, duration_seconds integer, n_trips integer)", servicesTableName);
             LOG.info(sql);
             statement.execute(sql);
-            sql = String.format("insert into %s values (?, ?, ?, ?)", servicesTableName);
-            PreparedStatement serviceStatement = connection.prepareStatement(sql);
-            final BatchTracker serviceTracker = new BatchTracker("services", serviceStatement);
+            TableRowWriter serviceWriter = new TableRowWriter(connection, servicesTableName, 4);
             for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) {
-                serviceStatement.setString(1, serviceInfo.serviceId);
-                serviceStatement.setInt(2, serviceInfo.datesActive.size());
-                serviceStatement.setInt(3, serviceInfo.getTotalServiceDurationSeconds());
-                serviceStatement.setInt(4, serviceInfo.tripIds.size());
-                serviceTracker.addBatch();
+                serviceWriter.writeRow(
+                    serviceInfo.serviceId,
+                    serviceInfo.daysActive.cardinality(),
+                    serviceInfo.getTotalServiceDurationSeconds(),
+                    serviceInfo.tripIds.size()
+                );
             }
-            serviceTracker.executeRemaining();
+            serviceWriter.finish();
 
-            // Create a table that shows on which dates each service is active.
+            // Create a table that shows on which dates each service is active. The rows are streamed into the table
+            // with a copy command, as there is one for every day of every service.
             String serviceDatesTableName = feed.tablePrefix + "service_dates";
             sql = String.format("create table %s (service_date varchar, service_id varchar)", serviceDatesTableName);
             LOG.info(sql);
             statement.execute(sql);
-            sql = String.format("insert into %s values (?, ?)", serviceDatesTableName);
-            PreparedStatement serviceDateStatement = connection.prepareStatement(sql);
-            final BatchTracker serviceDateTracker = new BatchTracker("service_dates", serviceDateStatement);
+            TableRowWriter serviceDateWriter = new TableRowWriter(connection, serviceDatesTableName, 2);
+            // Format each date only once, rather than once for every service active on it.
+            String[] formattedDates = new String[0];
             for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) {
-                for (LocalDate date : serviceInfo.datesActive) {
-                    if (date == null) continue; // TODO ERR? Can happen with bad data (unparseable dates).
-                    try {
-                        serviceDateStatement.setString(1, date.format(DateField.GTFS_DATE_FORMATTER));
-                        serviceDateStatement.setString(2, serviceInfo.serviceId);
-                        serviceDateTracker.addBatch();
-                    } catch (SQLException ex) {
-                        throw new StorageException(ex);
+                BitSet days = serviceInfo.daysActive;
+                if (days.length() > formattedDates.length) {
+                    int formattedCount = formattedDates.length;
+                    formattedDates = Arrays.copyOf(formattedDates, days.length());
+                    for (int day = formattedCount; day < formattedDates.length; day++) {
+                        formattedDates[day] = feedFirstDate.plusDays(day).format(DateField.GTFS_DATE_FORMATTER);
                     }
                 }
-
+                for (int day = days.nextSetBit(0); day >= 0; day = days.nextSetBit(day + 1)) {
+                    serviceDateWriter.writeRow(formattedDates[day], serviceInfo.serviceId);
+                }
             }
-            serviceDateTracker.executeRemaining();
+            serviceDateWriter.finish();
 
             LOG.info("Indexing...");
             statement.execute(String.format("create index service_dates_service_date on %s (service_date)", serviceDatesTableName));
@@ -323,26 +346,18 @@ public class ServiceValidator extends TripValidator {
                                     "duration_seconds integer, primary key (service_id, route_type))", serviceDurationsTableName);
             LOG.info(sql);
             statement.execute(sql);
-            sql = String.format("insert into %s values (?, ?, ?)", serviceDurationsTableName);
-            PreparedStatement serviceDurationStatement = connection.prepareStatement(sql);
-            final BatchTracker serviceDurationTracker = new BatchTracker(
-                "service_durations",
-                serviceDurationStatement
-            );
+            TableRowWriter serviceDurationWriter = new TableRowWriter(connection, serviceDurationsTableName, 3);
             for (ServiceInfo serviceInfo : serviceInfoForServiceId.values()) {
                 serviceInfo.durationByRouteType.forEachEntry((routeType, serviceDurationSeconds) -> {
                     try {
-                        serviceDurationStatement.setString(1, serviceInfo.serviceId);
-                        serviceDurationStatement.setInt(2, routeType);
-                        serviceDurationStatement.setInt(3, serviceDurationSeconds);
-                        serviceDurationTracker.addBatch();
+                        serviceDurationWriter.writeRow(serviceInfo.serviceId, routeType, serviceDurationSeconds);
                     } catch (SQLException ex) {
                         throw new StorageException(ex);
                     }
                     return true; // Iteration continues
                 });
             }
-            serviceDurationTracker.executeRemaining();
+            serviceDurationWriter.finish();
             // No need to build indexes because (service_id, route_type) is already the primary key of this table.
 
             connection.commit();
@@ -355,11 +370,35 @@ public class ServiceValidator extends TripValidator {
         LOG.info("Done.");
     }
 
+    /**
+     * @return the number of days from the first date of any calendar or calendar date to the given date.
+     */
+    private int dayOf(LocalDate date) {
+        return (int) ChronoUnit.DAYS.between(feedFirstDate, date);
+    }
+
+    private static boolean isActiveOn(Calendar calendar, DayOfWeek dayOfWeek) {
+        switch (dayOfWeek) {
+            case MONDAY: return calendar.monday > 0;
+            case TUESDAY: return calendar.tuesday > 0;
+            case WEDNESDAY: return calendar.wednesday > 0;
+            case THURSDAY: return calendar.thursday > 0;
+            case FRIDAY: return calendar.friday > 0;
+            case SATURDAY: return calendar.saturday > 0;
+            case SUNDAY: return calendar.sunday > 0;
+            default: return false;
+        }
+    }
+
     static class ServiceInfo {
 
         final String serviceId;
         TIntIntHashMap durationByRouteType = new TIntIntHashMap();
-        Set<LocalDate> datesActive = new HashSet<>();
+        // The days on which this service is active, counted from the first date of any calendar or calendar date.
+        BitSet daysActive = new BitSet();
+        // Whether the service was last added (rather than removed) on a calendar date whose date could not be parsed,
+        // in which case it is not reported as never active.
+        boolean activeOnInvalidDate = false;
         Set<String> tripIds = new HashSet<>();
 
         public ServiceInfo(String serviceId) {
@@ -374,21 +413,14 @@ public class ServiceValidator extends TripValidator {
 
     static class DateInfo {
 
-        final LocalDate date;
         TIntIntHashMap durationByRouteType = new TIntIntHashMap();
         int tripCount = 0; // Trip count could also in theory be broken down by route type.
-        Set<String> servicesActive = new HashSet<>();
-
-        public DateInfo(LocalDate date) {
-            this.date = date;
-        }
 
         public int getTotalServiceDurationSeconds() {
             return Arrays.stream(durationByRouteType.values()).sum();
         }
 
         public void add (ServiceInfo serviceInfo) {
-            servicesActive.add(serviceInfo.serviceId);
             serviceInfo.durationByRouteType.forEachEntry((routeType, serviceDurationSeconds) -> {
                 durationByRouteType.adjustOrPutValue(routeType, serviceDurationSeconds, serviceDurationSeconds);
                 return true; // Continue iteration.
@@ -410,37 +442,86 @@ public class ServiceValidator extends TripValidator {
         for (String blockId : blockIntervals.keySet()) {
             List<BlockInterval> intervals = blockIntervals.get(blockId);
             intervals.sort(Comparator.comparingInt(i -> i.startTime));
-            // Iterate over each interval (except for the last) comparing it to every other interval (so the last interval
-            // is handled through the course of iteration).
-            // FIXME this has complexity of n^2, there has to be a better way.
-            for (int n = 0; n < intervals.size() - 1; n++) {
-                BlockInterval interval1 = intervals.get(n);
-                // Compare the interval at position N with all other intervals at position N+1 to the end of the list.
-                for (BlockInterval interval2 : intervals.subList(n + 1, intervals.size())) {
-                    if (interval1.lastStop.departure_time <= interval2.firstStop.arrival_time || interval2.lastStop.departure_time <= interval1.firstStop.arrival_time) {
-                        continue;
-                    }
-                    // If either trip's last departure occurs after the other's first arrival, they overlap. We still
-                    // need to determine if they operate on the same day though.
-                    if (interval1.trip.service_id.equals(interval2.trip.service_id)) {
-                        // If the overlapping trips share a service_id, record an error.
+            // A trip runs from the arrival at its first stop until the departure from its last stop.
+            int[] starts = new int[intervals.size()];
+            int[] ends = new int[intervals.size()];
+            for (int i = 0; i < intervals.size(); i++) {
+                starts[i] = intervals.get(i).firstStop.arrival_time;
+                ends[i] = intervals.get(i).lastStop.departure_time;
+            }
+            // The overlapping pairs are in order of their first and then second interval, so errors are recorded in
+            // the same order as when comparing each interval with every later one.
+            for (long pair : findOverlappingPairs(starts, ends)) {
+                BlockInterval interval1 = intervals.get((int) (pair >>> 32));
+                BlockInterval interval2 = intervals.get((int) pair);
+                // The trips overlap. We still need to determine if they operate on the same day though.
+                if (interval1.trip.service_id.equals(interval2.trip.service_id)) {
+                    // If the overlapping trips share a service_id, record an error.
+                    registerError(interval1.trip, TRIP_OVERLAP_IN_BLOCK, interval2.trip.trip_id);
+                } else {
+                    // Trips overlap but don't have the same service_id.
+                    // Check to see if the services are active on any of the same days.
+                    BitSet days1 = getDaysActive(interval1.trip.service_id);
+                    BitSet days2 = getDaysActive(interval2.trip.service_id);
+                    if (days1.intersects(days2)) {
                         registerError(interval1.trip, TRIP_OVERLAP_IN_BLOCK, interval2.trip.trip_id);
-                    } else {
-                        // Trips overlap but don't have the same service_id.
-                        // Check to see if service days fall on the same days of the week.
-                        ServiceValidator.ServiceInfo info1 = serviceInfoForServiceId.get(interval1.trip.service_id);
-                        ServiceValidator.ServiceInfo info2 = serviceInfoForServiceId.get(interval2.trip.service_id);
-                        Set<LocalDate> overlappingDates = new HashSet<>(info1.datesActive); // use the copy constructor
-                        overlappingDates.retainAll(info2.datesActive);
-                        if (overlappingDates.size() > 0) {
-                            registerError(interval1.trip, TRIP_OVERLAP_IN_BLOCK, interval2.trip.trip_id);
-                        }
                     }
                 }
             }
         }
     }
 
+    /**
+     * @return the days on which the service is active, which are empty for a service with no (valid) trips or dates.
+     */
+    private BitSet getDaysActive (String serviceId) {
+        ServiceInfo serviceInfo = serviceInfoForServiceId.get(serviceId);
+        return serviceInfo == null ? new BitSet() : serviceInfo.daysActive;
+    }
+
+    /**
+     * Find every pair of intervals that overlap, i.e. each starts before the other ends, by sweeping through the
+     * intervals in order of their start times and keeping the intervals that have not yet ended in a queue ordered by
+     * end time. This takes O(n log n + k) time for n intervals with k overlapping pairs, rather than comparing every
+     * pair. Intervals that end before (or when) they start can only overlap an interval that strictly contains them, so
+     * they are compared with every other interval.
+     *
+     * @param starts the start of each interval.
+     * @param ends the end of each interval, where an interval does not overlap another that starts exactly at its end.
+     * @return the overlapping pairs in ascending order, each encoded as the index of its first interval in the high 32
+     * bits and the index of its second (higher) interval in the low 32 bits.
+     */
+    static long[] findOverlappingPairs (int[] starts, int[] ends) {
+        List<Integer> ordered = new ArrayList<>();
+        List<Integer> inverted = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] < ends[i]) ordered.add(i);
+            else inverted.add(i);
+        }
+        ordered.sort(Comparator.comparingInt(i -> starts[i]));
+        TLongList pairs = new TLongArrayList();
+        PriorityQueue<Integer> running = new PriorityQueue<>(Comparator.comparingInt(i -> ends[i]));
+        for (int interval : ordered) {
+            // Every interval still running when this one starts began no later, so overlaps it.
+            while (!running.isEmpty() && ends[running.peek()] <= starts[interval]) running.remove();
+            for (int runningInterval : running) pairs.add(encodePair(runningInterval, interval));
+            running.add(interval);
+        }
+        for (int interval : inverted) {
+            for (int other : ordered) {
+                if (starts[interval] < ends[other] && starts[other] < ends[interval]) {
+                    pairs.add(encodePair(interval, other));
+                }
+            }
+        }
+        pairs.sort();
+        return pairs.toArray();
+    }
+
+    private static long encodePair (int interval, int other) {
+        return ((long) Math.min(interval, other) << 32) | Math.max(interval, other);
+    }
+
 
     /**
      * A simple class used during validation to store details the run interval for a block trip.
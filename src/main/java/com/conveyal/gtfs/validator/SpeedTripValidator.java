@@ -24,8 +24,8 @@ import static com.conveyal.gtfs.validator.NewTripTimesValidator.missingBothTimes
 public class SpeedTripValidator extends TripValidator {
 
     public static final double MIN_SPEED_KPH = 0.5;
-    private boolean allTravelTimesAreRounded = true;
-    private Set<NewGTFSError> travelTimeZeroErrors = new HashSet<>();
+    boolean allTravelTimesAreRounded = true;
+    Set<NewGTFSError> travelTimeZeroErrors = new HashSet<>();
 
     public SpeedTripValidator(Feed feed, SQLErrorStorage errorStorage) {
         super(feed, errorStorage);
@@ -153,8 +153,15 @@ public class SpeedTripValidator extends TripValidator {
         } else if (travelTimeSeconds == 0) {
             // Only register the travel time zero error if not all travel times are rounded. Otherwise, hold onto the
             // error in the travelTimeZeroErrors collection until the completion of this validator.
-            if (!allTravelTimesAreRounded) registerError(stopTime, TRAVEL_TIME_ZERO);
-            else travelTimeZeroErrors.add(createUnregisteredError(stopTime, TRAVEL_TIME_ZERO));
+            if (!allTravelTimesAreRounded) {
+                registerError(stopTime, TRAVEL_TIME_ZERO);
+            } else {
+                NewGTFSError error = createUnregisteredError(stopTime, TRAVEL_TIME_ZERO);
+                travelTimeZeroErrors.add(error);
+                // Keep the position of the held error among the buffered errors, so that it can be stored in order if
+                // an unrounded travel time was found on an earlier batch of trips (see NewTripTimesValidator).
+                if (errorBuffer != null) errorBuffer.add(error);
+            }
             good = false;
         }
         return good;
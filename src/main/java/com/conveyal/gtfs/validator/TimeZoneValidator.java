@@ -2,11 +2,14 @@ package com.conveyal.gtfs.validator;
 
 import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.Table;
 import com.conveyal.gtfs.model.Agency;
 import com.conveyal.gtfs.model.Stop;
+import com.google.common.collect.ImmutableSet;
 
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Set;
 
 import static com.conveyal.gtfs.error.NewGTFSErrorType.*;
 
@@ -16,6 +19,11 @@ public class TimeZoneValidator extends FeedValidator {
         super(feed, errorStorage);
     }
 
+    @Override
+    public Set<Table> getTablesRead() {
+        return ImmutableSet.of(Table.STOPS);
+    }
+
     @Override
     public void validate() {
         for (Agency agency : new ArrayList<Agency>()) { //feed.agency) {
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An instance of this class is returned by the validator.
@@ -41,6 +43,8 @@ public class ValidationResult implements Serializable {
     public GeographicBounds fullBounds = new GeographicBounds();
     public GeographicBounds boundsWithoutOutliers = new GeographicBounds();
     public long validationTime;
+    // The resources used by each validator, each followed by those used by its trip validators (if profiled).
+    public List<ValidatorProfile> validatorProfiles = new ArrayList<>();
 
     public static class GeographicBounds implements Serializable {
         private static final long serialVersionUID = 1L;
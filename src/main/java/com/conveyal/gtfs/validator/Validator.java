@@ -6,6 +6,7 @@ import com.conveyal.gtfs.error.SQLErrorStorage;
 import com.conveyal.gtfs.loader.Feed;
 import com.conveyal.gtfs.model.Entity;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -18,6 +19,13 @@ public abstract class Validator {
 
     SQLErrorStorage errorStorage;
 
+    // When set, errors are collected here in the order they are found instead of being stored, so that errors found on
+    // several threads can be stored in the same order as if they had been found on one (see NewTripTimesValidator).
+    List<NewGTFSError> errorBuffer;
+
+    // The number of errors registered by this validator, for profiling (see ValidatorProfile).
+    int registeredErrorCount = 0;
+
     public Validator(Feed feed, SQLErrorStorage errorStorage) {
         this.feed = feed;
         this.errorStorage = errorStorage;
@@ -34,14 +42,16 @@ public abstract class Validator {
      * Store an error that affects a single line of a single table. Wraps the underlying error factory method.
      */
     public void registerError(Entity entity, NewGTFSErrorType errorType) {
-        errorStorage.storeError(NewGTFSError.forEntity(entity, errorType));
+        registerError(NewGTFSError.forEntity(entity, errorType));
     }
 
     /**
      * Stores a set of errors.
      */
     public void storeErrors(Set<NewGTFSError> errors) {
-        errorStorage.storeErrors(errors);
+        registeredErrorCount += errors.size();
+        if (errorBuffer != null) errorBuffer.addAll(errors);
+        else errorStorage.storeErrors(errors);
     }
 
     /**
@@ -66,14 +76,16 @@ public abstract class Validator {
      * Add a bad value to it.
      */
     public void registerError(Entity entity, NewGTFSErrorType errorType, Object badValue) {
-        errorStorage.storeError(NewGTFSError.forEntity(entity, errorType).setBadValue(badValue.toString()));
+        registerError(NewGTFSError.forEntity(entity, errorType).setBadValue(badValue.toString()));
     }
 
     /**
      * Basic storage of user-constructed error.
      */
     public void registerError (NewGTFSError error) {
-        errorStorage.storeError(error);
+        registeredErrorCount++;
+        if (errorBuffer != null) errorBuffer.add(error);
+        else errorStorage.storeError(error);
     }
 
     /**
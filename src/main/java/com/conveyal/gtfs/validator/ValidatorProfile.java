@@ -0,0 +1,99 @@
+package com.conveyal.gtfs.validator;
+
+import com.conveyal.gtfs.loader.JDBCTableReader;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The resources used by a single validator while validating a feed, which are returned in the
+ * {@link ValidationResult} and stored in the validator_profiles table of the feed namespace (so they can be fetched
+ * over GraphQL). A profile covers both the validate and complete stages of the validator. The trip validators run by
+ * {@link NewTripTimesValidator} have their own profiles when trip validator profiling is enabled (see
+ * {@link com.conveyal.gtfs.loader.Feed#withTripValidatorProfiling(boolean)}), whose resources are also included in the
+ * profile of the trip times validator.
+ */
+public class ValidatorProfile implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // The simple class name of the validator.
+    public String validator;
+    // The validator that ran this trip validator, or null for a feed validator.
+    public String parentValidator;
+    public double wallTimeMillis;
+    // CPU time and allocated bytes are only measured for the threads that ran the validator, so they do not include
+    // the work of other threads it waited on (e.g., the background error writer or the database). They are zero if
+    // the JVM does not support measuring them.
+    public double cpuTimeMillis;
+    public long allocatedBytes;
+    public int errorCount;
+    // The number of rows read from the tables of the feed.
+    public long rowsRead;
+
+    /** Empty constructor for deserialization. */
+    public ValidatorProfile () {}
+
+    public ValidatorProfile (Validator validator, Validator parentValidator) {
+        this.validator = validator.getClass().getSimpleName();
+        this.parentValidator = parentValidator == null ? null : parentValidator.getClass().getSimpleName();
+    }
+
+    /**
+     * Add the resources used in another profile of the same validator (e.g., on another thread) to this one.
+     */
+    public void add (ValidatorProfile other) {
+        wallTimeMillis += other.wallTimeMillis;
+        cpuTimeMillis += other.cpuTimeMillis;
+        allocatedBytes += other.allocatedBytes;
+        errorCount += other.errorCount;
+        rowsRead += other.rowsRead;
+    }
+
+    /**
+     * Measures the resources used by the current thread between a call to start and a call to stop, which must be
+     * made on the same thread. A meter can be reused for any number of measurements, but not by several threads.
+     */
+    public static class Meter {
+
+        private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+        // The HotSpot extension of the thread bean, which measures the bytes allocated by each thread.
+        private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN =
+            THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean &&
+            ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) THREAD_MX_BEAN
+                : null;
+
+        private final boolean measureCpuTime = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() &&
+            THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        private final boolean measureAllocation = ALLOCATION_MX_BEAN != null &&
+            ALLOCATION_MX_BEAN.isThreadAllocatedMemoryEnabled();
+        private long startNanos;
+        private long startCpuNanos;
+        private long startAllocatedBytes;
+        private long startRowsRead;
+
+        public void start () {
+            startRowsRead = JDBCTableReader.getRowsReadByCurrentThread();
+            if (measureAllocation) startAllocatedBytes = currentThreadAllocatedBytes();
+            if (measureCpuTime) startCpuNanos = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Add the resources used since the meter was started, and the given number of errors, to the profile.
+         */
+        public void stop (ValidatorProfile profile, int errorCount) {
+            profile.wallTimeMillis += (System.nanoTime() - startNanos) / 1e6;
+            if (measureCpuTime) profile.cpuTimeMillis += (THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuNanos) / 1e6;
+            if (measureAllocation) profile.allocatedBytes += currentThreadAllocatedBytes() - startAllocatedBytes;
+            profile.rowsRead += JDBCTableReader.getRowsReadByCurrentThread() - startRowsRead;
+            profile.errorCount += errorCount;
+        }
+
+        private static long currentThreadAllocatedBytes () {
+            return ALLOCATION_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
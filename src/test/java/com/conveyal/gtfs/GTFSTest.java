@@ -1,9 +1,18 @@
 package com.conveyal.gtfs;
 
 
+import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
+import com.conveyal.gtfs.error.SQLErrorStorage;
+import com.conveyal.gtfs.loader.DirectoryGtfsSource;
+import com.conveyal.gtfs.loader.Feed;
 import com.conveyal.gtfs.loader.FeedLoadResult;
+import com.conveyal.gtfs.loader.JdbcGtfsLoader;
 import com.conveyal.gtfs.loader.SnapshotResult;
+import com.conveyal.gtfs.loader.Table;
+import com.conveyal.gtfs.loader.ZipStreamGtfsSource;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
 import com.conveyal.gtfs.storage.ErrorExpectation;
 import com.conveyal.gtfs.storage.ExpectedFieldType;
 import com.conveyal.gtfs.storage.PersistenceExpectation;
@@ -12,9 +21,11 @@ import com.conveyal.gtfs.util.InvalidNamespaceException;
 import com.conveyal.gtfs.validator.FeedValidatorCreator;
 import com.conveyal.gtfs.validator.MTCValidator;
 import com.conveyal.gtfs.validator.ValidationResult;
+import com.conveyal.gtfs.validator.ValidatorProfile;
 import com.csvreader.CsvReader;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.input.BOMInputStream;
@@ -22,31 +33,48 @@ import org.hamcrest.Matcher;
 import org.hamcrest.comparator.ComparatorMatcherBuilder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static com.conveyal.gtfs.graphql.GTFSGraphQLTest.testDBName;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 
 /**
@@ -56,6 +84,9 @@ public class GTFSTest {
     private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
     private static final String JDBC_URL = "jdbc:postgresql://localhost";
     private static final Logger LOG = LoggerFactory.getLogger(GTFSTest.class);
+    // The error counts of a namespace, one row for each error type.
+    private static final String ERROR_COUNTS_QUERY =
+        "select error_type || ':' || count from %s.error_counts order by error_type";
 
     // setup a stream to capture the output from the program
     @BeforeEach
@@ -165,6 +196,583 @@ public class GTFSTest {
         );
     }
 
+    /**
+     * Tests that loading a feed with one of the loader's options (or from another kind of source) results in the same
+     * rows, errors and indexes as loading it from a zip file with the default options.
+     */
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("createEquivalentLoads")
+    public void canLoadFeedLikeDefaultLoad (String folder, String description, FeedLoad feedLoad) throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles(folder, true);
+            FeedLoadResult defaultResult = GTFS.load(zipFileName, dataSource);
+            FeedLoadResult result = feedLoad.load(zipFileName, dataSource);
+            assertThat(result.stopTimes.fileSize, equalTo(defaultResult.stopTimes.fileSize));
+            assertThatLoadsMatch(connection, result, defaultResult);
+        });
+    }
+
+    private static Stream<Arguments> createEquivalentLoads () {
+        String badCalendarDates = "fake-agency-bad-calendar-date";
+        FeedLoad directoryLoad = (zipFileName, dataSource) ->
+            GTFS.load(new DirectoryGtfsSource(TestUtils.getResourceFileName("fake-agency")), dataSource);
+        FeedLoad zipStreamLoad = (zipFileName, dataSource) ->
+            GTFS.load(new ZipStreamGtfsSource(zipFileName, new FileInputStream(zipFileName)), dataSource);
+        FeedLoad concurrentZipStreamLoad = (zipFileName, dataSource) ->
+            new JdbcGtfsLoader(new ZipStreamGtfsSource(zipFileName, new FileInputStream(zipFileName)), dataSource)
+                .withLoadThreads(4)
+                .loadTables();
+        return Stream.of(
+            Arguments.of(badCalendarDates, "concurrent tables", loadWith(loader -> loader.withLoadThreads(4))),
+            // Several agencies and fare rules referring to stop zones, so that the conditional requirements on
+            // agency_id and zone_id are checked while other tables are being loaded.
+            Arguments.of(
+                "real-world-gtfs-feeds/VTA-gtfs-conditionally-required-checks",
+                "concurrent tables",
+                loadWith(loader -> loader.withLoadThreads(4))
+            ),
+            Arguments.of(badCalendarDates, "streaming copy", loadWith(loader -> loader.withStreamingCopy(true))),
+            Arguments.of(
+                badCalendarDates,
+                "streaming copy of concurrent tables",
+                loadWith(loader -> loader.withStreamingCopy(true).withLoadThreads(4))
+            ),
+            Arguments.of("fake-agency", "text copy", loadWith(loader -> loader.withBinaryCopy(false))),
+            Arguments.of("fake-agency", "parse threads", loadWith(loader -> loader.withParseThreads(4))),
+            Arguments.of(
+                "fake-agency-interpolated-stop-times",
+                "parse threads",
+                loadWith(loader -> loader.withParseThreads(4))
+            ),
+            Arguments.of(badCalendarDates, "parse threads", loadWith(loader -> loader.withParseThreads(4))),
+            Arguments.of(
+                "fake-agency",
+                "deferred indexes",
+                loadWith(loader -> loader.withDeferredIndexes(4).withIndexMaintenanceWorkMem("64MB"))
+            ),
+            Arguments.of(
+                badCalendarDates,
+                "errors inserted on the loading thread",
+                loadWith(loader -> loader.withBackgroundErrorWriter(false))
+            ),
+            Arguments.of("fake-agency", "directory", directoryLoad),
+            Arguments.of("fake-agency", "zip stream", zipStreamLoad),
+            Arguments.of("fake-agency", "zip stream of concurrent tables", concurrentZipStreamLoad)
+        );
+    }
+
+    /**
+     * Tests that errors copied into the database by the background error writer are identical to those inserted on the
+     * loading thread, including values with characters that must be escaped in the copy format.
+     */
+    @Test
+    public void canStoreErrorsWithBackgroundWriter () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("fake-agency-bad-calendar-date", true);
+            String insertedNamespace = new JdbcGtfsLoader(zipFileName, dataSource)
+                .withBackgroundErrorWriter(false)
+                .loadTables()
+                .uniqueIdentifier;
+            String copiedNamespace = GTFS.load(zipFileName, dataSource).uniqueIdentifier;
+            for (String namespace : Arrays.asList(insertedNamespace, copiedNamespace)) {
+                NewGTFSError error = NewGTFSError.forFeed(NewGTFSErrorType.OTHER, "tab\tback\\slash\nnewline");
+                error.addInfo("key", "carriage\rreturn");
+                SQLErrorStorage errorStorage = new SQLErrorStorage(dataSource.getConnection(), namespace + ".", false);
+                if (namespace.equals(copiedNamespace)) errorStorage.withBackgroundWriter(dataSource);
+                errorStorage.storeError(error);
+                errorStorage.commitAndClose();
+            }
+            for (String query : Arrays.asList(
+                "select e::text from %s.errors e order by error_id",
+                "select i::text from %s.error_info i order by error_id, key"
+            )) {
+                assertThat(
+                    getQueryResults(connection, String.format(query, copiedNamespace)),
+                    equalTo(getQueryResults(connection, String.format(query, insertedNamespace)))
+                );
+            }
+        });
+    }
+
+    /**
+     * Tests that the error counts kept in memory (and stored in the error_counts table) match the contents of the
+     * errors table after loading and validating a feed.
+     */
+    @Test
+    public void canCountErrorsInMemory () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("fake-agency-bad-calendar-date", true);
+            FeedLoadResult loadResult = GTFS.load(zipFileName, dataSource);
+            String namespace = loadResult.uniqueIdentifier;
+            assertThat(loadResult.errorCount, equalTo(getRowCount(connection, namespace, "errors")));
+            ValidationResult validationResult = GTFS.validate(namespace, dataSource);
+            assertThat(validationResult.errorCount, equalTo(getRowCount(connection, namespace, "errors")));
+            assertThat(
+                getQueryResults(connection, String.format(ERROR_COUNTS_QUERY, namespace)),
+                equalTo(getQueryResults(connection, String.format(
+                    "select error_type || ':' || count(*) from %s.errors group by error_type order by error_type",
+                    namespace
+                )))
+            );
+            SQLErrorStorage errorStorage = new SQLErrorStorage(dataSource.getConnection(), namespace + ".", false);
+            assertThat(errorStorage.getErrorCount(), equalTo(validationResult.errorCount));
+            assertThat(
+                errorStorage.getErrorCount(Table.CALENDAR_DATES),
+                equalTo(getRowCount(connection, namespace, "errors where entity_type = 'CalendarDate'"))
+            );
+            errorStorage.commitAndClose();
+        });
+    }
+
+    /**
+     * Tests that only the allowed number of errors of each type are stored for each table, that the rest are recorded
+     * in summary rows, and that error counts still include every error.
+     */
+    @Test
+    public void canLimitErrorsStoredPerType () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("fake-agency-bad-calendar-date", true);
+            FeedLoadResult fullResult = GTFS.load(zipFileName, dataSource);
+            FeedLoadResult limitedResult = new JdbcGtfsLoader(zipFileName, dataSource)
+                .withMaxErrorsPerType(1)
+                .loadTables();
+            String namespace = limitedResult.uniqueIdentifier;
+            assertThat(limitedResult.fatalException, nullValue());
+            assertThat(limitedResult.errorCount, equalTo(fullResult.errorCount));
+            String summaryRows = String.format(
+                "select error_id from %s.error_info where key = '%s'", namespace, SQLErrorStorage.SUPPRESSED_COUNT_KEY
+            );
+            // No more than one error of each type is stored for each table, besides the summary rows.
+            assertThat(
+                getQueryResults(connection, String.format(
+                    "select count(*) from %s.errors where error_id not in (%s) " +
+                        "group by error_type, entity_type having count(*) > 1",
+                    namespace, summaryRows
+                )),
+                equalTo(Collections.emptyList())
+            );
+            assertThat(
+                getQueryResults(connection, String.format(
+                    "select (select count(*) from %1$s.errors where error_id not in (%2$s)) + (select " +
+                        "sum(cast(value as integer)) from %1$s.error_info where error_id in (%2$s))",
+                    namespace, summaryRows
+                )),
+                equalTo(Collections.singletonList(Integer.toString(fullResult.errorCount)))
+            );
+            assertThat(
+                getQueryResults(connection, String.format(ERROR_COUNTS_QUERY, namespace)),
+                equalTo(getQueryResults(connection, String.format(ERROR_COUNTS_QUERY, fullResult.uniqueIdentifier)))
+            );
+            // Counts are seeded from the summary rows when reconnecting.
+            SQLErrorStorage errorStorage = new SQLErrorStorage(dataSource.getConnection(), namespace + ".", false);
+            assertThat(errorStorage.getErrorCount(), equalTo(fullResult.errorCount));
+            errorStorage.commitAndClose();
+        });
+    }
+
+    /**
+     * Tests that the indexes of stops, trips and routes are read once, shared by every caller and released on request.
+     */
+    @Test
+    public void canShareEntityIndexes () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("fake-agency", true);
+            Feed feed = new Feed(dataSource, GTFS.load(zipFileName, dataSource).uniqueIdentifier);
+            Map<String, Stop> stopById = feed.stopById();
+            assertThat(feed.stopById(), sameInstance(stopById));
+            assertThat(stopById.get("4u6g").stop_name, equalTo("Butler Ln"));
+            assertThrows(UnsupportedOperationException.class, () -> stopById.remove("4u6g"));
+            int routeCount = feed.routeById().size();
+            assertThat(feed.clearIndexes(), equalTo(stopById.size() + routeCount));
+            assertThat(feed.stopById(), not(sameInstance(stopById)));
+        });
+    }
+
+    /**
+     * Tests that streaming a table, in sequence or in parallel over key ranges, reads every row once.
+     */
+    @Test
+    public void canStreamTables () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("real-world-gtfs-feeds/VTA-gtfs-multiple-trips", true);
+            Feed feed = new Feed(dataSource, GTFS.load(zipFileName, dataSource).uniqueIdentifier);
+            List<String> expectedStopTimes = new ArrayList<>();
+            for (StopTime stopTime : feed.stopTimes) {
+                expectedStopTimes.add(stopTime.trip_id + ":" + stopTime.stop_sequence);
+            }
+            Collections.sort(expectedStopTimes);
+            assertThat(expectedStopTimes.size(), greaterThan(0));
+            try (Stream<StopTime> stopTimes = feed.stopTimes.stream(100)) {
+                assertThat(getSortedStopTimeKeys(stopTimes), equalTo(expectedStopTimes));
+            }
+            try (Stream<StopTime> stopTimes = feed.stopTimes.parallelStream(4, 100)) {
+                assertThat(getSortedStopTimeKeys(stopTimes), equalTo(expectedStopTimes));
+            }
+            // Stopping partway through a stream leaves no connection open once it is closed.
+            try (Stream<StopTime> stopTimes = feed.stopTimes.parallelStream(4, 10)) {
+                assertThat(stopTimes.limit(3).count(), equalTo(3L));
+            }
+        });
+    }
+
+    private static List<String> getSortedStopTimeKeys(Stream<StopTime> stopTimes) {
+        return stopTimes
+            .map(stopTime -> stopTime.trip_id + ":" + stopTime.stop_sequence)
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Tests that the resources used by each validator and trip validator are returned in the validation result and
+     * stored in the feed namespace.
+     */
+    @Test
+    public void canProfileValidators () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("real-world-gtfs-feeds/VTA-gtfs-multiple-trips", true);
+            String namespace = GTFS.load(zipFileName, dataSource).uniqueIdentifier;
+            ValidationResult validationResult = new Feed(dataSource, namespace)
+                .withTripValidationThreads(2)
+                .withTripValidatorProfiling(true)
+                .validate();
+            List<ValidatorProfile> profiles = validationResult.validatorProfiles;
+            // Seven feed validators, with the five trip validators following the trip times validator.
+            assertThat(profiles.size(), equalTo(12));
+            ValidatorProfile tripTimesProfile = profiles.get(5);
+            assertThat(tripTimesProfile.validator, equalTo("NewTripTimesValidator"));
+            assertThat(tripTimesProfile.parentValidator, nullValue());
+            assertThat(tripTimesProfile.rowsRead, greaterThan(0L));
+            assertThat(tripTimesProfile.wallTimeMillis, greaterThan(0.0));
+            List<ValidatorProfile> tripValidatorProfiles = profiles.subList(6, 11);
+            int tripValidatorErrorCount = 0;
+            for (ValidatorProfile profile : tripValidatorProfiles) {
+                assertThat(profile.parentValidator, equalTo("NewTripTimesValidator"));
+                tripValidatorErrorCount += profile.errorCount;
+            }
+            assertThat(tripValidatorProfiles.get(0).validator, equalTo("SpeedTripValidator"));
+            assertThat(tripValidatorErrorCount, greaterThan(0));
+            assertThat(tripValidatorErrorCount, lessThanOrEqualTo(tripTimesProfile.errorCount));
+            assertThat(profiles.get(11).validator, equalTo("NamesValidator"));
+            ResultSet resultSet = connection.createStatement().executeQuery(String.format(
+                "select validator, error_count from %s.validator_profiles order by id", namespace
+            ));
+            for (ValidatorProfile profile : profiles) {
+                assertThat(resultSet.next(), is(true));
+                assertThat(resultSet.getString(1), equalTo(profile.validator));
+                assertThat(resultSet.getInt(2), equalTo(profile.errorCount));
+            }
+            assertThat(resultSet.next(), is(false));
+        });
+    }
+
+    /**
+     * Tests that running validators at the same time finds the same errors and validation results as running them in
+     * turn.
+     */
+    @Test
+    public void canRunValidatorsConcurrently () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("real-world-gtfs-feeds/VTA-gtfs-multiple-trips", true);
+            String sequentialNamespace = GTFS.load(zipFileName, dataSource).uniqueIdentifier;
+            String concurrentNamespace = GTFS.load(zipFileName, dataSource).uniqueIdentifier;
+            ValidationResult sequentialResult = new Feed(dataSource, sequentialNamespace)
+                .validate(MTCValidator::new);
+            ValidationResult concurrentResult = new Feed(dataSource, concurrentNamespace)
+                .withValidatorThreads(4)
+                .validate(MTCValidator::new);
+            assertThat(concurrentResult.errorCount, equalTo(sequentialResult.errorCount));
+            assertThat(concurrentResult.fullBounds.minLat, equalTo(sequentialResult.fullBounds.minLat));
+            assertThat(concurrentResult.firstCalendarDate, equalTo(sequentialResult.firstCalendarDate));
+            // Errors from different validators may be stored in a different order, so compare them without their IDs.
+            for (String query : Arrays.asList(
+                "select (error_type, entity_type, line_number, entity_id, entity_sequence, bad_value)::text " +
+                    "from %s.errors order by 1",
+                "select pattern_id || ':' || route_id || ':' || name from %s.patterns order by pattern_id"
+            )) {
+                assertThat(
+                    getQueryResults(connection, String.format(query, concurrentNamespace)),
+                    equalTo(getQueryResults(connection, String.format(query, sequentialNamespace)))
+                );
+            }
+        });
+    }
+
+    /**
+     * Tests that a file identical to one already loaded is not loaded again when reusing identical feeds, unless the
+     * earlier namespace has been deleted or its load was not completed.
+     */
+    @Test
+    public void canReuseIdenticalFeed () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String zipFileName = TestUtils.zipFolderFiles("fake-agency", true);
+            FeedLoadResult result = GTFS.load(zipFileName, dataSource, true);
+            assertThat(result.reusedExistingFeed, equalTo(false));
+            // The hashes computed in a single pass must match those of the whole file.
+            ResultSet resultSet = connection.prepareStatement(String.format(
+                "select md5, sha1 from feeds where namespace = '%s'", result.uniqueIdentifier
+            )).executeQuery();
+            assertThat(resultSet.next(), equalTo(true));
+            assertThat(resultSet.getString(1), equalTo(Files.hash(new File(zipFileName), Hashing.md5()).toString()));
+            assertThat(resultSet.getString(2), equalTo(Files.hash(new File(zipFileName), Hashing.sha1()).toString()));
+
+            FeedLoadResult reusedResult = GTFS.load(zipFileName, dataSource, true);
+            assertThat(reusedResult.fatalException, nullValue());
+            assertThat(reusedResult.reusedExistingFeed, equalTo(true));
+            assertThat(reusedResult.validated, equalTo(false));
+            assertThat(reusedResult.uniqueIdentifier, equalTo(result.uniqueIdentifier));
+            assertThat(reusedResult.errorCount, equalTo(result.errorCount));
+            assertThat(reusedResult.stopTimes.rowCount, equalTo(result.stopTimes.rowCount));
+            assertThat(reusedResult.translations.rowCount, equalTo(result.translations.rowCount));
+
+            // Errors found by validators are not counted as load errors.
+            ValidationResult validationResult = GTFS.validate(result.uniqueIdentifier, dataSource);
+            assertThat(validationResult.errorCount, greaterThan(result.errorCount));
+            FeedLoadResult validatedResult = GTFS.load(zipFileName, dataSource, true);
+            assertThat(validatedResult.reusedExistingFeed, equalTo(true));
+            assertThat(validatedResult.validated, equalTo(true));
+            assertThat(validatedResult.errorCount, equalTo(result.errorCount));
+
+            // A namespace whose load was not completed (e.g. a load that failed or is still running) is not reused.
+            connection.createStatement().execute(String.format(
+                "drop table %s.%s", result.uniqueIdentifier, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME
+            ));
+            connection.commit();
+            FeedLoadResult incompleteResult = GTFS.load(zipFileName, dataSource, true);
+            assertThat(incompleteResult.reusedExistingFeed, equalTo(false));
+            assertThat(incompleteResult.uniqueIdentifier, not(equalTo(result.uniqueIdentifier)));
+            GTFS.delete(incompleteResult.uniqueIdentifier, dataSource);
+
+            GTFS.delete(result.uniqueIdentifier, dataSource);
+            FeedLoadResult reloadedResult = GTFS.load(zipFileName, dataSource, true);
+            assertThat(reloadedResult.reusedExistingFeed, equalTo(false));
+            assertThat(reloadedResult.uniqueIdentifier, not(equalTo(result.uniqueIdentifier)));
+        });
+    }
+
+    /**
+     * Tests that loading a new version of a feed incrementally (in which only calendar_dates.txt has changed) copies
+     * the tables that do not depend on the changed file and results in the same rows and errors as loading it in full.
+     */
+    @Test
+    public void canLoadFeedIncrementally () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String previousZipFileName = TestUtils.zipFolderFiles("fake-agency", true);
+            File newFeedDirectory = copyFeedDirectory("fake-agency");
+            FileUtils.copyFileToDirectory(
+                new File(TestUtils.getResourceFileName("fake-agency-bad-calendar-date/calendar_dates.txt")),
+                newFeedDirectory
+            );
+            String newZipFileName = TestUtils.zipFolderFiles(newFeedDirectory.getAbsolutePath(), false);
+            FeedLoadResult previousResult = GTFS.load(previousZipFileName, dataSource);
+            FeedLoadResult fullResult = GTFS.load(newZipFileName, dataSource);
+            FeedLoadResult[] incrementalResults = {
+                GTFS.loadIncremental(previousResult.uniqueIdentifier, newZipFileName, dataSource),
+                new JdbcGtfsLoader(newZipFileName, dataSource)
+                    .withPreviousNamespace(previousResult.uniqueIdentifier)
+                    .withLoadThreads(4)
+                    .loadTables()
+            };
+            for (FeedLoadResult incrementalResult : incrementalResults) {
+                assertThat(incrementalResult.calendarDates.copiedFromPreviousNamespace, equalTo(false));
+                // Trips refer to service IDs in calendar_dates, so must be checked again.
+                assertThat(incrementalResult.trips.copiedFromPreviousNamespace, equalTo(false));
+                assertThat(incrementalResult.stopTimes.copiedFromPreviousNamespace, equalTo(true));
+                assertThat(incrementalResult.shapes.copiedFromPreviousNamespace, equalTo(true));
+                assertThatLoadsMatch(connection, incrementalResult, fullResult);
+            }
+        });
+    }
+
+    /**
+     * Tests that loading a feed incrementally from a namespace in which only some errors of each type were stored
+     * copies the counts of the suppressed errors along with the stored errors, so that error counts match those of a
+     * full load.
+     */
+    @Test
+    public void canLoadFeedIncrementallyWithLimitedErrors () throws Exception {
+        withTestDatabase((dataSource, connection) -> {
+            String previousZipFileName = TestUtils.zipFolderFiles("fake-agency-bad-calendar-date", true);
+            File newFeedDirectory = copyFeedDirectory("fake-agency-bad-calendar-date");
+            FileUtils.writeStringToFile(
+                new File(newFeedDirectory, "feed_info.txt"),
+                "feed_publisher_name,feed_publisher_url,feed_lang,feed_version\n" +
+                    "Conveyal,http://www.conveyal.com,en,2.0",
+                StandardCharsets.UTF_8
+            );
+            String newZipFileName = TestUtils.zipFolderFiles(newFeedDirectory.getAbsolutePath(), false);
+            String previousNamespace = loadWith(loader -> loader.withMaxErrorsPerType(1))
+                .load(previousZipFileName, dataSource)
+                .uniqueIdentifier;
+            FeedLoadResult fullResult = loadWith(loader -> loader.withMaxErrorsPerType(1))
+                .load(newZipFileName, dataSource);
+            FeedLoadResult incrementalResult =
+                loadWith(loader -> loader.withMaxErrorsPerType(1).withPreviousNamespace(previousNamespace))
+                    .load(newZipFileName, dataSource);
+            // Five blank lines in routes.txt are each an error of the same type, four of which were not stored.
+            assertThat(incrementalResult.routes.copiedFromPreviousNamespace, equalTo(true));
+            assertThat(incrementalResult.routes.errorCount, equalTo(fullResult.routes.errorCount));
+            assertThatLoadsMatch(connection, incrementalResult, fullResult);
+            assertThat(
+                getQueryResults(connection, String.format(ERROR_COUNTS_QUERY, incrementalResult.uniqueIdentifier)),
+                equalTo(getQueryResults(connection, String.format(ERROR_COUNTS_QUERY, fullResult.uniqueIdentifier)))
+            );
+        });
+    }
+
+    /**
+     * A test to run against a new database, which is dropped afterwards (see {@link #withTestDatabase}).
+     */
+    @FunctionalInterface
+    private interface DatabaseTest {
+        void run (DataSource dataSource, Connection connection) throws Exception;
+    }
+
+    /**
+     * Run a test against a new database, with a connection that is closed and a database that is dropped afterwards.
+     */
+    private static void withTestDatabase (DatabaseTest test) throws Exception {
+        String databaseName = TestUtils.generateNewDB();
+        DataSource dataSource = TestUtils.createTestDataSource(String.join("/", JDBC_URL, databaseName));
+        try (Connection connection = dataSource.getConnection()) {
+            test.run(dataSource, connection);
+        } finally {
+            TestUtils.dropDB(databaseName);
+        }
+    }
+
+    /**
+     * A way of loading a zipped feed, to compare with other ways (see {@link #assertThatLoadsMatch}).
+     */
+    @FunctionalInterface
+    private interface FeedLoad {
+        FeedLoadResult load (String zipFileName, DataSource dataSource) throws IOException;
+    }
+
+    /**
+     * @return a load of the zipped feed with the loader's default options changed as given.
+     */
+    private static FeedLoad loadWith (UnaryOperator<JdbcGtfsLoader> options) {
+        return (zipFileName, dataSource) -> options.apply(new JdbcGtfsLoader(zipFileName, dataSource)).loadTables();
+    }
+
+    /**
+     * Copy the files of a test feed into a temporary directory, so that some of them can be changed.
+     */
+    private static File copyFeedDirectory (String folder) throws IOException {
+        File directory = Files.createTempDir();
+        FileUtils.copyDirectory(new File(TestUtils.getResourceFileName(folder)), directory);
+        return directory;
+    }
+
+    /**
+     * Assert that a load of a feed succeeded with the same counts, errors, table contents and indexes as another load
+     * of that feed. Errors are compared regardless of the order in which they were stored and rows by id.
+     */
+    private static void assertThatLoadsMatch (
+        Connection connection,
+        FeedLoadResult result,
+        FeedLoadResult expectedResult
+    ) throws SQLException {
+        String namespace = result.uniqueIdentifier;
+        String expectedNamespace = expectedResult.uniqueIdentifier;
+        assertThat(result.fatalException, nullValue());
+        assertThat(result.stopTimes.fatalException, nullValue());
+        assertThat(result.errorCount, equalTo(expectedResult.errorCount));
+        assertThat(result.stopTimes.rowCount, equalTo(expectedResult.stopTimes.rowCount));
+        assertThat(result.stopTimes.errorCount, equalTo(expectedResult.stopTimes.errorCount));
+        assertThat(getSortedErrors(connection, namespace), equalTo(getSortedErrors(connection, expectedNamespace)));
+        List<String> tableNames = getSpecTableNames(connection, expectedNamespace);
+        assertThat(getSpecTableNames(connection, namespace), equalTo(tableNames));
+        for (String tableName : tableNames) {
+            assertThat(
+                getTableContents(connection, namespace, tableName),
+                equalTo(getTableContents(connection, expectedNamespace, tableName))
+            );
+        }
+        assertThat(
+            getIndexDefinitions(connection, namespace),
+            equalTo(getIndexDefinitions(connection, expectedNamespace))
+        );
+    }
+
+    /**
+     * Get the names of the GTFS (or editor) tables in a namespace, which after a load are those of the files found in
+     * the feed.
+     */
+    private static List<String> getSpecTableNames (Connection connection, String namespace) throws SQLException {
+        List<String> specTableNames = Arrays.stream(Table.tablesInOrder)
+            .map(table -> table.name)
+            .collect(Collectors.toList());
+        List<String> tableNames = getQueryResults(connection, String.format(
+            "select table_name from information_schema.tables where table_schema = '%s' order by table_name", namespace
+        ));
+        tableNames.retainAll(specTableNames);
+        return tableNames;
+    }
+
+    /**
+     * Get the definitions of all indexes in a namespace, with the namespace removed so that they can be compared.
+     */
+    private static List<String> getIndexDefinitions(Connection connection, String namespace) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        ResultSet resultSet = connection.prepareStatement(String.format(
+            "select indexdef from pg_indexes where schemaname = '%s'", namespace
+        )).executeQuery();
+        while (resultSet.next()) indexes.add(resultSet.getString(1).replace(namespace, ""));
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Get every row of a table as text, ordered by id.
+     */
+    private static List<String> getTableContents(Connection connection, String namespace, String tableName)
+        throws SQLException {
+        List<String> rows = new ArrayList<>();
+        ResultSet resultSet = connection.prepareStatement(
+            String.format("select t::text from %s.%s t order by id", namespace, tableName)
+        ).executeQuery();
+        while (resultSet.next()) rows.add(resultSet.getString(1));
+        return rows;
+    }
+
+    private static List<String> getQueryResults(Connection connection, String query) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        ResultSet resultSet = connection.prepareStatement(query).executeQuery();
+        while (resultSet.next()) rows.add(resultSet.getString(1));
+        return rows;
+    }
+
+    private static int getRowCount(Connection connection, String namespace, String tableName) throws SQLException {
+        ResultSet resultSet = connection.prepareStatement(
+            String.format("select count(*) from %s.%s", namespace, tableName)
+        ).executeQuery();
+        resultSet.next();
+        return resultSet.getInt(1);
+    }
+
+    /**
+     * Get a description of each error stored for a namespace, sorted so that namespaces can be compared regardless of
+     * the order in which the errors were stored.
+     */
+    private static List<String> getSortedErrors(Connection connection, String namespace) throws SQLException {
+        List<String> errors = new ArrayList<>();
+        ResultSet resultSet = connection.prepareStatement(String.format(
+            "select error_type, entity_type, line_number, entity_id, bad_value from %s.errors", namespace
+        )).executeQuery();
+        while (resultSet.next()) {
+            errors.add(String.join(":",
+                resultSet.getString(1),
+                resultSet.getString(2),
+                resultSet.getString(3),
+                resultSet.getString(4),
+                resultSet.getString(5)
+            ));
+        }
+        Collections.sort(errors);
+        return errors;
+    }
+
     /**
      * Tests that a GTFS feed with errors is loaded properly and that the various errors were detected and stored in the
      * database.
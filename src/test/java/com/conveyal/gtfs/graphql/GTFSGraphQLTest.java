@@ -1,8 +1,16 @@
 package com.conveyal.gtfs.graphql;
 
 import com.conveyal.gtfs.TestUtils;
+import com.conveyal.gtfs.graphql.fetchers.JDBCFetcher;
+import com.conveyal.gtfs.graphql.fetchers.MapFetcher;
 import com.conveyal.gtfs.loader.FeedLoadResult;
+import com.conveyal.gtfs.loader.JdbcGtfsLoader;
+import com.conveyal.gtfs.loader.NamespaceChanges;
 import graphql.ExecutionInput;
+import graphql.GraphQL;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.AfterAll;
@@ -12,17 +20,34 @@ import org.junit.jupiter.api.Test;
 import javax.sql.DataSource;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.conveyal.gtfs.GTFS.load;
 import static com.conveyal.gtfs.GTFS.validate;
 import static com.conveyal.gtfs.TestUtils.getResourceFileName;
 import static com.zenika.snapshotmatcher.SnapshotMatcher.matchesSnapshot;
+import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
+import static graphql.schema.GraphQLObjectType.newObject;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertTimeout;
 
 
@@ -340,6 +365,485 @@ public class GTFSGraphQLTest {
     }
 
 
+    /**
+     * Tests that fetching the entities nested in the results with one query for each level of the GraphQL query gives
+     * the same results as fetching the children of each parent entity separately, and that it does make one query for
+     * each level rather than one for each parent entity.
+     */
+    @Test
+    public void canFetchNestedEntitiesInBatches() {
+        String[] queryFilenames = {
+            "feedPatterns.txt",
+            "feedRoutes.txt",
+            "feedRoutesAndTripsByTime.txt",
+            "feedStopTimes.txt",
+            "feedStops.txt",
+            "feedStopsStopTimeLimit.txt",
+            "feedStopWithChildren.txt",
+            "feedTrips.txt",
+            "superNested.txt",
+            "superNestedNoLimits.txt"
+        };
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            for (String queryFilename : queryFilenames) {
+                // Only the data is compared, as graphql-java words the errors of batched fields slightly differently.
+                MatcherAssert.assertThat(
+                    queryGraphQL(queryFilename, variables, testDataSource, true).get("data"),
+                    equalTo(queryGraphQL(queryFilename, variables, testDataSource, false).get("data"))
+                );
+            }
+            // The super nested query fetches the routes of the feed, then the stops of those routes (through patterns
+            // and pattern stops) and the routes of those stops (through pattern stops and patterns) twice over, so each
+            // fetcher in the chains makes one query for each of the levels it fetches at.
+            Map<String, Integer> expectedStatementCounts = new HashMap<>();
+            expectedStatementCounts.put("routes", 3);
+            expectedStatementCounts.put("patterns", 5);
+            expectedStatementCounts.put("pattern_stops", 5);
+            expectedStatementCounts.put("stops", 3);
+            List<String> statements = Collections.synchronizedList(new ArrayList<>());
+            GTFSGraphQL.initialize(recordPreparedStatements(testDataSource, statements));
+            executeGraphQL("superNested.txt", variables, true);
+            MatcherAssert.assertThat(countStatementsByTable(statements), equalTo(expectedStatementCounts));
+            // Without batching, the chains are followed for each of the routes and stops (four in the feed) on its own.
+            statements.clear();
+            executeGraphQL("superNested.txt", variables, false);
+            MatcherAssert.assertThat(countStatementsByTable(statements).get("pattern_stops"), greaterThan(5));
+        });
+    }
+
+    /**
+     * Tests that only the columns of the fields requested on the nodes of a page are selected, plus the key and order
+     * fields and id that make up the cursor.
+     */
+    @Test
+    public void canSelectOnlyRequestedColumns() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            variables.put("limit", 2);
+            List<String> statements = Collections.synchronizedList(new ArrayList<>());
+            GTFSGraphQL.initialize(recordPreparedStatements(testDataSource, statements));
+            Map<String, Object> result = executeGraphQL("feedStopTimesConnectionArrivalTimes.txt", variables, true);
+            MatcherAssert.assertThat(result.get("errors"), equalTo(null));
+            MatcherAssert.assertThat(
+                getSelectedColumns(statements, "stop_times"),
+                equalTo(new HashSet<>(Arrays.asList("arrival_time", "trip_id", "stop_sequence", "id")))
+            );
+        });
+    }
+
+    /**
+     * Tests that the rows of entities with nested entities are selected with the columns that the nested fetchers join
+     * on, and that the rows of nested entities are selected with the columns that join them to their parents.
+     */
+    @Test
+    public void canSelectJoinColumnsForNestedFetchers() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            List<String> statements = Collections.synchronizedList(new ArrayList<>());
+            GTFSGraphQL.initialize(recordPreparedStatements(testDataSource, statements));
+            Map<String, Object> result = executeGraphQL("feedRoutesTripsAndStopTimes.txt", variables, true);
+            MatcherAssert.assertThat(
+                result.get("data"),
+                equalTo(queryGraphQL("feedRoutesTripsAndStopTimes.txt", variables, testDataSource, false).get("data"))
+            );
+            MatcherAssert.assertThat(
+                getSelectedColumns(statements, "routes"),
+                equalTo(new HashSet<>(Arrays.asList("route_short_name", "route_id")))
+            );
+            MatcherAssert.assertThat(
+                getSelectedColumns(statements, "trips"),
+                equalTo(new HashSet<>(Arrays.asList("service_id", "route_id", "trip_id")))
+            );
+            MatcherAssert.assertThat(
+                getSelectedColumns(statements, "stop_times"),
+                equalTo(new HashSet<>(Arrays.asList("stop_id", "trip_id")))
+            );
+        });
+    }
+
+    /**
+     * Tests that all columns are selected when a field selected on the rows is not a column of the spec table, as the
+     * GraphQL schema of an application built on this library may have fields that are not known here.
+     */
+    @Test
+    public void canSelectAllColumnsForUnknownFields() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            GraphQLObjectType routeType = newObject().name("route")
+                .field(MapFetcher.field("route_id"))
+                .field(MapFetcher.field("not_a_route_field"))
+                .build();
+            GraphQLSchema schema = GraphQLSchema.newSchema()
+                .query(newObject().name("routeQuery")
+                    .field(newFieldDefinition()
+                        .name("routes")
+                        .type(new GraphQLList(routeType))
+                        .dataFetcher(new JDBCFetcher("routes"))
+                        .build())
+                    .build())
+                .build();
+            List<String> statements = Collections.synchronizedList(new ArrayList<>());
+            GTFSGraphQL.initialize(recordPreparedStatements(testDataSource, statements));
+            Map<String, Object> result = GraphQL.newGraphQL(schema).build().execute(
+                ExecutionInput.newExecutionInput()
+                    .query("{ routes { route_id not_a_route_field } }")
+                    .root(Collections.singletonMap("namespace", testNamespace))
+                    .build()
+            ).toSpecification();
+            MatcherAssert.assertThat(result.get("errors"), equalTo(null));
+            MatcherAssert.assertThat(
+                getSelectedColumns(statements, "routes"),
+                equalTo(Collections.singleton("*"))
+            );
+            List<Map<String, Object>> routes = (List<Map<String, Object>>)
+                ((Map<String, Object>) result.get("data")).get("routes");
+            MatcherAssert.assertThat(routes.get(0).get("route_id"), equalTo("1"));
+        });
+    }
+
+    /**
+     * Tests that paging through a table with cursors reaches every row once, in order of the table's key fields.
+     */
+    @Test
+    public void canPageThroughTableWithCursors() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            List<String> expectedStopTimes = new ArrayList<>();
+            try (Connection connection = testDataSource.getConnection()) {
+                ResultSet resultSet = connection.createStatement().executeQuery(String.format(
+                    "select trip_id, stop_sequence from %s.stop_times order by trip_id, stop_sequence",
+                    testNamespace
+                ));
+                while (resultSet.next()) expectedStopTimes.add(resultSet.getString(1) + ":" + resultSet.getInt(2));
+            }
+            List<String> stopTimes = new ArrayList<>();
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            variables.put("limit", 2);
+            boolean hasNextPage = true;
+            while (hasNextPage) {
+                Map<String, Object> result = queryGraphQL("feedStopTimesConnection.txt", variables, testDataSource);
+                Map<String, Object> data = (Map<String, Object>) result.get("data");
+                Map<String, Object> connection = (Map<String, Object>)
+                    ((Map<String, Object>) data.get("feed")).get("stop_times_connection");
+                for (Map<String, Object> node : (List<Map<String, Object>>) connection.get("nodes")) {
+                    stopTimes.add(node.get("trip_id") + ":" + node.get("stop_sequence"));
+                }
+                Map<String, Object> pageInfo = (Map<String, Object>) connection.get("page_info");
+                hasNextPage = (Boolean) pageInfo.get("has_next_page");
+                variables.put("after", pageInfo.get("end_cursor"));
+            }
+            MatcherAssert.assertThat(stopTimes, equalTo(expectedStopTimes));
+
+            // A cursor that was not made by a previous page is rejected.
+            variables.put("after", "not a cursor");
+            Map<String, Object> result = queryGraphQL("feedStopTimesConnection.txt", variables, testDataSource);
+            MatcherAssert.assertThat(((List) result.get("errors")).size(), equalTo(1));
+        });
+    }
+
+    /**
+     * Tests that a page after the first is read by scanning the table's index from the cursor, rather than by reading and
+     * sorting all the rows after the cursor.
+     */
+    @Test
+    public void canReadPagesFromIndex() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            variables.put("limit", 2);
+            Map<String, Object> result = queryGraphQL("feedStopTimesConnection.txt", variables, testDataSource);
+            Map<String, Object> data = (Map<String, Object>) result.get("data");
+            Map<String, Object> pageInfo = (Map<String, Object>) ((Map<String, Object>)
+                ((Map<String, Object>) data.get("feed")).get("stop_times_connection")).get("page_info");
+            variables.put("after", pageInfo.get("end_cursor"));
+            List<String> statements = Collections.synchronizedList(new ArrayList<>());
+            GTFSGraphQL.initialize(recordPreparedStatements(testDataSource, statements));
+            executeGraphQL("feedStopTimesConnection.txt", variables, true);
+            // The first statement on the table reads the second page (the next finds whether there is a third).
+            String pageSql = statements.stream()
+                .filter(statement -> "stop_times".equals(getTableName(statement)))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No statement selects from stop_times"));
+            try (Connection connection = testDataSource.getConnection()) {
+                try {
+                    // The cursor holds the values of the cursor fields for the last row of the first page.
+                    ResultSet lastRow = connection.createStatement().executeQuery(String.format(
+                        "select trip_id, stop_sequence, id from %s.stop_times " +
+                            "order by trip_id, stop_sequence, id limit 1 offset 1",
+                        testNamespace
+                    ));
+                    lastRow.next();
+                    // The test feed is so small that reading the whole table would be cheaper than using the index.
+                    connection.createStatement().execute("set local enable_seqscan = off");
+                    PreparedStatement explainStatement = connection.prepareStatement("explain " + pageSql);
+                    for (int i = 1; i <= 3; i++) explainStatement.setString(i, lastRow.getString(i));
+                    ResultSet planRows = explainStatement.executeQuery();
+                    StringBuilder plan = new StringBuilder();
+                    while (planRows.next()) plan.append(planRows.getString(1)).append('\n');
+                    MatcherAssert.assertThat(
+                        plan.toString(),
+                        containsString(String.format("Index Scan using %s_stop_times_idx", testNamespace))
+                    );
+                    MatcherAssert.assertThat(plan.toString(), not(containsString("Sort")));
+                } finally {
+                    connection.rollback();
+                }
+            }
+        });
+    }
+
+    /**
+     * Tests that paging through a table with duplicate and null key values (which are loaded from invalid feeds) with
+     * cursors reaches every row once, even where rows with the same key fall on either side of the end of a page.
+     */
+    @Test
+    public void canPageThroughTableWithDuplicateKeys() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            try (Connection connection = testDataSource.getConnection()) {
+                connection.createStatement().execute(String.format(
+                    "insert into %1$s.routes (id, route_id, route_long_name) " +
+                        "select id + 1000, route_id, route_long_name from %1$s.routes",
+                    testNamespace
+                ));
+                connection.createStatement().execute(String.format(
+                    "insert into %s.routes (id, route_long_name) values (2000, 'No ID'), (2001, 'No ID')",
+                    testNamespace
+                ));
+                connection.commit();
+                try {
+                    List<Integer> expectedIds = new ArrayList<>();
+                    ResultSet resultSet = connection.createStatement().executeQuery(String.format(
+                        "select id from %s.routes order by route_id, id", testNamespace
+                    ));
+                    while (resultSet.next()) expectedIds.add(resultSet.getInt(1));
+                    List<Integer> ids = new ArrayList<>();
+                    Map<String, Object> variables = new HashMap<>();
+                    variables.put("namespace", testNamespace);
+                    variables.put("limit", 1);
+                    boolean hasNextPage = true;
+                    while (hasNextPage) {
+                        Map<String, Object> result =
+                            queryGraphQL("feedRoutesConnection.txt", variables, testDataSource);
+                        Map<String, Object> data = (Map<String, Object>) result.get("data");
+                        Map<String, Object> routesConnection = (Map<String, Object>)
+                            ((Map<String, Object>) data.get("feed")).get("routes_connection");
+                        for (Map<String, Object> node : (List<Map<String, Object>>) routesConnection.get("nodes")) {
+                            ids.add((Integer) node.get("id"));
+                        }
+                        Map<String, Object> pageInfo = (Map<String, Object>) routesConnection.get("page_info");
+                        hasNextPage = (Boolean) pageInfo.get("has_next_page");
+                        variables.put("after", pageInfo.get("end_cursor"));
+                    }
+                    MatcherAssert.assertThat(ids, equalTo(expectedIds));
+                    // The rows without a route_id come last.
+                    MatcherAssert.assertThat(
+                        ids.subList(ids.size() - 2, ids.size()), equalTo(Arrays.asList(2000, 2001))
+                    );
+                } finally {
+                    connection.createStatement().execute(
+                        String.format("delete from %s.routes where id >= 1000", testNamespace)
+                    );
+                    connection.commit();
+                }
+            }
+        });
+    }
+
+    /**
+     * Tests that the results of queries on a loaded feed are cached until its namespace is changed.
+     */
+    @Test
+    public void canCacheResultsForLoadedFeeds() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            GTFSGraphQL.initialize(testDataSource, 10_000);
+            Map<String, Object> result = executeGraphQL("feedRoutes.txt", variables, true);
+            String updateSql = String.format("update %s.routes set route_long_name = ?", testNamespace);
+            try (Connection connection = testDataSource.getConnection()) {
+                PreparedStatement statement = connection.prepareStatement(updateSql);
+                statement.setString(1, "Changed Route 1");
+                statement.executeUpdate();
+                connection.commit();
+                try {
+                    MatcherAssert.assertThat(
+                        executeGraphQL("feedRoutes.txt", variables, true).get("data"),
+                        equalTo(result.get("data"))
+                    );
+                    NamespaceChanges.notifyChanged(testNamespace);
+                    Map<String, Object> data = (Map<String, Object>)
+                        executeGraphQL("feedRoutes.txt", variables, true).get("data");
+                    List<Map<String, Object>> routes = (List<Map<String, Object>>)
+                        ((Map<String, Object>) data.get("feed")).get("routes");
+                    MatcherAssert.assertThat(routes.get(0).get("route_long_name"), equalTo("Changed Route 1"));
+                } finally {
+                    statement.setString(1, "Route 1");
+                    statement.executeUpdate();
+                    connection.commit();
+                    GTFSGraphQL.initialize(testDataSource);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tests that the results of queries on a feed whose load has not been completed are not cached, and that they are
+     * cached once the load is completed.
+     */
+    @Test
+    public void canSkipCacheForIncompleteLoads() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("namespace", testNamespace);
+            GTFSGraphQL.initialize(testDataSource, 10_000);
+            String renameSql = String.format("alter table %s.%%s rename to %%s", testNamespace);
+            String hiddenTableName = JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME + "_hidden";
+            String updateSql = String.format("update %s.routes set route_long_name = ?", testNamespace);
+            try (Connection connection = testDataSource.getConnection()) {
+                // Without a load status, the namespace looks like a feed that is still being loaded.
+                connection.createStatement().execute(
+                    String.format(renameSql, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME, hiddenTableName)
+                );
+                connection.commit();
+                PreparedStatement statement = connection.prepareStatement(updateSql);
+                try {
+                    executeGraphQL("feedRoutes.txt", variables, true);
+                    statement.setString(1, "Changed Route 1");
+                    statement.executeUpdate();
+                    connection.commit();
+                    MatcherAssert.assertThat(getFirstRouteLongName(variables), equalTo("Changed Route 1"));
+                    // Once the load is completed, results are cached.
+                    connection.createStatement().execute(
+                        String.format(renameSql, hiddenTableName, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME)
+                    );
+                    connection.commit();
+                    MatcherAssert.assertThat(getFirstRouteLongName(variables), equalTo("Changed Route 1"));
+                    statement.setString(1, "Route 1");
+                    statement.executeUpdate();
+                    connection.commit();
+                    MatcherAssert.assertThat(getFirstRouteLongName(variables), equalTo("Changed Route 1"));
+                } finally {
+                    connection.rollback();
+                    ResultSet resultSet = connection.createStatement().executeQuery(String.format(
+                        "select count(*) from information_schema.tables where table_schema = '%s' " +
+                            "and table_name = '%s'",
+                        testNamespace, hiddenTableName
+                    ));
+                    resultSet.next();
+                    if (resultSet.getInt(1) > 0) {
+                        connection.createStatement().execute(
+                            String.format(renameSql, hiddenTableName, JdbcGtfsLoader.LOAD_STATUS_TABLE_NAME)
+                        );
+                    }
+                    statement.setString(1, "Route 1");
+                    statement.executeUpdate();
+                    connection.commit();
+                    GTFSGraphQL.initialize(testDataSource);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tests that rows fetched while their namespace is invalidated (which may have been read before its tables were
+     * modified) are not cached.
+     */
+    @Test
+    public void canSkipCacheForFetchesAcrossInvalidation() {
+        assertTimeout(Duration.ofMillis(TEST_TIMEOUT), () -> {
+            GraphQLResultCache cache = new GraphQLResultCache(testDataSource, 10_000);
+            List<Map<String, Object>> staleRows =
+                Collections.singletonList(Collections.singletonMap("route_long_name", "Route 1"));
+            List<Map<String, Object>> rows = cache.get(testNamespace, "routes", () -> {
+                cache.invalidate(testNamespace);
+                return staleRows;
+            });
+            MatcherAssert.assertThat(rows, equalTo(staleRows));
+            List<Map<String, Object>> freshRows =
+                Collections.singletonList(Collections.singletonMap("route_long_name", "Changed Route 1"));
+            MatcherAssert.assertThat(cache.get(testNamespace, "routes", () -> freshRows), equalTo(freshRows));
+            // Rows fetched without an invalidation are cached.
+            MatcherAssert.assertThat(cache.get(testNamespace, "routes", () -> staleRows), equalTo(freshRows));
+        });
+    }
+
+    private String getFirstRouteLongName(Map<String, Object> variables) throws IOException {
+        Map<String, Object> data = (Map<String, Object>) executeGraphQL("feedRoutes.txt", variables, true).get("data");
+        List<Map<String, Object>> routes = (List<Map<String, Object>>)
+            ((Map<String, Object>) data.get("feed")).get("routes");
+        return (String) routes.get(0).get("route_long_name");
+    }
+
+    /**
+     * Wrap a data source so that the SQL of each statement prepared on its connections is added to a list.
+     */
+    private static DataSource recordPreparedStatements(DataSource dataSource, List<String> statements) {
+        return (DataSource) Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(),
+            new Class[]{DataSource.class},
+            (dataSourceProxy, dataSourceMethod, dataSourceArgs) -> {
+                Object result = invoke(dataSource, dataSourceMethod, dataSourceArgs);
+                if (!(result instanceof Connection)) return result;
+                Connection connection = (Connection) result;
+                return Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class[]{Connection.class},
+                    (connectionProxy, method, args) -> {
+                        if ("prepareStatement".equals(method.getName())) statements.add((String) args[0]);
+                        return invoke(connection, method, args);
+                    }
+                );
+            }
+        );
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the name of the table in the test namespace that the statement selects rows from, or null if it does not
+     *         select from a table in the namespace.
+     */
+    private static String getTableName(String sql) {
+        Matcher matcher = Pattern.compile("from " + Pattern.quote(testNamespace) + "\\.(\\w+)").matcher(sql);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * @return the number of the statements that select from each table in the test namespace.
+     */
+    private static Map<String, Integer> countStatementsByTable(List<String> statements) {
+        Map<String, Integer> statementCounts = new HashMap<>();
+        for (String statement : statements) {
+            String tableName = getTableName(statement);
+            if (tableName != null) statementCounts.merge(tableName, 1, Integer::sum);
+        }
+        return statementCounts;
+    }
+
+    /**
+     * @return the columns selected by the first of the statements that selects from the table, without the names of
+     *         the namespace and table.
+     */
+    private static Set<String> getSelectedColumns(List<String> statements, String tableName) {
+        String sql = statements.stream()
+            .filter(statement -> tableName.equals(getTableName(statement)))
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("No statement selects from " + tableName));
+        String selectList = sql.substring("select ".length(), sql.indexOf(" from "));
+        Set<String> columns = new HashSet<>();
+        for (String column : selectList.split(", ")) columns.add(column.substring(column.lastIndexOf('.') + 1));
+        return columns;
+    }
+
     /**
      * Helper method to make a query with default variables.
      *
@@ -364,15 +868,38 @@ public class GTFSGraphQLTest {
         String queryFilename,
         Map<String,Object> variables,
         DataSource dataSource
+    ) throws IOException {
+        return queryGraphQL(queryFilename, variables, dataSource, true);
+    }
+
+    /**
+     * Helper method to execute a GraphQL query, with or without the data loaders that fetch nested entities in batches.
+     */
+    private Map<String, Object> queryGraphQL(
+        String queryFilename,
+        Map<String,Object> variables,
+        DataSource dataSource,
+        boolean batched
     ) throws IOException {
         GTFSGraphQL.initialize(dataSource);
+        return executeGraphQL(queryFilename, variables, batched);
+    }
+
+    /**
+     * Helper method to execute a GraphQL query with GraphQL as it was last initialized.
+     */
+    private Map<String, Object> executeGraphQL(
+        String queryFilename,
+        Map<String,Object> variables,
+        boolean batched
+    ) throws IOException {
         FileInputStream inputStream = new FileInputStream(
             getResourceFileName(String.format("graphql/%s", queryFilename))
         );
-        ExecutionInput executionInput = ExecutionInput.newExecutionInput()
+        ExecutionInput.Builder executionInput = ExecutionInput.newExecutionInput()
             .query(IOUtils.toString(inputStream))
-            .variables(variables)
-            .build();
-        return GTFSGraphQL.getGraphQl().execute(executionInput).toSpecification();
+            .variables(variables);
+        if (batched) executionInput.dataLoaderRegistry(GTFSGraphQL.newDataLoaderRegistry());
+        return GTFSGraphQL.getGraphQl().execute(executionInput.build()).toSpecification();
     }
 }
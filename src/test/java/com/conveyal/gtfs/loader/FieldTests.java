@@ -2,12 +2,22 @@ package com.conveyal.gtfs.loader;
 
 import com.conveyal.gtfs.error.NewGTFSError;
 import com.conveyal.gtfs.error.NewGTFSErrorType;
+import com.conveyal.gtfs.storage.StorageException;
 import org.apache.commons.text.StringEscapeUtils;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 /**
  * Unit tests to verify functionality of classes that load fields from GTFS tables.
@@ -83,4 +93,135 @@ public class FieldTests {
             }
         }
     }
+
+    /**
+     * Make sure values converted for the text copy format are written with the length and encoding Postgres expects in
+     * the binary copy format.
+     */
+    @Test
+    public void binaryCopyValueTest() throws IOException {
+        DataInputStream time = writeBinaryCopyValue(new TimeField("arrival_time", Requirement.REQUIRED), "3661");
+        assertThat(time.readInt(), equalTo(Integer.BYTES));
+        assertThat(time.readInt(), equalTo(3661));
+
+        DataInputStream lat = writeBinaryCopyValue(new DoubleField("stop_lat", Requirement.REQUIRED, -80, 80, 6), "37.5");
+        assertThat(lat.readInt(), equalTo(Double.BYTES));
+        assertThat(lat.readDouble(), equalTo(37.5));
+
+        DataInputStream bool = writeBinaryCopyValue(new BooleanField("pickup", Requirement.OPTIONAL), "true");
+        assertThat(bool.readInt(), equalTo(1));
+        assertThat(bool.readByte(), equalTo((byte) 1));
+
+        // The backslash escaped for the text format should be sent as a single backslash.
+        StringField stringField = new StringField("any", Requirement.REQUIRED);
+        String clean = stringField.validateAndConvert("Hello\\world").clean;
+        DataInputStream string = writeBinaryCopyValue(stringField, clean);
+        byte[] bytes = new byte[string.readInt()];
+        string.readFully(bytes);
+        assertThat(new String(bytes, StandardCharsets.UTF_8), equalTo("Hello\\world"));
+
+        assertThat(new StringListField("list", Requirement.OPTIONAL).supportsBinaryCopy(), equalTo(false));
+    }
+
+    private static DataInputStream writeBinaryCopyValue(Field field, String clean) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        field.writeBinaryCopyValue(new DataOutputStream(bytes), clean);
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Make sure the fast path for parsing times agrees with splitting the string on colons, and leaves any malformed or
+     * out of range times to the slow path that reports errors.
+     */
+    @Test
+    public void timeFieldFastPathTest() {
+        TimeField timeField = new TimeField("arrival_time", Requirement.REQUIRED);
+        for (int h = 0; h < 160; h++) {
+            for (int m = 0; m < 62; m += 3) {
+                for (int s = 0; s < 62; s += 7) {
+                    String time = String.format("%d:%02d:%02d", h, m, s);
+                    // Times must have one or two hour digits.
+                    boolean valid = h <= 99 && m <= 59 && s <= 59;
+                    int expected = valid ? (h * 60 + m) * 60 + s : -1;
+                    assertThat(time, TimeField.parseSeconds(time), equalTo(expected));
+                    if (valid) {
+                        ValidateFieldResult<String> result = timeField.validateAndConvert(time);
+                        assertThat(result.clean, equalTo(Integer.toString(expected)));
+                        assertThat(result.errors.size(), equalTo(0));
+                    }
+                }
+            }
+        }
+        String[] slowPathTimes = {"08:00", "8:00:00:00", "08-00-00", "0a:00:00", "-1:00:00", "08:0:000", "008:00:00"};
+        for (String time : slowPathTimes) {
+            assertThat(time, TimeField.parseSeconds(time), equalTo(-1));
+        }
+        assertThat(timeField.validateAndConvert("08:60:00").errors.size(), equalTo(1));
+    }
+
+    /**
+     * Make sure the fast path for parsing decimal numbers gives exactly the same doubles as Double.parseDouble.
+     */
+    @Test
+    public void doubleFieldFastPathTest() {
+        Random random = new Random(1234);
+        for (int i = 0; i < 100_000; i++) {
+            String number = String.format("%s%d.%s",
+                random.nextBoolean() ? "-" : "",
+                random.nextInt(200),
+                Long.toString(Math.abs(random.nextLong())).substring(0, 1 + random.nextInt(12))
+            );
+            assertThat(number, DoubleField.parsePlainDecimal(number), equalTo(Double.parseDouble(number)));
+        }
+        String[] slowPathNumbers = {"", "-", "1.", ".5", "1e5", "+1.5", "1.2.3", "1234567890.1234567", "NaN"};
+        for (String number : slowPathNumbers) {
+            assertThat(number, Double.isNaN(DoubleField.parsePlainDecimal(number)), equalTo(true));
+        }
+    }
+
+    /**
+     * Make sure integers are converted to the same text whether or not they take the fast path, and that unparseable
+     * integers are reported as errors.
+     */
+    @Test
+    public void integerFieldFastPathTest() {
+        IntegerField integerField = new IntegerField("stop_sequence", Requirement.REQUIRED, -10, 1000);
+        String[][] inputsAndCleanValues = {{"0", "0"}, {"7", "7"}, {"-3", "-3"}, {"999", "999"}, {"007", "7"}, {"+5", "5"}};
+        for (String[] inputAndCleanValue : inputsAndCleanValues) {
+            ValidateFieldResult<String> result = integerField.validateAndConvert(inputAndCleanValue[0]);
+            assertThat(result.clean, equalTo(inputAndCleanValue[1]));
+            assertThat(result.errors.size(), equalTo(0));
+        }
+        assertThat(integerField.validateAndConvert("1001").errors.size(), equalTo(1));
+        assertThat(integerField.validateAndConvert("-11").errors.size(), equalTo(1));
+        try {
+            integerField.validateAndConvert("1x");
+            assertThat("Unparseable integer should throw an exception.", false);
+        } catch (StorageException e) {
+            assertThat(e.errorType, equalTo(NewGTFSErrorType.NUMBER_PARSING));
+        }
+    }
+
+    /**
+     * Make sure the fast path for dates agrees with the date formatter for every day of a few years.
+     */
+    @Test
+    public void dateFieldFastPathTest() {
+        DateField dateField = new DateField("date", Requirement.REQUIRED);
+        for (int year : new int[] {2000, 2019, 2020, 2100}) {
+            for (int month = 0; month <= 13; month++) {
+                for (int day = 0; day <= 32; day++) {
+                    String date = String.format("%04d%02d%02d", year, month, day);
+                    ValidateFieldResult<String> result = dateField.validateAndConvert(date);
+                    boolean parseable = true;
+                    try {
+                        java.time.LocalDate.parse(date, DateField.GTFS_DATE_FORMATTER);
+                    } catch (java.time.format.DateTimeParseException e) {
+                        parseable = false;
+                    }
+                    assertThat(date, result.errors.size() == 0, equalTo(parseable));
+                }
+            }
+        }
+    }
 }
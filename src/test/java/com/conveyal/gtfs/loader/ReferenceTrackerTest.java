@@ -0,0 +1,70 @@
+package com.conveyal.gtfs.loader;
+
+import com.conveyal.gtfs.error.NewGTFSError;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static com.conveyal.gtfs.error.NewGTFSErrorType.DUPLICATE_ID;
+import static com.conveyal.gtfs.error.NewGTFSErrorType.REFERENTIAL_INTEGRITY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Unit tests for the duplicate ID and referential integrity checks in {@link ReferenceTracker}.
+ */
+public class ReferenceTrackerTest {
+
+    @Test
+    public void canDetectDuplicateIds() {
+        ReferenceTracker referenceTracker = new ReferenceTracker();
+        Field stopId = Table.STOPS.getFieldForName("stop_id");
+        assertThat(check(referenceTracker, "1", 2, stopId, "1", Table.STOPS).size(), equalTo(0));
+        assertThat(check(referenceTracker, "2", 3, stopId, "2", Table.STOPS).size(), equalTo(0));
+        Set<NewGTFSError> errors = check(referenceTracker, "1", 4, stopId, "1", Table.STOPS);
+        assertThat(errors.size(), equalTo(1));
+        NewGTFSError error = errors.iterator().next();
+        assertThat(error.errorType, equalTo(DUPLICATE_ID));
+        assertThat(error.badValue, equalTo("stop_id:1"));
+        assertThat(referenceTracker.containsId("stop_id", "2"), equalTo(true));
+        assertThat(referenceTracker.containsId("stop_id", "3"), equalTo(false));
+    }
+
+    @Test
+    public void canDetectDuplicateSequences() {
+        ReferenceTracker referenceTracker = new ReferenceTracker();
+        Field tripId = Table.TRIPS.getFieldForName("trip_id");
+        Field stopSequence = Table.STOP_TIMES.getFieldForName("stop_sequence");
+        check(referenceTracker, "a", 2, tripId, "a", Table.TRIPS);
+        assertThat(check(referenceTracker, "a", 2, stopSequence, "1", Table.STOP_TIMES).size(), equalTo(0));
+        assertThat(check(referenceTracker, "a", 3, stopSequence, "2", Table.STOP_TIMES).size(), equalTo(0));
+        // The same sequence on another trip and a sequence that is only numerically equal are not duplicates.
+        assertThat(check(referenceTracker, "b", 4, stopSequence, "1", Table.STOP_TIMES).size(), equalTo(0));
+        assertThat(check(referenceTracker, "a", 5, stopSequence, "01", Table.STOP_TIMES).size(), equalTo(0));
+        Set<NewGTFSError> errors = check(referenceTracker, "a", 6, stopSequence, "2", Table.STOP_TIMES);
+        assertThat(errors.size(), equalTo(1));
+        NewGTFSError error = errors.iterator().next();
+        assertThat(error.errorType, equalTo(DUPLICATE_ID));
+        assertThat(error.badValue, equalTo("stop_sequence:a:2"));
+    }
+
+    @Test
+    public void canDetectBadReferences() {
+        ReferenceTracker referenceTracker = new ReferenceTracker();
+        Field tripId = Table.TRIPS.getFieldForName("trip_id");
+        Field stopTimeTripId = Table.STOP_TIMES.getFieldForName("trip_id");
+        check(referenceTracker, "a", 2, tripId, "a", Table.TRIPS);
+        assertThat(check(referenceTracker, "a", 2, stopTimeTripId, "a", Table.STOP_TIMES).size(), equalTo(0));
+        Set<NewGTFSError> errors = check(referenceTracker, "b", 3, stopTimeTripId, "b", Table.STOP_TIMES);
+        assertThat(errors.size(), equalTo(1));
+        NewGTFSError error = errors.iterator().next();
+        assertThat(error.errorType, equalTo(REFERENTIAL_INTEGRITY));
+        assertThat(error.badValue, equalTo("trip_id:b"));
+    }
+
+    private static Set<NewGTFSError> check(
+        ReferenceTracker referenceTracker, String keyValue, int lineNumber, Field field, String value, Table table
+    ) {
+        return referenceTracker.checkReferencesAndUniqueness(keyValue, lineNumber, field, value, table);
+    }
+}
@@ -0,0 +1,78 @@
+package com.conveyal.gtfs.loader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for reading the entries of a zip stream in a different order than they appear in the stream.
+ */
+public class ZipStreamGtfsSourceTest {
+
+    @Test
+    public void canReadEntriesInAnyOrder() throws IOException {
+        try (GtfsSource source = createSource("agency.txt", "a", "gtfs/stops.txt", "s", "trips.txt", "t")) {
+            // Reaching trips.txt means spooling the earlier entries.
+            assertThat(read(source, "trips.txt"), equalTo("t"));
+            assertThat(source.getCrc("trips.txt"), equalTo(crc("t")));
+            assertThat(read(source, "agency.txt"), equalTo("a"));
+            assertThat(read(source, "agency.txt"), equalTo("a"));
+            assertThat(source.findEntry("stops.txt"), equalTo("gtfs/stops.txt"));
+            assertThat(read(source, "gtfs/stops.txt"), equalTo("s"));
+            assertThat(source.findEntry("shapes.txt"), nullValue());
+        }
+    }
+
+    @Test
+    public void canReadEntryAgainAfterPartialRead() throws IOException {
+        String stopTimes = String.join("", Collections.nCopies(200_000, "stop_times\n"));
+        try (GtfsSource source = createSource("feed_info.txt", "header\nrow", "stop_times.txt", stopTimes)) {
+            // The entry is next in the stream, so is read straight from the stream.
+            InputStream inputStream = source.getInputStream(source.findEntry("feed_info.txt"));
+            assertThat(inputStream.read(), equalTo((int) 'h'));
+            inputStream.close();
+            assertThat(read(source, "feed_info.txt"), equalTo("header\nrow"));
+            assertThat(read(source, "stop_times.txt"), equalTo(stopTimes));
+            assertThat(source.getSize("stop_times.txt"), equalTo((long) stopTimes.length()));
+            // A large entry read to the end straight from the stream cannot be read again.
+            assertThrows(IOException.class, () -> source.getInputStream("stop_times.txt"));
+        }
+    }
+
+    private static GtfsSource createSource(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zipOutputStream.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zipOutputStream.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return new ZipStreamGtfsSource("test.zip", new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static String read(GtfsSource source, String entryName) throws IOException {
+        try (InputStream inputStream = source.getInputStream(entryName)) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long crc(String contents) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(contents.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,139 @@
+package com.conveyal.gtfs.validator;
+
+import com.conveyal.gtfs.TestUtils;
+import com.conveyal.gtfs.error.SQLErrorStorage;
+import com.conveyal.gtfs.loader.DirectoryGtfsSource;
+import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.JdbcGtfsLoader;
+import com.conveyal.gtfs.util.InvalidNamespaceException;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.conveyal.gtfs.GTFS.load;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests that checking trips on several threads or while loading the feed finds the same errors and patterns as
+ * checking every trip in turn after loading.
+ */
+public class NewTripTimesValidatorTest {
+    private static String testDBName;
+    private static DataSource testDataSource;
+
+    @BeforeAll
+    public static void setUpClass() {
+        testDBName = TestUtils.generateNewDB();
+        String dbConnectionUrl = String.format("jdbc:postgresql://localhost/%s", testDBName);
+        testDataSource = TestUtils.createTestDataSource(dbConnectionUrl);
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        TestUtils.dropDB(testDBName);
+    }
+
+    @Test
+    public void canValidateTripsConcurrently() throws IOException, SQLException, InvalidNamespaceException {
+        String[] feeds = {"real-world-gtfs-feeds/VTA-gtfs-multiple-trips", "fake-agency-overlapping-trips"};
+        for (String feed : feeds) {
+            String zipFileName = TestUtils.zipFolderFiles(feed, true);
+            String sequentialNamespace = load(zipFileName, testDataSource).uniqueIdentifier;
+            String concurrentNamespace = load(zipFileName, testDataSource).uniqueIdentifier;
+            validateTrips(sequentialNamespace, 1);
+            validateTrips(concurrentNamespace, 4);
+            assertSameResults(sequentialNamespace, concurrentNamespace, new String[] {
+                "select e::text from %s.errors e order by error_id",
+                "select pattern_id || ':' || route_id || ':' || name from %s.patterns order by pattern_id",
+                "select trip_id || ':' || pattern_id from %s.trips order by trip_id"
+            });
+        }
+    }
+
+    /**
+     * Tests that checking trips while stop_times are loaded finds the same errors and patterns as checking them after
+     * loading, and that trips are checked after loading as usual when the stop times are not grouped by trip.
+     */
+    @Test
+    public void canValidateTripsWhileLoading() throws IOException, SQLException {
+        String zipFileName = TestUtils.zipFolderFiles("real-world-gtfs-feeds/VTA-gtfs-multiple-trips", true);
+        String namespace = load(zipFileName, testDataSource).uniqueIdentifier;
+        ValidationResult validationResult = new Feed(testDataSource, namespace).validate();
+        JdbcGtfsLoader loader = new JdbcGtfsLoader(zipFileName, testDataSource).withTripValidationWhileLoading(true);
+        String streamedNamespace = loader.loadTables().uniqueIdentifier;
+        assertThat(loader.getStreamedTripTimesValidator(), notNullValue());
+        ValidationResult streamedValidationResult = new Feed(testDataSource, streamedNamespace)
+            .withTripsValidatedWhileLoading(loader.getStreamedTripTimesValidator())
+            .validate();
+        assertThat(streamedValidationResult.errorCount, equalTo(validationResult.errorCount));
+        assertSameResults(namespace, streamedNamespace, new String[] {
+            // Trips are checked in the order of the file rather than the database, so errors may be in another order.
+            "select (error_type, entity_type, line_number, entity_id, entity_sequence, bad_value)::text " +
+                "from %s.errors order by 1",
+            "select count(*) from %s.patterns",
+            "select count(distinct pattern_id) from %s.trips"
+        });
+
+        // Reverse the rows of stop_times, so that the stop times of each trip are in descending order.
+        File directory = Files.createTempDir();
+        FileUtils.copyDirectory(new File(TestUtils.getResourceFileName("fake-agency")), directory);
+        File stopTimesFile = new File(directory, "stop_times.txt");
+        List<String> lines = FileUtils.readLines(stopTimesFile, StandardCharsets.UTF_8);
+        Collections.reverse(lines.subList(1, lines.size()));
+        FileUtils.writeLines(stopTimesFile, StandardCharsets.UTF_8.name(), lines);
+        loader = new JdbcGtfsLoader(new DirectoryGtfsSource(directory.getAbsolutePath()), testDataSource)
+            .withTripValidationWhileLoading(true);
+        loader.loadTables();
+        assertThat(loader.getStreamedTripTimesValidator(), nullValue());
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static void assertSameResults(String namespace, String otherNamespace, String[] queries) throws SQLException {
+        try (Connection connection = testDataSource.getConnection()) {
+            for (String query : queries) {
+                assertThat(
+                    getQueryResults(connection, String.format(query, otherNamespace)),
+                    equalTo(getQueryResults(connection, String.format(query, namespace)))
+                );
+            }
+        }
+    }
+
+    /**
+     * Run the trip validator on the namespace, with each trip in its own batch when running on several threads so
+     * that the results of many batches are merged.
+     */
+    private static void validateTrips(String namespace, int threads) throws SQLException, InvalidNamespaceException {
+        SQLErrorStorage errorStorage = new SQLErrorStorage(testDataSource.getConnection(), namespace + ".", false);
+        NewTripTimesValidator validator = new NewTripTimesValidator(
+            new Feed(testDataSource, namespace), errorStorage, threads
+        );
+        validator.tripBatchSize = 1;
+        validator.validate();
+        validator.complete(new ValidationResult());
+        errorStorage.commitAndClose();
+    }
+
+    private static List<String> getQueryResults(Connection connection, String query) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        ResultSet resultSet = connection.prepareStatement(query).executeQuery();
+        while (resultSet.next()) rows.add(resultSet.getString(1));
+        return rows;
+    }
+}
@@ -1,10 +1,33 @@
 package com.conveyal.gtfs.validator;
 
+import com.conveyal.gtfs.TestUtils;
+import com.conveyal.gtfs.loader.DateField;
+import com.conveyal.gtfs.loader.DirectoryGtfsSource;
+import com.conveyal.gtfs.loader.Feed;
+import com.conveyal.gtfs.loader.JdbcGtfsLoader;
 import com.conveyal.gtfs.model.Calendar;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.Test;
 
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 public class ServiceValidatorTest {
     @Test
@@ -15,4 +38,87 @@ public class ServiceValidatorTest {
         calendar.tuesday = 1;
         assertThat(ServiceValidator.isCalendarUsedDuringWeek(calendar), CoreMatchers.is(true));
     }
+
+    /**
+     * Tests that sweeping through intervals finds the same overlapping pairs as comparing every pair, including
+     * intervals that touch, share a start or end before they start.
+     */
+    @Test
+    public void canFindOverlappingPairs() {
+        Random random = new Random(20);
+        for (int test = 0; test < 200; test++) {
+            int n = random.nextInt(40);
+            int[] starts = new int[n];
+            int[] ends = new int[n];
+            for (int i = 0; i < n; i++) {
+                starts[i] = random.nextInt(50);
+                ends[i] = starts[i] + random.nextInt(20) - 3;
+            }
+            List<Long> expectedPairs = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (starts[i] < ends[j] && starts[j] < ends[i]) expectedPairs.add(((long) i << 32) | j);
+                }
+            }
+            long[] pairs = ServiceValidator.findOverlappingPairs(starts, ends);
+            assertThat(Arrays.stream(pairs).boxed().collect(Collectors.toList()), equalTo(expectedPairs));
+        }
+    }
+
+    /**
+     * Tests that the dates on which a service is active are merged from its weekly calendar and its exceptions, and
+     * written to the service_dates table.
+     */
+    @Test
+    public void canMergeCalendarsAndExceptions() throws IOException, SQLException {
+        String testDBName = TestUtils.generateNewDB();
+        DataSource dataSource = TestUtils.createTestDataSource(String.format("jdbc:postgresql://localhost/%s", testDBName));
+        File directory = Files.createTempDir();
+        try (Connection connection = dataSource.getConnection()) {
+            FileUtils.copyDirectory(new File(TestUtils.getResourceFileName("fake-agency")), directory);
+            String serviceId = "04100312-8fe1-46a5-a9f2-556f39478f57";
+            // Weekday service through the end of 2017, except for Labor Day, plus one Saturday. The feed's first
+            // date is an exception removing service before the calendar starts.
+            FileUtils.writeLines(new File(directory, "calendar.txt"), StandardCharsets.UTF_8.name(), Arrays.asList(
+                "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date",
+                serviceId + ",1,1,1,1,1,0,0,20170901,20171231"
+            ));
+            FileUtils.writeLines(new File(directory, "calendar_dates.txt"), StandardCharsets.UTF_8.name(), Arrays.asList(
+                "service_id,date,exception_type",
+                serviceId + ",20170904,2",
+                serviceId + ",20170909,1",
+                serviceId + ",20170801,2"
+            ));
+            JdbcGtfsLoader loader = new JdbcGtfsLoader(new DirectoryGtfsSource(directory.getAbsolutePath()), dataSource);
+            String namespace = loader.loadTables().uniqueIdentifier;
+            ValidationResult validationResult = new Feed(dataSource, namespace).validate();
+
+            List<String> expectedDates = new ArrayList<>();
+            for (LocalDate date = LocalDate.of(2017, 9, 1); date.getYear() == 2017; date = date.plusDays(1)) {
+                boolean weekday = date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY;
+                if (date.equals(LocalDate.of(2017, 9, 9)) || (weekday && !date.equals(LocalDate.of(2017, 9, 4)))) {
+                    expectedDates.add(date.format(DateField.GTFS_DATE_FORMATTER));
+                }
+            }
+            List<String> serviceDates = new ArrayList<>();
+            ResultSet resultSet = connection.createStatement().executeQuery(String.format(
+                "select service_date from %s.service_dates where service_id = '%s' order by service_date",
+                namespace,
+                serviceId
+            ));
+            while (resultSet.next()) serviceDates.add(resultSet.getString(1));
+            assertThat(serviceDates, equalTo(expectedDates));
+            resultSet = connection.createStatement().executeQuery(String.format(
+                "select n_days_active from %s.services where service_id = '%s'", namespace, serviceId
+            ));
+            resultSet.next();
+            assertThat(resultSet.getInt(1), equalTo(expectedDates.size()));
+            assertThat(validationResult.firstCalendarDate, equalTo(LocalDate.of(2017, 9, 1)));
+            assertThat(validationResult.lastCalendarDate, equalTo(LocalDate.of(2017, 12, 29)));
+            assertThat(validationResult.dailyTripCounts.length, equalTo(120));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+            TestUtils.dropDB(testDBName);
+        }
+    }
 }